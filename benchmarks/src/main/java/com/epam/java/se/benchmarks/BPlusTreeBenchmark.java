@@ -0,0 +1,137 @@
+package com.epam.java.se.benchmarks;
+
+import com.epam.java.se.BPlusCustomTreeMap;
+import com.epam.java.se.CustomTreeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The red-black CustomTreeMap against BPlusCustomTreeMap at several
+ * fanouts. Keys are inserted in random order, so the nodes of the
+ * red-black tree are scattered over the heap like in a long-lived map.
+ * <p>
+ * get and removeAndPut look up random present keys; rangeScan visits
+ * RANGE consecutive keys from a random start, iterate walks the whole
+ * map, and rank counts the keys below a random key.
+ * <p>
+ * There is no implementation param since the JDK maps have no order
+ * statistics; the regression gate skips this benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BPlusTreeBenchmark {
+    private static final int LOOKUPS = 1 << 16;
+    private static final int RANGE = 100;
+    private static final long SEED = 42L;
+
+    public enum Layout {
+        RED_BLACK(0), B_PLUS_16(16), B_PLUS_64(64), B_PLUS_256(256);
+
+        private final int fanout;
+
+        Layout(int fanout) {
+            this.fanout = fanout;
+        }
+    }
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    @Param
+    private Layout layout;
+
+    private Map<Long, Long> map;
+    private CustomTreeMap<Long, Long> redBlack;
+    private BPlusCustomTreeMap<Long, Long> bPlus;
+    private Long[] keys;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        if (layout == Layout.RED_BLACK) {
+            redBlack = new CustomTreeMap<>();
+            map = redBlack;
+        } else {
+            bPlus = new BPlusCustomTreeMap<>(layout.fanout, null);
+            map = bPlus;
+        }
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(SEED);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        for (long key : order) {
+            map.put(key, key);
+        }
+        keys = new Long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = (long) random.nextInt(size);
+        }
+    }
+
+    private Long nextKey() {
+        return keys[cursor++ & (LOOKUPS - 1)];
+    }
+
+    @Benchmark
+    public Long get() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Long removeAndPut() {
+        Long key = nextKey();
+        map.remove(key);
+        return map.put(key, key);
+    }
+
+    @Benchmark
+    public void rangeScan(Blackhole blackhole) {
+        Long lo = nextKey();
+        Long hi = lo + RANGE - 1;
+        if (bPlus != null) {
+            bPlus.forEachInRange(lo, hi, (key, value) -> blackhole.consume(value));
+        } else {
+            for (Long value : redBlack.subMap(lo, true, hi, true).values()) {
+                blackhole.consume(value);
+            }
+        }
+    }
+
+    @Benchmark
+    public int rank() {
+        Long key = nextKey();
+        return bPlus != null ? bPlus.rank(key) : redBlack.rank(key);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Long value : map.values()) {
+            blackhole.consume(value);
+        }
+    }
+}
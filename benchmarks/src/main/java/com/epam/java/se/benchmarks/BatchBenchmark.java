@@ -0,0 +1,111 @@
+package com.epam.java.se.benchmarks;
+
+import com.epam.java.se.CustomTreeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorted batches against CustomTreeMap: the batch methods next to the
+ * same work done one key at a time. Scores are per batch, so the cost
+ * per key is the score divided by batchSize. The same number of keys
+ * is split into batches of every size, so the working set does not
+ * depend on batchSize.
+ * <p>
+ * Half of the looked up keys are absent. The write benchmarks remove a
+ * batch of present keys and put it back, which keeps the size stable.
+ * <p>
+ * There is no implementation param since the JDK maps have no batch
+ * methods; the regression gate skips this benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int KEYS = 1 << 16;
+    private static final long SEED = 42L;
+
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"1", "16", "256", "4096"})
+    private int batchSize;
+
+    private CustomTreeMap<Long, Long> map;
+    private Long[][] lookups;
+    private Long[][] updates;
+    private Long[] values;
+    private int batches;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        map = new CustomTreeMap<>();
+        for (long key = 0; key < size; key++) {
+            map.put(2 * key, key);
+        }
+        Random random = new Random(SEED);
+        batches = KEYS / batchSize;
+        lookups = new Long[batches][];
+        updates = new Long[batches][];
+        for (int i = 0; i < batches; i++) {
+            lookups[i] = sortedBatch(random, 2L * size, 1);
+            updates[i] = sortedBatch(random, size, 2);
+        }
+        values = new Long[batchSize];
+    }
+
+    private Long[] sortedBatch(Random random, long bound, long scale) {
+        TreeSet<Long> keys = new TreeSet<>();
+        while (keys.size() < batchSize) {
+            keys.add(scale * (long) (random.nextDouble() * bound));
+        }
+        return keys.toArray(new Long[0]);
+    }
+
+    @Benchmark
+    public void getOneByOne(Blackhole blackhole) {
+        for (Long key : lookups[cursor++ & (batches - 1)]) {
+            blackhole.consume(map.get(key));
+        }
+    }
+
+    @Benchmark
+    public int getAll() {
+        return map.getAll(lookups[cursor++ & (batches - 1)], values);
+    }
+
+    @Benchmark
+    public void removeAndPutOneByOne() {
+        Long[] keys = updates[cursor++ & (batches - 1)];
+        for (Long key : keys) {
+            map.remove(key);
+        }
+        for (Long key : keys) {
+            map.put(key, key);
+        }
+    }
+
+    @Benchmark
+    public int removeAndPutBatch() {
+        Long[] keys = updates[cursor++ & (batches - 1)];
+        map.removeBatch(keys);
+        return map.putBatch(keys, keys);
+    }
+}
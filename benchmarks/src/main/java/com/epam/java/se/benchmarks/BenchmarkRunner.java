@@ -0,0 +1,46 @@
+package com.epam.java.se.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line
+ * options, writes results as JSON (jmh-result.json unless -rff is given)
+ * and then runs the regression gate. The process exits with status 2 if
+ * CustomTreeMap is slower than the best JDK map by more than the allowed
+ * ratio, which is 1.0 by default and can be set with -Dgate.maxRatio.
+ */
+public class BenchmarkRunner {
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse(DEFAULT_RESULT_FILE))
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        double maxRatio = Double.parseDouble(System.getProperty("gate.maxRatio", "1.0"));
+        boolean regressed = false;
+        System.out.println();
+        System.out.println("Regression gate, max ratio " + maxRatio + ":");
+        for (RegressionGate.Comparison comparison : new RegressionGate(maxRatio).compare(results)) {
+            System.out.println(comparison);
+            regressed |= comparison.isRegression();
+        }
+        if (regressed) {
+            System.exit(2);
+        }
+    }
+}
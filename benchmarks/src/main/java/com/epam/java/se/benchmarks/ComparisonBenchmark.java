@@ -0,0 +1,115 @@
+package com.epam.java.se.benchmarks;
+
+import com.epam.java.se.CustomTreeMap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key comparisons of the CustomTreeMap point operations. The keys are
+ * compared by a counting comparator, which JMH reports as the secondary
+ * result "comparisons", the time per comparison. The score divided by
+ * it is the number of comparisons per operation. Unlike the time this
+ * ratio does not depend on the machine, so running the benchmark on two
+ * commits shows whether a change of the descent saves comparisons even
+ * where the timing noise hides it.
+ * <p>
+ * removeAndPut removes a present key and puts it back, so it measures
+ * one removal and one insertion of a new key. replace puts a present
+ * key, get looks one up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparisonBenchmark {
+    private static final int PATTERN_LENGTH = 1 << 16;
+    private static final int PATTERN_MASK = PATTERN_LENGTH - 1;
+    private static final long SEED = 42L;
+
+    @Param({"100000"})
+    private int size;
+
+    private CustomTreeMap<Integer, Integer> map;
+    private Integer[] pattern;
+    private int cursor;
+    private long compared;
+
+    /**
+     * Comparisons of the current iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long comparisons;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            comparisons = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        map = new CustomTreeMap<>((a, b) -> {
+            compared++;
+            return Integer.compare(a, b);
+        });
+        Random random = new Random(SEED);
+        Integer[] keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt();
+            map.put(keys[i], i);
+        }
+        pattern = new Integer[PATTERN_LENGTH];
+        for (int i = 0; i < PATTERN_LENGTH; i++) {
+            pattern[i] = keys[random.nextInt(size)];
+        }
+    }
+
+    private Integer nextKey() {
+        return pattern[cursor++ & PATTERN_MASK];
+    }
+
+    @Benchmark
+    public Integer get(Counters counters) {
+        long start = compared;
+        Integer value = map.get(nextKey());
+        counters.comparisons += compared - start;
+        return value;
+    }
+
+    @Benchmark
+    public Integer replace(Counters counters) {
+        long start = compared;
+        Integer key = nextKey();
+        Integer previous = map.put(key, key);
+        counters.comparisons += compared - start;
+        return previous;
+    }
+
+    @Benchmark
+    public Integer removeAndPut(Counters counters) {
+        long start = compared;
+        Integer key = nextKey();
+        map.remove(key);
+        Integer previous = map.put(key, key);
+        counters.comparisons += compared - start;
+        return previous;
+    }
+}
@@ -0,0 +1,115 @@
+package com.epam.java.se.benchmarks;
+
+import com.epam.java.se.ConcurrentCustomTreeMap;
+import com.epam.java.se.CustomTreeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a map shared by several threads.
+ * <p>
+ * get is the read-only case; run it with -t 1, -t 2, -t 4 and so on to
+ * see how reads scale with cores. readWrite runs three readers next to
+ * one writer, so it also shows whether readers are slowed down by a
+ * concurrent writer.
+ * <p>
+ * The param is not called implementation on purpose: these maps are
+ * not compared by the single-threaded regression gate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentMapBenchmark {
+    private static final long SEED = 42L;
+
+    @Param({"10000", "1000000"})
+    private int size;
+
+    @Param({"CONCURRENT_CUSTOM_TREE_MAP", "SYNCHRONIZED_CUSTOM_TREE_MAP", "CONCURRENT_SKIP_LIST_MAP"})
+    private SharedMap sharedMap;
+
+    private Long[] keys;
+    private Map<Long, Long> map;
+
+    /**
+     * Thread-safe maps compared by this benchmark.
+     */
+    public enum SharedMap {
+        CONCURRENT_CUSTOM_TREE_MAP {
+            @Override
+            Map<Long, Long> create() {
+                return new ConcurrentCustomTreeMap<>();
+            }
+        },
+        SYNCHRONIZED_CUSTOM_TREE_MAP {
+            @Override
+            Map<Long, Long> create() {
+                return Collections.synchronizedMap(new CustomTreeMap<Long, Long>());
+            }
+        },
+        CONCURRENT_SKIP_LIST_MAP {
+            @Override
+            Map<Long, Long> create() {
+                return new ConcurrentSkipListMap<>();
+            }
+        };
+
+        abstract Map<Long, Long> create();
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        keys = new Long[size];
+        map = sharedMap.create();
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextLong();
+            map.put(keys[i], keys[i]);
+        }
+    }
+
+    private Long randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(size)];
+    }
+
+    @Benchmark
+    public Long get() {
+        return map.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Long readWriteGet() {
+        return map.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Long readWritePut() {
+        Long key = randomKey();
+        return map.put(key, key);
+    }
+}
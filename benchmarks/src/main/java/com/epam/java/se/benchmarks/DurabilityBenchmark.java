@@ -0,0 +1,85 @@
+package com.epam.java.se.benchmarks;
+
+import com.epam.java.se.CustomTreeMap;
+import com.epam.java.se.SnapshotSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Puts into a durable CustomTreeMap with different group commit sizes,
+ * next to a map which is not durable. syncEvery 0 commits only when
+ * the log buffer is full. Each trial starts from an empty directory.
+ * <p>
+ * There is no implementation param since the JDK maps have no
+ * durable mode; the regression gate skips this benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DurabilityBenchmark {
+    private static final int KEYS = 1 << 16;
+    private static final long SEED = 42L;
+
+    /**
+     * -1 for a map which is not durable.
+     */
+    @Param({"-1", "1", "16", "256", "0"})
+    private int syncEvery;
+
+    private CustomTreeMap<Long, Long> map;
+    private Path directory;
+    private Long[] keys;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        map = new CustomTreeMap<>();
+        if (syncEvery >= 0) {
+            directory = Files.createTempDirectory("durability");
+            map.enableDurability(directory, SnapshotSerializer.LONG, SnapshotSerializer.LONG, syncEvery);
+        }
+        Random random = new Random(SEED);
+        keys = new Long[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = (long) random.nextInt(KEYS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (directory != null) {
+            map.disableDurability();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public Long put() {
+        Long key = keys[cursor++ & (KEYS - 1)];
+        return map.put(key, key);
+    }
+}
@@ -0,0 +1,111 @@
+package com.epam.java.se.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Key sets and access patterns used by the benchmarks.
+ * Random keys are produced by a bijective integer mix, so they are
+ * distinct without a dedup pass even for ten million keys.
+ */
+public enum KeyDistribution {
+    /**
+     * Keys 0..n-1 inserted and accessed in ascending order.
+     */
+    SEQUENTIAL {
+        @Override
+        public Comparable<?>[] keys(int size) {
+            Integer[] keys = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = i;
+            }
+            return keys;
+        }
+
+        @Override
+        public int[] accessPattern(int size, int length, Random random) {
+            int[] pattern = new int[length];
+            for (int i = 0; i < length; i++) {
+                pattern[i] = i % size;
+            }
+            return pattern;
+        }
+    },
+    /**
+     * Random integer keys accessed uniformly.
+     */
+    RANDOM {
+        @Override
+        public Comparable<?>[] keys(int size) {
+            Integer[] keys = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = mix(i);
+            }
+            return keys;
+        }
+    },
+    /**
+     * Random integer keys accessed with a Zipfian skew, so a few keys are hot.
+     */
+    ZIPFIAN {
+        @Override
+        public Comparable<?>[] keys(int size) {
+            return RANDOM.keys(size);
+        }
+
+        @Override
+        public int[] accessPattern(int size, int length, Random random) {
+            ZipfianGenerator zipfian = new ZipfianGenerator(size, ZipfianGenerator.DEFAULT_THETA, random);
+            int[] pattern = new int[length];
+            for (int i = 0; i < length; i++) {
+                pattern[i] = zipfian.next();
+            }
+            return pattern;
+        }
+    },
+    /**
+     * String keys sharing a common prefix, accessed uniformly.
+     */
+    STRING {
+        @Override
+        public Comparable<?>[] keys(int size) {
+            String[] keys = new String[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = String.format("user:%08x", mix(i));
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * @param size number of distinct keys.
+     * @return keys in the order they are inserted.
+     */
+    public abstract Comparable<?>[] keys(int size);
+
+    /**
+     * @param size   number of distinct keys.
+     * @param length number of accesses to generate.
+     * @param random source of randomness.
+     * @return indices into the key array in the order they are looked up.
+     */
+    public int[] accessPattern(int size, int length, Random random) {
+        int[] pattern = new int[length];
+        for (int i = 0; i < length; i++) {
+            pattern[i] = random.nextInt(size);
+        }
+        return pattern;
+    }
+
+    /**
+     * Murmur3 finalizer, a bijection on int.
+     */
+    static int mix(int value) {
+        int h = value;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,137 @@
+package com.epam.java.se.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded throughput of the basic Map operations for every
+ * implementation, size and key distribution.
+ * <p>
+ * Point operations pick their keys from a precomputed access pattern,
+ * so no time is spent generating keys inside the measured code.
+ * removeAndPut removes a present key and puts it back, which keeps the
+ * size stable while exercising both structural paths. parallelStream
+ * sums key hashes with a fork-join stream over the key set. putAll copies
+ * from a HashMap, putAllSorted from a TreeMap, which lets sorted-input
+ * bulk loading paths kick in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+    private static final int PATTERN_LENGTH = 1 << 20;
+    private static final int PATTERN_MASK = PATTERN_LENGTH - 1;
+    private static final long SEED = 42L;
+    private static final Object MISSING_VALUE = new Object();
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN", "STRING"})
+    private KeyDistribution distribution;
+
+    @Param({"CUSTOM_TREE_MAP", "TREE_MAP", "CONCURRENT_SKIP_LIST_MAP"})
+    private MapImplementation implementation;
+
+    private Object[] keys;
+    private int[] pattern;
+    private int cursor;
+    private NavigableMap<Object, Object> map;
+    private Map<Object, Object> source;
+    private Map<Object, Object> sortedSource;
+
+    @SuppressWarnings("unchecked")
+    static NavigableMap<Object, Object> create(MapImplementation implementation) {
+        return (NavigableMap<Object, Object>) (NavigableMap<?, ?>) implementation.create();
+    }
+
+    @Setup
+    public void setUp() {
+        keys = distribution.keys(size);
+        pattern = distribution.accessPattern(size, PATTERN_LENGTH, new Random(SEED));
+        map = create(implementation);
+        for (Object key : keys) {
+            map.put(key, key);
+        }
+        source = new HashMap<>(map);
+        sortedSource = new TreeMap<>(map);
+    }
+
+    private Object nextKey() {
+        return keys[pattern[cursor++ & PATTERN_MASK]];
+    }
+
+    @Benchmark
+    public Object get() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Object put() {
+        Object key = nextKey();
+        return map.put(key, key);
+    }
+
+    @Benchmark
+    public Object removeAndPut() {
+        Object key = nextKey();
+        map.remove(key);
+        return map.put(key, key);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean containsValue() {
+        return map.containsValue(MISSING_VALUE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void iterate(Blackhole blackhole) {
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            blackhole.consume(entry.getValue());
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long parallelStream() {
+        return map.keySet().parallelStream().mapToLong(Object::hashCode).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<Object, Object> putAll() {
+        NavigableMap<Object, Object> copy = create(implementation);
+        copy.putAll(source);
+        return copy;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<Object, Object> putAllSorted() {
+        NavigableMap<Object, Object> copy = create(implementation);
+        copy.putAll(sortedSource);
+        return copy;
+    }
+}
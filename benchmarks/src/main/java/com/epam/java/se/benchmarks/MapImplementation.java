@@ -0,0 +1,47 @@
+package com.epam.java.se.benchmarks;
+
+import com.epam.java.se.CustomTreeMap;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted map implementations compared by the benchmarks.
+ * CUSTOM_TREE_MAP is the one under test, the others are JDK baselines.
+ */
+public enum MapImplementation {
+    CUSTOM_TREE_MAP(false) {
+        @Override
+        public <K extends Comparable<K>, V> NavigableMap<K, V> create() {
+            return new CustomTreeMap<>();
+        }
+    },
+    TREE_MAP(true) {
+        @Override
+        public <K extends Comparable<K>, V> NavigableMap<K, V> create() {
+            return new TreeMap<>();
+        }
+    },
+    CONCURRENT_SKIP_LIST_MAP(true) {
+        @Override
+        public <K extends Comparable<K>, V> NavigableMap<K, V> create() {
+            return new ConcurrentSkipListMap<>();
+        }
+    };
+
+    private final boolean baseline;
+
+    MapImplementation(boolean baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * @return true if this is a JDK implementation used as a reference.
+     */
+    public boolean isBaseline() {
+        return baseline;
+    }
+
+    public abstract <K extends Comparable<K>, V> NavigableMap<K, V> create();
+}
@@ -0,0 +1,126 @@
+package com.epam.java.se.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares every CustomTreeMap result with the best JDK baseline
+ * measured for the same benchmark and parameters.
+ * <p>
+ * A ratio is the CustomTreeMap time divided by the best baseline time,
+ * so 1.25 means CustomTreeMap is 25% slower. For throughput modes the
+ * scores are inverted first. A result regresses when its ratio is
+ * greater than the allowed one.
+ */
+public class RegressionGate {
+    private final double maxRatio;
+
+    /**
+     * @param maxRatio largest accepted ratio of CustomTreeMap time
+     *                 to the best baseline time.
+     */
+    public RegressionGate(double maxRatio) {
+        if (maxRatio <= 0) {
+            throw new IllegalArgumentException("maxRatio must be positive: " + maxRatio);
+        }
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * @param results results of one JMH run.
+     * @return one line per compared benchmark, with regressions marked.
+     */
+    public List<Comparison> compare(Collection<RunResult> results) {
+        Map<String, Double> candidates = new LinkedHashMap<>();
+        Map<String, Double> baselines = new LinkedHashMap<>();
+        Map<String, String> baselineNames = new LinkedHashMap<>();
+
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String implementation = params.getParam("implementation");
+            if (implementation == null) {
+                continue;
+            }
+            String key = groupKey(params);
+            double time = timeOf(params.getMode(), result.getPrimaryResult().getScore());
+            if (MapImplementation.valueOf(implementation).isBaseline()) {
+                Double best = baselines.get(key);
+                if (best == null || time < best) {
+                    baselines.put(key, time);
+                    baselineNames.put(key, implementation);
+                }
+            } else {
+                candidates.put(key, time);
+            }
+        }
+
+        List<Comparison> comparisons = new ArrayList<>();
+        for (Map.Entry<String, Double> candidate : candidates.entrySet()) {
+            Double baseline = baselines.get(candidate.getKey());
+            if (baseline == null) {
+                continue;
+            }
+            double ratio = candidate.getValue() / baseline;
+            comparisons.add(new Comparison(candidate.getKey(), baselineNames.get(candidate.getKey()),
+                    ratio, ratio > maxRatio));
+        }
+        return comparisons;
+    }
+
+    private static String groupKey(BenchmarkParams params) {
+        StringBuilder key = new StringBuilder(params.getBenchmark());
+        for (String name : params.getParamsKeys()) {
+            if (!name.equals("implementation")) {
+                key.append(' ').append(name).append('=').append(params.getParam(name));
+            }
+        }
+        return key.toString();
+    }
+
+    private static double timeOf(Mode mode, double score) {
+        return mode == Mode.Throughput ? 1 / score : score;
+    }
+
+    public static class Comparison {
+        private final String benchmark;
+        private final String baseline;
+        private final double ratio;
+        private final boolean regression;
+
+        Comparison(String benchmark, String baseline, double ratio, boolean regression) {
+            this.benchmark = benchmark;
+            this.baseline = baseline;
+            this.ratio = ratio;
+            this.regression = regression;
+        }
+
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        public String getBaseline() {
+            return baseline;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public boolean isRegression() {
+            return regression;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %-60s %.2fx vs %s", regression ? "SLOWER" : "ok    ",
+                    benchmark, ratio, baseline);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.epam.java.se.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Draws ranks from [0, items) so that rank i is chosen with probability
+ * proportional to 1 / (i + 1)^theta. Uses the closed form from
+ * Gray et al. "Quickly Generating Billion-Record Synthetic Databases",
+ * which needs O(items) time once to compute zeta and O(1) per draw.
+ */
+public class ZipfianGenerator {
+    public static final double DEFAULT_THETA = 0.99;
+
+    private final int items;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+    private final Random random;
+
+    public ZipfianGenerator(int items, double theta, Random random) {
+        if (items < 2) {
+            throw new IllegalArgumentException("items must be at least 2: " + items);
+        }
+        this.items = items;
+        this.theta = theta;
+        this.random = random;
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the next rank, 0 being the most popular one.
+     */
+    public int next() {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        int rank = (int) (items * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(rank, items - 1);
+    }
+}
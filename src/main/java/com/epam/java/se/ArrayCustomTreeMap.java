@@ -0,0 +1,846 @@
+package com.epam.java.se;
+
+import java.util.*;
+
+/**
+ * Class represents an implementation of Custom TreeMap with the same
+ * left-leaning Red-Black Tree algorithm as CustomTreeMap, but nodes are
+ * stored as slots of parallel arrays instead of separate objects:
+ * keys and values in Object arrays, child links and subtree sizes in
+ * int arrays and colors packed one bit per node in a long array.
+ * Removed slots are chained into a free list and reused by later puts.
+ * This saves the object header and references of every node and keeps
+ * the links of neighbouring nodes in the same cache lines.
+ *
+ * @see CustomTreeMap
+ */
+public class ArrayCustomTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+    private static final int NIL = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    private Object[] keys;
+    private Object[] values;
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private long[] colors;
+    private int root = NIL;
+    private int top;
+    private int freeHead = NIL;
+    private int modCount;
+    private Set<K> keySet;
+    private Collection<V> valuesView;
+    private Set<Entry<K, V>> entrySet;
+
+    public ArrayCustomTreeMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity number of nodes the arrays can hold before
+     *                        they have to grow.
+     * @throws IllegalArgumentException if initialCapacity is negative.
+     */
+    public ArrayCustomTreeMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        }
+        int capacity = Math.max(initialCapacity, 1);
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        sizes = new int[capacity];
+        colors = new long[(capacity + 63) >>> 6];
+    }
+
+    private int allocate(K key, V value) {
+        int slot;
+        if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = left[slot];
+        } else {
+            if (top == keys.length) {
+                grow();
+            }
+            slot = top++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        left[slot] = NIL;
+        right[slot] = NIL;
+        sizes[slot] = 1;
+        setColor(slot, RED);
+        return slot;
+    }
+
+    private void free(int slot) {
+        keys[slot] = null;
+        values[slot] = null;
+        left[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    private void grow() {
+        int capacity = keys.length + (keys.length >> 1) + 1;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        colors = Arrays.copyOf(colors, (capacity + 63) >>> 6);
+    }
+
+    private K key(int slot) {
+        return (K) keys[slot];
+    }
+
+    private V value(int slot) {
+        return (V) values[slot];
+    }
+
+    private int size(int slot) {
+        return slot == NIL ? 0 : sizes[slot];
+    }
+
+    private boolean isRed(int slot) {
+        return slot != NIL && (colors[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void setColor(int slot, boolean color) {
+        if (color == RED) {
+            colors[slot >>> 6] |= 1L << slot;
+        } else {
+            colors[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * @return true if this map contains no key-value mappings
+     */
+    @Override
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        return find((K) key) != NIL;
+    }
+
+    /**
+     * @param value value whose presence in this map is to be tested,
+     *              allows null values.
+     * @return true specified value is presented in one or more keys
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < top; i++) {
+            if (keys[i] != null && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        int slot = find((K) key);
+        return slot == NIL ? null : value(slot);
+    }
+
+    private int find(K key) {
+        int slot = root;
+        while (slot != NIL) {
+            int cmp = key(slot).compareTo(key);
+            if (cmp > 0) {
+                slot = left[slot];
+            } else if (cmp < 0) {
+                slot = right[slot];
+            } else {
+                return slot;
+            }
+        }
+        return NIL;
+    }
+
+    /**
+     * Put key-value pairs in this map. Allows null values.
+     * If the map previously contained a mapping for the key,
+     * the old value is replaced in place.
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        int slot = find(key);
+        if (slot != NIL) {
+            V previous = value(slot);
+            values[slot] = value;
+            return previous;
+        }
+        root = put(root, key, value);
+        setColor(root, BLACK);
+        return null;
+    }
+
+    private int put(int slot, K key, V value) {
+        if (slot == NIL) {
+            modCount++;
+            return allocate(key, value);
+        }
+        // the child is assigned after the call, which may grow the arrays
+        if (key(slot).compareTo(key) > 0) {
+            int child = put(left[slot], key, value);
+            left[slot] = child;
+        } else {
+            int child = put(right[slot], key, value);
+            right[slot] = child;
+        }
+        return balance(slot);
+    }
+
+    private int rotateRight(int slot) {
+        int newSlot = left[slot];
+        left[slot] = right[newSlot];
+        right[newSlot] = slot;
+        setColor(newSlot, isRed(slot));
+        setColor(slot, RED);
+        sizes[newSlot] = sizes[slot];
+        sizes[slot] = size(left[slot]) + size(right[slot]) + 1;
+        return newSlot;
+    }
+
+    private int rotateLeft(int slot) {
+        int newSlot = right[slot];
+        right[slot] = left[newSlot];
+        left[newSlot] = slot;
+        setColor(newSlot, isRed(slot));
+        setColor(slot, RED);
+        sizes[newSlot] = sizes[slot];
+        sizes[slot] = size(left[slot]) + size(right[slot]) + 1;
+        return newSlot;
+    }
+
+    private void flipColors(int slot) {
+        setColor(slot, !isRed(slot));
+        setColor(left[slot], !isRed(left[slot]));
+        setColor(right[slot], !isRed(right[slot]));
+    }
+
+    private int balance(int slot) {
+        if (isRed(right[slot]) && !isRed(left[slot])) {
+            slot = rotateLeft(slot);
+        }
+        if (isRed(left[slot]) && isRed(left[left[slot]])) {
+            slot = rotateRight(slot);
+        }
+        if (isRed(left[slot]) && isRed(right[slot])) {
+            flipColors(slot);
+        }
+        sizes[slot] = size(left[slot]) + size(right[slot]) + 1;
+        return slot;
+    }
+
+    private int moveRedLeft(int slot) {
+        flipColors(slot);
+        if (isRed(left[right[slot]])) {
+            right[slot] = rotateRight(right[slot]);
+            slot = rotateLeft(slot);
+            flipColors(slot);
+        }
+        return slot;
+    }
+
+    private int moveRedRight(int slot) {
+        flipColors(slot);
+        if (isRed(left[left[slot]])) {
+            slot = rotateRight(slot);
+            flipColors(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Removes key-value pairs in this map, keeping the tree balanced.
+     * The freed slot goes to the free list.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        int slot = find((K) key);
+        if (slot == NIL) {
+            return null;
+        }
+        V previous = value(slot);
+        modCount++;
+        if (!isRed(left[root]) && !isRed(right[root])) {
+            setColor(root, RED);
+        }
+        root = remove(root, (K) key);
+        if (root != NIL) {
+            setColor(root, BLACK);
+        }
+        free(slot);
+        return previous;
+    }
+
+    private int remove(int slot, K key) {
+        if (key(slot).compareTo(key) > 0) {
+            if (!isRed(left[slot]) && !isRed(left[left[slot]])) {
+                slot = moveRedLeft(slot);
+            }
+            left[slot] = remove(left[slot], key);
+        } else {
+            if (isRed(left[slot])) {
+                slot = rotateRight(slot);
+            }
+            if (key(slot).compareTo(key) == 0 && right[slot] == NIL) {
+                return NIL;
+            }
+            if (!isRed(right[slot]) && !isRed(left[right[slot]])) {
+                slot = moveRedRight(slot);
+            }
+            if (key(slot).compareTo(key) == 0) {
+                int temp = slot;
+                slot = findMin(right[temp]);
+                right[slot] = removeMin(right[temp]);
+                left[slot] = left[temp];
+                setColor(slot, isRed(temp));
+            } else {
+                right[slot] = remove(right[slot], key);
+            }
+        }
+        return balance(slot);
+    }
+
+    private int removeMin(int slot) {
+        if (left[slot] == NIL) {
+            return NIL;
+        }
+        if (!isRed(left[slot]) && !isRed(left[left[slot]])) {
+            slot = moveRedLeft(slot);
+        }
+        left[slot] = removeMin(left[slot]);
+        return balance(slot);
+    }
+
+    private int removeMax(int slot) {
+        if (isRed(left[slot])) {
+            slot = rotateRight(slot);
+        }
+        if (right[slot] == NIL) {
+            return NIL;
+        }
+        if (!isRed(right[slot]) && !isRed(left[right[slot]])) {
+            slot = moveRedRight(slot);
+        }
+        right[slot] = removeMax(right[slot]);
+        return balance(slot);
+    }
+
+    private int findMin(int slot) {
+        while (left[slot] != NIL) {
+            slot = left[slot];
+        }
+        return slot;
+    }
+
+    private int findMax(int slot) {
+        while (right[slot] != NIL) {
+            slot = right[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the mapping with the smallest key in this map.
+     *
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public void removeMin() {
+        if (root == NIL) {
+            throw new NoSuchElementException();
+        }
+        int min = findMin(root);
+        modCount++;
+        if (!isRed(left[root]) && !isRed(right[root])) {
+            setColor(root, RED);
+        }
+        root = removeMin(root);
+        if (root != NIL) {
+            setColor(root, BLACK);
+        }
+        free(min);
+    }
+
+    /**
+     * Removes the mapping with the largest key in this map.
+     *
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public void removeMax() {
+        if (root == NIL) {
+            throw new NoSuchElementException();
+        }
+        int max = findMax(root);
+        modCount++;
+        if (!isRed(left[root]) && !isRed(right[root])) {
+            setColor(root, RED);
+        }
+        root = removeMax(root);
+        if (root != NIL) {
+            setColor(root, BLACK);
+        }
+        free(max);
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K firstKey() {
+        if (root == NIL) {
+            throw new NoSuchElementException();
+        }
+        return key(findMin(root));
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K lastKey() {
+        if (root == NIL) {
+            throw new NoSuchElementException();
+        }
+        return key(findMax(root));
+    }
+
+    /**
+     * @param key the key to be ranked.
+     * @return the number of keys in this map less than the given key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public int rank(K key) {
+        Objects.requireNonNull(key);
+        int rank = 0;
+        int slot = root;
+        while (slot != NIL) {
+            int cmp = key.compareTo(key(slot));
+            if (cmp < 0) {
+                slot = left[slot];
+            } else if (cmp > 0) {
+                rank += size(left[slot]) + 1;
+                slot = right[slot];
+            } else {
+                return rank + size(left[slot]);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * @param index the rank of the key, starting from zero.
+     * @return the key such that exactly index keys are less than it.
+     * @throws IndexOutOfBoundsException if index is negative or
+     *                                   not less than size().
+     */
+    public K select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int slot = root;
+        while (true) {
+            int leftSize = size(left[slot]);
+            if (index < leftSize) {
+                slot = left[slot];
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                slot = right[slot];
+            } else {
+                return key(slot);
+            }
+        }
+    }
+
+    /**
+     * @return common height of this TreeMap
+     */
+    public int commonHeight() {
+        return Math.max(heightOfLeftSubtree(), heightOfRightSubtree());
+    }
+
+    /**
+     * @return height of left branches of this TreeMap
+     */
+    public int heightOfLeftSubtree() {
+        int height = 0;
+        for (int slot = root; slot != NIL; slot = left[slot]) {
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * @return height of right branches of this TreeMap
+     */
+    public int heightOfRightSubtree() {
+        int height = 0;
+        for (int slot = root; slot != NIL; slot = right[slot]) {
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * @return true if height of left branches equals or one less
+     * than height of right branches and visa versa.
+     */
+    public boolean isBalanced() {
+        return Math.abs(heightOfLeftSubtree() - heightOfRightSubtree()) <= 1;
+    }
+
+    /**
+     * Validates the left-leaning red-black invariants of this map.
+     *
+     * @return true if all invariants hold.
+     * @see CustomTreeMap#isValidRedBlackTree()
+     */
+    public boolean isValidRedBlackTree() {
+        return !isRed(root) && isValid(root, null, null) && blackHeight(root) != -1;
+    }
+
+    private boolean isValid(int slot, K min, K max) {
+        if (slot == NIL) {
+            return true;
+        }
+        K key = key(slot);
+        if ((min != null && key.compareTo(min) <= 0) || (max != null && key.compareTo(max) >= 0)) {
+            return false;
+        }
+        if (sizes[slot] != size(left[slot]) + size(right[slot]) + 1) {
+            return false;
+        }
+        if (isRed(right[slot]) || (isRed(slot) && isRed(left[slot]))) {
+            return false;
+        }
+        return isValid(left[slot], min, key) && isValid(right[slot], key, max);
+    }
+
+    private int blackHeight(int slot) {
+        if (slot == NIL) {
+            return 0;
+        }
+        int leftHeight = blackHeight(left[slot]);
+        int rightHeight = blackHeight(right[slot]);
+        if (leftHeight == -1 || rightHeight == -1 || leftHeight != rightHeight) {
+            return -1;
+        }
+        return isRed(slot) ? leftHeight : leftHeight + 1;
+    }
+
+    /**
+     * Clears entire map. The arrays keep their capacity.
+     */
+    @Override
+    public void clear() {
+        if (root != NIL) {
+            modCount++;
+        }
+        Arrays.fill(keys, 0, top, null);
+        Arrays.fill(values, 0, top, null);
+        root = NIL;
+        top = 0;
+        freeHead = NIL;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map
+     *
+     * @param m - mappings from specified map to be stored in this map
+     * @throws NullPointerException if specified map or it's key is null.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        Objects.requireNonNull(m);
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return a live view of the keys contained in this map, in ascending order.
+     */
+    @Override
+    public Set<K> keySet() {
+        if (keySet == null) {
+            keySet = new AbstractSet<K>() {
+                @Override
+                public Iterator<K> iterator() {
+                    return new SlotIterator<K>() {
+                        @Override
+                        K element(int slot) {
+                            return key(slot);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ArrayCustomTreeMap.this.size();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public void clear() {
+                    ArrayCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return keySet;
+    }
+
+    /**
+     * @return a live view of the values contained in this map, ordered by their keys.
+     */
+    @Override
+    public Collection<V> values() {
+        if (valuesView == null) {
+            valuesView = new AbstractCollection<V>() {
+                @Override
+                public Iterator<V> iterator() {
+                    return new SlotIterator<V>() {
+                        @Override
+                        V element(int slot) {
+                            return value(slot);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ArrayCustomTreeMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ArrayCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return valuesView;
+    }
+
+    /**
+     * @return a live view of the key-value pairs contained in this map,
+     * ordered by their keys. Entries support setValue.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new SlotIterator<Entry<K, V>>() {
+                        @Override
+                        Entry<K, V> element(int slot) {
+                            return new SlotEntry(slot);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ArrayCustomTreeMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ArrayCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Entry which reads and writes its slot directly, so setValue
+     * writes through to the map. Once the key is removed the slot may be
+     * reused by another key, so the entry then detaches: it keeps the
+     * value it saw last and setValue no longer changes the map, like a
+     * removed entry of CustomTreeMap.
+     */
+    private class SlotEntry implements Entry<K, V> {
+        private final int slot;
+        private final K key;
+        private V value;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+            this.key = key(slot);
+            this.value = value(slot);
+        }
+
+        /**
+         * @return true if the slot still holds the key. A freed slot
+         * holds no key until it is reused.
+         */
+        private boolean isLive() {
+            return keys[slot] == key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            if (isLive()) {
+                value = value(slot);
+            }
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V previous = getValue();
+            if (isLive()) {
+                values[slot] = value;
+            }
+            this.value = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /**
+     * In-order iterator over slots with an int array as the stack.
+     * Fail-fast, and remove() re-seeks to the successor of the removed key.
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int[] stack = new int[64];
+        private int depth;
+        private int lastReturned = NIL;
+        private int expectedModCount = modCount;
+
+        SlotIterator() {
+            pushLeft(root);
+        }
+
+        abstract T element(int slot);
+
+        private void push(int slot) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = slot;
+        }
+
+        private void pushLeft(int slot) {
+            while (slot != NIL) {
+                push(slot);
+                slot = left[slot];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            int slot = stack[--depth];
+            pushLeft(right[slot]);
+            lastReturned = slot;
+            return element(slot);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            K key = key(lastReturned);
+            ArrayCustomTreeMap.this.remove(key);
+            depth = 0;
+            int slot = root;
+            while (slot != NIL) {
+                if (key(slot).compareTo(key) > 0) {
+                    push(slot);
+                    slot = left[slot];
+                } else {
+                    slot = right[slot];
+                }
+            }
+            lastReturned = NIL;
+            expectedModCount = modCount;
+        }
+    }
+}
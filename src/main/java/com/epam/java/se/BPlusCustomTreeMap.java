@@ -0,0 +1,873 @@
+package com.epam.java.se;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Class represents a sorted map with the contract of CustomTreeMap kept
+ * in a B+-tree instead of a binary tree. A node holds up to fanout keys
+ * in arrays, so a lookup visits log_fanout(n) nodes and binary searches
+ * each one, which costs far fewer cache misses than one node per level.
+ * Inner nodes only route and count: they keep the separator keys and
+ * the number of keys below every child, which gives rank and select in
+ * O(log n). Mappings live in the leaves, which are linked in key order,
+ * so iteration and range scans walk consecutive arrays.
+ * <p>
+ * Every node except the root is at least half full: overflowing nodes
+ * are split in two, underflowing ones borrow a key from a sibling or
+ * are merged with it.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of mapped values
+ * @see CustomTreeMap
+ */
+public class BPlusCustomTreeMap<K, V> extends AbstractMap<K, V> {
+    private static final int DEFAULT_FANOUT = 64;
+    private static final int MIN_FANOUT = 4;
+
+    private final int fanout;
+    private final int minCount;
+    private final Comparator<? super K> comparator;
+    private Page root;
+    private Leaf head;
+    private int size;
+    private int height = 1;
+    private int modCount;
+    private Set<Entry<K, V>> entrySet;
+
+    /**
+     * Creates an empty map with fanout 64, sorted by the natural ordering.
+     */
+    public BPlusCustomTreeMap() {
+        this(DEFAULT_FANOUT, null);
+    }
+
+    /**
+     * @param fanout     the largest number of keys of a leaf and of
+     *                   children of an inner node.
+     * @param comparator orders the keys, null for their natural ordering.
+     * @throws IllegalArgumentException if fanout is less than 4.
+     */
+    public BPlusCustomTreeMap(int fanout, Comparator<? super K> comparator) {
+        if (fanout < MIN_FANOUT) {
+            throw new IllegalArgumentException("fanout must be at least " + MIN_FANOUT + ": " + fanout);
+        }
+        this.fanout = fanout;
+        this.minCount = fanout / 2;
+        this.comparator = comparator;
+        clear();
+    }
+
+    private abstract static class Page {
+        int count;
+    }
+
+    private static final class Leaf extends Page {
+        final Object[] keys;
+        final Object[] values;
+        Leaf next;
+        Leaf prev;
+
+        Leaf(int fanout) {
+            keys = new Object[fanout + 1];
+            values = new Object[fanout + 1];
+        }
+    }
+
+    /**
+     * The new right sibling of a page which was split, and the separator
+     * the parent puts before it.
+     */
+    private static final class Split {
+        final Object key;
+        final Page right;
+
+        Split(Object key, Page right) {
+            this.key = key;
+            this.right = right;
+        }
+    }
+
+    /**
+     * Mapping of the key an insert replaced or a delete removed, if the
+     * key was present.
+     */
+    private static final class Previous {
+        boolean present;
+        Object value;
+    }
+
+    /**
+     * children[i] holds the keys from keys[i - 1], inclusive, to keys[i],
+     * exclusive, and sizes[i] is their number.
+     */
+    private static final class Inner extends Page {
+        final Object[] keys;
+        final Page[] children;
+        final int[] sizes;
+
+        Inner(int fanout) {
+            keys = new Object[fanout];
+            children = new Page[fanout + 1];
+            sizes = new int[fanout + 1];
+        }
+    }
+
+    private int compare(K key, K other) {
+        return comparator == null ? ((Comparable<? super K>) key).compareTo(other)
+                : comparator.compare(key, other);
+    }
+
+    /**
+     * Binary search of keys[0, count).
+     *
+     * @return the index of the key, or -(insertion point) - 1.
+     */
+    private int search(Object[] keys, int count, K key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare((K) keys[mid], key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private int childIndex(Inner inner, K key) {
+        int i = search(inner.keys, inner.count - 1, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private Leaf findLeaf(K key) {
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            page = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) page;
+    }
+
+    private int sizeOf(Page page) {
+        if (page instanceof Leaf) {
+            return page.count;
+        }
+        int size = 0;
+        for (int i = 0; i < page.count; i++) {
+            size += ((Inner) page).sizes[i];
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for
+     * the specified key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        Leaf leaf = findLeaf((K) key);
+        return search(leaf.keys, leaf.count, (K) key) >= 0;
+    }
+
+    /**
+     * Scans the values leaf by leaf.
+     *
+     * @param value value whose presence in this map is to be tested,
+     *              allows null values.
+     * @return true specified value is presented in one or more keys
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        for (Leaf leaf = head; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.count; i++) {
+                if (Objects.equals(value, leaf.values[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        Leaf leaf = findLeaf((K) key);
+        int i = search(leaf.keys, leaf.count, (K) key);
+        return i >= 0 ? (V) leaf.values[i] : null;
+    }
+
+    /**
+     * Puts a mapping, splitting the pages which overflow on the way back
+     * to the root; a split root adds a level.
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        if (size == 0) {
+            // the first key is compared nowhere else, check its type
+            compare(key, key);
+        }
+        Previous previous = new Previous();
+        Split split = insert(root, key, value, previous);
+        if (split != null) {
+            Inner newRoot = new Inner(fanout);
+            newRoot.children[0] = root;
+            newRoot.children[1] = split.right;
+            newRoot.keys[0] = split.key;
+            newRoot.sizes[0] = sizeOf(root);
+            newRoot.sizes[1] = sizeOf(split.right);
+            newRoot.count = 2;
+            root = newRoot;
+            height++;
+        }
+        if (!previous.present) {
+            size++;
+            modCount++;
+        }
+        return (V) previous.value;
+    }
+
+    /**
+     * @param previous receives the replaced mapping if the key is present.
+     * @return the split if the page overflowed, otherwise null.
+     */
+    private Split insert(Page page, K key, V value, Previous previous) {
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            int i = search(leaf.keys, leaf.count, key);
+            if (i >= 0) {
+                previous.present = true;
+                previous.value = leaf.values[i];
+                leaf.values[i] = value;
+                return null;
+            }
+            i = -i - 1;
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+            System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.count - i);
+            leaf.keys[i] = key;
+            leaf.values[i] = value;
+            leaf.count++;
+            return leaf.count > fanout ? splitLeaf(leaf) : null;
+        }
+        Inner inner = (Inner) page;
+        int i = childIndex(inner, key);
+        Split split = insert(inner.children[i], key, value, previous);
+        if (!previous.present) {
+            inner.sizes[i]++;
+        }
+        if (split == null) {
+            return null;
+        }
+        int moved = inner.count - i - 1;
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, moved);
+        System.arraycopy(inner.sizes, i + 1, inner.sizes, i + 2, moved);
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, moved);
+        int splitSize = sizeOf(split.right);
+        inner.children[i + 1] = split.right;
+        inner.sizes[i + 1] = splitSize;
+        inner.sizes[i] -= splitSize;
+        inner.keys[i] = split.key;
+        inner.count++;
+        return inner.count > fanout ? splitInner(inner) : null;
+    }
+
+    private Split splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(fanout);
+        int mid = leaf.count / 2;
+        right.count = leaf.count - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.count);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.count);
+        Arrays.fill(leaf.keys, mid, leaf.count, null);
+        Arrays.fill(leaf.values, mid, leaf.count, null);
+        leaf.count = mid;
+        right.next = leaf.next;
+        if (right.next != null) {
+            right.next.prev = right;
+        }
+        right.prev = leaf;
+        leaf.next = right;
+        return new Split(right.keys[0], right);
+    }
+
+    private Split splitInner(Inner inner) {
+        Inner right = new Inner(fanout);
+        int mid = inner.count / 2;
+        right.count = inner.count - mid;
+        System.arraycopy(inner.children, mid, right.children, 0, right.count);
+        System.arraycopy(inner.sizes, mid, right.sizes, 0, right.count);
+        System.arraycopy(inner.keys, mid, right.keys, 0, right.count - 1);
+        Object separator = inner.keys[mid - 1];
+        Arrays.fill(inner.children, mid, inner.count, null);
+        Arrays.fill(inner.keys, mid - 1, inner.count - 1, null);
+        inner.count = mid;
+        return new Split(separator, right);
+    }
+
+    /**
+     * Removes a mapping, rebalancing the pages which underflow on the
+     * way back to the root; a root left with one child loses a level.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        Previous removed = new Previous();
+        if (!delete(root, (K) key, removed)) {
+            return null;
+        }
+        size--;
+        modCount++;
+        if (root instanceof Inner && root.count == 1) {
+            root = ((Inner) root).children[0];
+            height--;
+        }
+        return (V) removed.value;
+    }
+
+    /**
+     * @param removed receives the removed mapping.
+     * @return true if the key was present.
+     */
+    private boolean delete(Page page, K key, Previous removed) {
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            int i = search(leaf.keys, leaf.count, key);
+            if (i < 0) {
+                return false;
+            }
+            removed.present = true;
+            removed.value = leaf.values[i];
+            leaf.count--;
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i);
+            System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.count - i);
+            leaf.keys[leaf.count] = null;
+            leaf.values[leaf.count] = null;
+            return true;
+        }
+        Inner inner = (Inner) page;
+        int i = childIndex(inner, key);
+        if (!delete(inner.children[i], key, removed)) {
+            return false;
+        }
+        inner.sizes[i]--;
+        if (inner.children[i].count < minCount) {
+            rebalance(inner, i);
+        }
+        return true;
+    }
+
+    /**
+     * Refills the underflowing child i with a key from a sibling which
+     * can spare one, otherwise merges it with a sibling.
+     */
+    private void rebalance(Inner parent, int i) {
+        if (i > 0 && parent.children[i - 1].count > minCount) {
+            borrowFromLeft(parent, i);
+        } else if (i + 1 < parent.count && parent.children[i + 1].count > minCount) {
+            borrowFromRight(parent, i);
+        } else if (i > 0) {
+            merge(parent, i - 1);
+        } else {
+            merge(parent, i);
+        }
+    }
+
+    private void borrowFromLeft(Inner parent, int i) {
+        Page page = parent.children[i];
+        int moved;
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            Leaf left = (Leaf) parent.children[i - 1];
+            left.count--;
+            System.arraycopy(leaf.keys, 0, leaf.keys, 1, leaf.count);
+            System.arraycopy(leaf.values, 0, leaf.values, 1, leaf.count);
+            leaf.keys[0] = left.keys[left.count];
+            leaf.values[0] = left.values[left.count];
+            left.keys[left.count] = null;
+            left.values[left.count] = null;
+            leaf.count++;
+            parent.keys[i - 1] = leaf.keys[0];
+            moved = 1;
+        } else {
+            Inner inner = (Inner) page;
+            Inner left = (Inner) parent.children[i - 1];
+            left.count--;
+            System.arraycopy(inner.children, 0, inner.children, 1, inner.count);
+            System.arraycopy(inner.sizes, 0, inner.sizes, 1, inner.count);
+            System.arraycopy(inner.keys, 0, inner.keys, 1, inner.count - 1);
+            inner.children[0] = left.children[left.count];
+            inner.sizes[0] = left.sizes[left.count];
+            inner.keys[0] = parent.keys[i - 1];
+            parent.keys[i - 1] = left.keys[left.count - 1];
+            left.children[left.count] = null;
+            left.keys[left.count - 1] = null;
+            inner.count++;
+            moved = inner.sizes[0];
+        }
+        parent.sizes[i - 1] -= moved;
+        parent.sizes[i] += moved;
+    }
+
+    private void borrowFromRight(Inner parent, int i) {
+        Page page = parent.children[i];
+        int moved;
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            Leaf right = (Leaf) parent.children[i + 1];
+            leaf.keys[leaf.count] = right.keys[0];
+            leaf.values[leaf.count] = right.values[0];
+            leaf.count++;
+            right.count--;
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count);
+            System.arraycopy(right.values, 1, right.values, 0, right.count);
+            right.keys[right.count] = null;
+            right.values[right.count] = null;
+            parent.keys[i] = right.keys[0];
+            moved = 1;
+        } else {
+            Inner inner = (Inner) page;
+            Inner right = (Inner) parent.children[i + 1];
+            inner.children[inner.count] = right.children[0];
+            inner.sizes[inner.count] = right.sizes[0];
+            inner.keys[inner.count - 1] = parent.keys[i];
+            parent.keys[i] = right.keys[0];
+            moved = right.sizes[0];
+            inner.count++;
+            right.count--;
+            System.arraycopy(right.children, 1, right.children, 0, right.count);
+            System.arraycopy(right.sizes, 1, right.sizes, 0, right.count);
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            right.children[right.count] = null;
+            right.keys[right.count - 1] = null;
+        }
+        parent.sizes[i] += moved;
+        parent.sizes[i + 1] -= moved;
+    }
+
+    /**
+     * Merges child i + 1 into child i and removes it from the parent.
+     */
+    private void merge(Inner parent, int i) {
+        Page page = parent.children[i];
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            Leaf right = (Leaf) parent.children[i + 1];
+            System.arraycopy(right.keys, 0, leaf.keys, leaf.count, right.count);
+            System.arraycopy(right.values, 0, leaf.values, leaf.count, right.count);
+            leaf.count += right.count;
+            leaf.next = right.next;
+            if (leaf.next != null) {
+                leaf.next.prev = leaf;
+            }
+        } else {
+            Inner inner = (Inner) page;
+            Inner right = (Inner) parent.children[i + 1];
+            inner.keys[inner.count - 1] = parent.keys[i];
+            System.arraycopy(right.keys, 0, inner.keys, inner.count, right.count - 1);
+            System.arraycopy(right.children, 0, inner.children, inner.count, right.count);
+            System.arraycopy(right.sizes, 0, inner.sizes, inner.count, right.count);
+            inner.count += right.count;
+        }
+        parent.sizes[i] += parent.sizes[i + 1];
+        int moved = parent.count - i - 2;
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, moved);
+        System.arraycopy(parent.sizes, i + 2, parent.sizes, i + 1, moved);
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, moved);
+        parent.count--;
+        parent.children[parent.count] = null;
+        parent.keys[parent.count - 1] = null;
+    }
+
+    /**
+     * Clears entire map.
+     */
+    @Override
+    public void clear() {
+        head = new Leaf(fanout);
+        root = head;
+        height = 1;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K firstKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return (K) head.keys[0];
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K lastKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        Page page = root;
+        while (page instanceof Inner) {
+            page = ((Inner) page).children[page.count - 1];
+        }
+        return (K) ((Leaf) page).keys[page.count - 1];
+    }
+
+    /**
+     * @return the greatest key less than or equal to the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public K floorKey(K key) {
+        return lower(key, true);
+    }
+
+    /**
+     * @return the greatest key strictly less than the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public K lowerKey(K key) {
+        return lower(key, false);
+    }
+
+    /**
+     * @return the least key greater than or equal to the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public K ceilingKey(K key) {
+        return higher(key, true);
+    }
+
+    /**
+     * @return the least key strictly greater than the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public K higherKey(K key) {
+        return higher(key, false);
+    }
+
+    private K lower(K key, boolean inclusive) {
+        Objects.requireNonNull(key);
+        Leaf leaf = findLeaf(key);
+        int i = search(leaf.keys, leaf.count, key);
+        int index = i >= 0 ? (inclusive ? i : i - 1) : -i - 2;
+        if (index >= 0) {
+            return (K) leaf.keys[index];
+        }
+        return leaf.prev == null ? null : (K) leaf.prev.keys[leaf.prev.count - 1];
+    }
+
+    private K higher(K key, boolean inclusive) {
+        Objects.requireNonNull(key);
+        Leaf leaf = findLeaf(key);
+        int i = search(leaf.keys, leaf.count, key);
+        int index = i >= 0 ? (inclusive ? i : i + 1) : -i - 1;
+        if (index < leaf.count) {
+            return (K) leaf.keys[index];
+        }
+        return leaf.next == null ? null : (K) leaf.next.keys[0];
+    }
+
+    /**
+     * Counts keys strictly less than the given key in O(log n), adding
+     * up the subtree sizes kept in the inner nodes.
+     *
+     * @param key the key, which need not be present.
+     * @return the number of keys less than the given key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public int rank(K key) {
+        return rank(key, false);
+    }
+
+    private int rank(K key, boolean inclusive) {
+        Objects.requireNonNull(key);
+        int rank = 0;
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            int child = childIndex(inner, key);
+            for (int i = 0; i < child; i++) {
+                rank += inner.sizes[i];
+            }
+            page = inner.children[child];
+        }
+        Leaf leaf = (Leaf) page;
+        int i = search(leaf.keys, leaf.count, key);
+        return rank + (i >= 0 ? i + (inclusive ? 1 : 0) : -i - 1);
+    }
+
+    /**
+     * Returns the key with the given rank in O(log n), so select(0)
+     * is the smallest key and select(size() - 1) is the largest one.
+     *
+     * @param index the rank of the key, starting from zero.
+     * @return the key such that exactly index keys are less than it.
+     * @throws IndexOutOfBoundsException if index is negative or
+     *                                   not less than size().
+     */
+    public K select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Page page = root;
+        while (page instanceof Inner) {
+            Inner inner = (Inner) page;
+            int child = 0;
+            while (index >= inner.sizes[child]) {
+                index -= inner.sizes[child++];
+            }
+            page = inner.children[child];
+        }
+        return (K) ((Leaf) page).keys[index];
+    }
+
+    /**
+     * Counts keys between lo and hi, both inclusive, in O(log n).
+     *
+     * @param lo the low endpoint of the range.
+     * @param hi the high endpoint of the range.
+     * @return the number of keys in [lo, hi], or 0 if lo is greater than hi.
+     * @throws NullPointerException if lo or hi is null.
+     */
+    public int countInRange(K lo, K hi) {
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        if (compare(lo, hi) > 0) {
+            return 0;
+        }
+        return rank(hi, true) - rank(lo, false);
+    }
+
+    /**
+     * Passes the mappings with keys between lo and hi, both inclusive,
+     * to the action in ascending order, walking the linked leaves.
+     *
+     * @param lo     the low endpoint of the range.
+     * @param hi     the high endpoint of the range.
+     * @param action the action to be performed for each mapping.
+     * @throws NullPointerException if an argument is null.
+     */
+    public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(hi);
+        Objects.requireNonNull(action);
+        Leaf leaf = findLeaf(Objects.requireNonNull(lo));
+        int i = search(leaf.keys, leaf.count, lo);
+        int index = i >= 0 ? i : -i - 1;
+        for (; leaf != null; leaf = leaf.next, index = 0) {
+            for (; index < leaf.count; index++) {
+                K key = (K) leaf.keys[index];
+                if (compare(key, hi) > 0) {
+                    return;
+                }
+                action.accept(key, (V) leaf.values[index]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of levels, 1 for a map held in a single leaf.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Validates the B+-tree invariants of this map: keys are sorted and
+     * between the separators of their parents, every page except the
+     * root is at least half full, all leaves are at the same depth and
+     * linked in order, and the subtree sizes are consistent.
+     *
+     * @return true if all invariants hold.
+     */
+    public boolean isValidBPlusTree() {
+        List<Leaf> leaves = new ArrayList<>();
+        if (check(root, null, null, 1, leaves) != size) {
+            return false;
+        }
+        Leaf prev = null;
+        for (Leaf leaf : leaves) {
+            if (leaf.prev != prev || (prev != null && prev.next != leaf)) {
+                return false;
+            }
+            prev = leaf;
+        }
+        return leaves.get(0) == head && prev.next == null;
+    }
+
+    /**
+     * @return the number of keys of the subtree, or -1 if it is invalid.
+     */
+    private int check(Page page, K lo, K hi, int depth, List<Leaf> leaves) {
+        if (page != root && (page.count < minCount || page.count > fanout)) {
+            return -1;
+        }
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            if (depth != height || !isSorted(leaf.keys, leaf.count, lo, hi)) {
+                return -1;
+            }
+            leaves.add(leaf);
+            return leaf.count;
+        }
+        Inner inner = (Inner) page;
+        if (inner.count < 2 || !isSorted(inner.keys, inner.count - 1, lo, hi)) {
+            return -1;
+        }
+        int size = 0;
+        for (int i = 0; i < inner.count; i++) {
+            K childLo = i == 0 ? lo : (K) inner.keys[i - 1];
+            K childHi = i == inner.count - 1 ? hi : (K) inner.keys[i];
+            int childSize = check(inner.children[i], childLo, childHi, depth + 1, leaves);
+            if (childSize == -1 || childSize != inner.sizes[i]) {
+                return -1;
+            }
+            size += childSize;
+        }
+        return size;
+    }
+
+    /**
+     * @return true if keys[0, count) ascend strictly within [lo, hi).
+     */
+    private boolean isSorted(Object[] keys, int count, K lo, K hi) {
+        for (int i = 0; i < count; i++) {
+            K key = (K) keys[i];
+            if ((i > 0 && compare((K) keys[i - 1], key) >= 0)
+                    || (lo != null && compare(key, lo) < 0)
+                    || (hi != null && compare(key, hi) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a view of the mappings in ascending key order, iterated
+     * along the linked leaves. Its entries write values through.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new LeafIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    BPlusCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Fail-fast iterator over the leaves. Since removal may merge or
+     * rebalance leaves, remove() seeks the successor of the removed key.
+     */
+    private class LeafIterator implements Iterator<Entry<K, V>> {
+        private Leaf leaf = size == 0 ? null : head;
+        private int index;
+        private K lastKey;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return leaf != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (leaf == null) {
+                throw new NoSuchElementException();
+            }
+            lastKey = (K) leaf.keys[index];
+            Entry<K, V> entry = new SimpleEntry<K, V>(lastKey, (V) leaf.values[index]) {
+                @Override
+                public V setValue(V value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+            advance();
+            return entry;
+        }
+
+        private void advance() {
+            if (++index == leaf.count) {
+                leaf = leaf.next;
+                index = 0;
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            BPlusCustomTreeMap.this.remove(lastKey);
+            expectedModCount = modCount;
+            leaf = findLeaf(lastKey);
+            int i = search(leaf.keys, leaf.count, lastKey);
+            index = -i - 1;
+            if (index == leaf.count) {
+                leaf = leaf.next;
+                index = 0;
+            }
+            lastKey = null;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.epam.java.se;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Class represents a sorted cache: a CustomTreeMap holding at most
+ * capacity mappings. When a put adds a key to a full map, the key
+ * chosen by the eviction policy is removed through the tree's own
+ * deletion, so the tree stays balanced and memory stays flat.
+ * Expired keys (see EvictionPolicy#timeToLive) are treated as absent
+ * and removed before writes and when they are read.
+ * <p>
+ * Hits, misses and evictions are counted, and every evicted or expired
+ * mapping is passed to the eviction listener. Explicit removals are
+ * not evictions.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of mapped values
+ * @see EvictionPolicy
+ */
+public class BoundedCustomTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+    private final CustomTreeMap<K, V> map = new CustomTreeMap<>();
+    private final NavigableMap<K, V> readOnlyMap = Collections.unmodifiableNavigableMap(map);
+    private final int capacity;
+    private final EvictionPolicy<K> policy;
+    private final BiConsumer<? super K, ? super V> evictionListener;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private Set<Entry<K, V>> entrySet;
+
+    /**
+     * @param capacity the largest number of mappings.
+     * @param policy   chooses the keys to be evicted.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public BoundedCustomTreeMap(int capacity, EvictionPolicy<K> policy) {
+        this(capacity, policy, (key, value) -> {
+        });
+    }
+
+    /**
+     * @param capacity         the largest number of mappings.
+     * @param policy           chooses the keys to be evicted.
+     * @param evictionListener receives every evicted or expired mapping.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public BoundedCustomTreeMap(int capacity, EvictionPolicy<K> policy,
+                                BiConsumer<? super K, ? super V> evictionListener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = Objects.requireNonNull(policy);
+        this.evictionListener = Objects.requireNonNull(evictionListener);
+    }
+
+    /**
+     * @return the largest number of mappings this map holds.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of gets which found a live mapping.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of gets which found no mapping or an expired one.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of mappings evicted because the map was full
+     * or because they expired.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of key-value mappings in this map, including
+     * expired ones which are not removed yet.
+     */
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a live mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key) && !policy.isExpired((K) key);
+    }
+
+    /**
+     * Counts a hit or a miss and lets the policy record the access.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no live mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        V value = map.get(key);
+        if (value == null && !map.containsKey(key)) {
+            missCount++;
+            return null;
+        }
+        if (policy.isExpired((K) key)) {
+            evict((K) key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        policy.onGet((K) key);
+        return value;
+    }
+
+    /**
+     * Puts the mapping, evicting keys chosen by the policy while the
+     * map holds more than capacity mappings.
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no live mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        removeExpired();
+        boolean added = !map.containsKey(key);
+        V previous = map.put(key, value);
+        policy.onPut(key, added);
+        while (map.size() > capacity) {
+            evict(policy.victim(readOnlyMap));
+        }
+        return previous;
+    }
+
+    /**
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or
+     * null if there was no live mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        if (policy.isExpired((K) key)) {
+            evict((K) key);
+            return null;
+        }
+        V previous = map.remove(key);
+        policy.onRemove((K) key);
+        return previous;
+    }
+
+    /**
+     * Removes all of the mappings from this map without notifying
+     * the eviction listener. The counters are kept.
+     */
+    @Override
+    public void clear() {
+        map.clear();
+        policy.onClear();
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K firstKey() {
+        return map.firstKey();
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K lastKey() {
+        return map.lastKey();
+    }
+
+    /**
+     * Removes the mappings the policy reports as expired.
+     */
+    public void removeExpired() {
+        K key;
+        while ((key = policy.expired()) != null) {
+            evict(key);
+        }
+    }
+
+    private void evict(K key) {
+        V value = map.remove(key);
+        policy.onRemove(key);
+        evictionCount++;
+        evictionListener.accept(key, value);
+    }
+
+    /**
+     * @return a view of the mappings in ascending key order. Iteration
+     * does not count as access; expired mappings are removed when an
+     * iterator is created.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    removeExpired();
+                    Iterator<Entry<K, V>> entries = map.entrySet().iterator();
+                    return new Iterator<Entry<K, V>>() {
+                        private K lastKey;
+
+                        @Override
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            Entry<K, V> entry = entries.next();
+                            lastKey = entry.getKey();
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            entries.remove();
+                            policy.onRemove(lastKey);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+
+                @Override
+                public void clear() {
+                    BoundedCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+}
@@ -0,0 +1,867 @@
+package com.epam.java.se;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Class represents a thread-safe Custom TreeMap. It is the same
+ * left-leaning Red-Black Tree as CustomTreeMap, but nodes are never
+ * changed once they are reachable by readers: every write copies the
+ * O(log n) nodes on its path and publishes the new root with a single
+ * volatile write.
+ * <p>
+ * Reads (get, containsKey, navigation, range scans and iteration) take
+ * no locks and never block; each of them works on the root it read
+ * first, so it sees one consistent version of the tree. Writers are
+ * serialized by a lock and do not wait for readers.
+ * <p>
+ * Iterators are snapshots: they never throw ConcurrentModificationException
+ * and do not see writes made after they were created.
+ * Like other concurrent maps it does not allow null keys or values.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of mapped values
+ * @see CustomTreeMap
+ */
+public class ConcurrentCustomTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V> {
+    private volatile Node<K, V> root;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * Version of the write in progress, guarded by writeLock. Nodes of
+     * this version are not published yet and may be changed in place.
+     */
+    private long version;
+    private Set<Entry<K, V>> entrySet;
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    /**
+     * Creates an empty map whose keys are sorted by their natural ordering.
+     */
+    public ConcurrentCustomTreeMap() {
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    private int size(Node<K, V> node) {
+        if (node == null) {
+            return 0;
+        } else return node.size;
+    }
+
+    /**
+     * @return true if this map contains no key-value mappings
+     */
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        return find(root, (K) key) != null;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        Node<K, V> node = find(root, (K) key);
+        return node == null ? null : node.value;
+    }
+
+    private Node<K, V> find(Node<K, V> node, K key) {
+        while (node != null) {
+            int cmp = node.key.compareTo(key);
+            if (cmp > 0) {
+                node = node.left;
+            } else if (cmp < 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put key-value pairs in this map. The nodes on the path to the key
+     * are copied, so concurrent readers keep seeing the previous version
+     * until the new root is published.
+     * Associated methods:
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key or value is null.
+     * @see ConcurrentCustomTreeMap#write(Descent, Comparable, Object)
+     * @see ConcurrentCustomTreeMap#own(Node)
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        writeLock.lock();
+        try {
+            return write(descend(key), key, value);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the previous value associated with key, or null if there
+     * was no mapping for key, in which case value is put.
+     * @throws NullPointerException if the specified key or value is null.
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        writeLock.lock();
+        try {
+            Descent<K, V> path = descend(key);
+            if (path.node != null) {
+                return path.node.value;
+            }
+            return write(path, key, value);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the key was mapped to oldValue and now is mapped to newValue.
+     * @throws NullPointerException if an argument is null.
+     */
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        writeLock.lock();
+        try {
+            Descent<K, V> path = descend(key);
+            if (path.node == null || !oldValue.equals(path.node.value)) {
+                return false;
+            }
+            write(path, key, newValue);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the previous value associated with key, or null if there
+     * was no mapping for key, in which case nothing is put.
+     * @throws NullPointerException if the specified key or value is null.
+     */
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        writeLock.lock();
+        try {
+            Descent<K, V> path = descend(key);
+            if (path.node == null) {
+                return null;
+            }
+            return write(path, key, value);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Nodes passed by a descent from the root, the turns it took and the
+     * node with the key, if there is one. The write which follows copies
+     * this path without comparing the keys again.
+     */
+    private static final class Descent<K, V> {
+        private final Node<K, V>[] nodes;
+        /**
+         * Bit i is set if the descent turned right below nodes[i].
+         */
+        private long turns;
+        private int depth;
+        private Node<K, V> node;
+
+        Descent(int capacity) {
+            nodes = new Node[capacity];
+        }
+    }
+
+    /**
+     * Looks the key up with one comparison per level, remembering the
+     * path. A red-black tree of n keys is at most 2 * log(n + 1) high.
+     * Must be called with writeLock held.
+     */
+    private Descent<K, V> descend(K key) {
+        Node<K, V> node = root;
+        Descent<K, V> path = new Descent<>(2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size(node))) + 1);
+        while (node != null) {
+            int cmp = node.key.compareTo(key);
+            if (cmp == 0) {
+                break;
+            }
+            path.nodes[path.depth] = node;
+            if (cmp < 0) {
+                path.turns |= 1L << path.depth;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+            path.depth++;
+        }
+        path.node = node;
+        return path;
+    }
+
+    /**
+     * Puts the value at the end of the path: replaces the value of the
+     * node found there, or links a new node and rebalances upwards. The
+     * path is copied bottom-up and the new root published.
+     *
+     * @return the previous value, or null if the key was absent.
+     */
+    private V write(Descent<K, V> path, K key, V value) {
+        version++;
+        boolean insert = path.node == null;
+        Node<K, V> node;
+        if (insert) {
+            node = new Node<>(key, value, RED, 1, version);
+        } else {
+            node = own(path.node);
+            node.value = value;
+        }
+        for (int i = path.depth - 1; i >= 0; i--) {
+            Node<K, V> parent = own(path.nodes[i]);
+            if ((path.turns & 1L << i) != 0) {
+                parent.right = node;
+            } else {
+                parent.left = node;
+            }
+            node = insert ? balance(parent) : parent;
+        }
+        node.color = BLACK;
+        root = node;
+        return insert ? null : path.node.value;
+    }
+
+    /**
+     * Returns a node of the current write which can be changed in place:
+     * the node itself if this write created it, otherwise its copy.
+     * Published nodes are never changed.
+     */
+    private Node<K, V> own(Node<K, V> node) {
+        if (node.version == version) {
+            return node;
+        }
+        Node<K, V> copy = new Node<>(node.key, node.value, node.color, node.size, version);
+        copy.left = node.left;
+        copy.right = node.right;
+        return copy;
+    }
+
+    /**
+     * Expects the node to be owned by the current write.
+     */
+    private Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> newNode = own(node.left);
+        node.left = newNode.right;
+        newNode.right = node;
+        newNode.color = node.color;
+        node.color = RED;
+        newNode.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return newNode;
+    }
+
+    /**
+     * Expects the node to be owned by the current write.
+     */
+    private Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> newNode = own(node.right);
+        node.right = newNode.left;
+        newNode.left = node;
+        newNode.color = node.color;
+        node.color = RED;
+        newNode.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return newNode;
+    }
+
+    /**
+     * Expects the node to be owned by the current write.
+     */
+    private void flipColors(Node<K, V> node) {
+        node.left = own(node.left);
+        node.right = own(node.right);
+        node.color = !node.color;
+        node.left.color = !node.left.color;
+        node.right.color = !node.right.color;
+    }
+
+    private boolean isRed(Node<K, V> node) {
+        if (node == null) {
+            return false;
+        }
+        return node.color == RED;
+    }
+
+    private Node<K, V> balance(Node<K, V> node) {
+        if (isRed(node.right) && !isRed(node.left)) {
+            node = rotateLeft(node);
+        }
+        if (isRed(node.left) && isRed(node.left.left)) {
+            node = rotateRight(node);
+        }
+        if (isRed(node.left) && isRed(node.right)) {
+            flipColors(node);
+        }
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private Node<K, V> moveRedLeft(Node<K, V> node) {
+        flipColors(node);
+        if (isRed(node.right.left)) {
+            node.right = rotateRight(node.right);
+            node = rotateLeft(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    private Node<K, V> moveRedRight(Node<K, V> node) {
+        flipColors(node);
+        if (isRed(node.left.left)) {
+            node = rotateRight(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    /**
+     * Removes key-value pairs in this map, copying the nodes on the
+     * path like put does.
+     * Associated methods:
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     * @see ConcurrentCustomTreeMap#removeAt(Node, int)
+     */
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        writeLock.lock();
+        try {
+            Node<K, V> node = delete((K) key, null);
+            return node == null ? null : node.value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the key was mapped to value and is removed.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean remove(Object key, Object value) {
+        Objects.requireNonNull(key);
+        if (value == null) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            return delete((K) key, value) != null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Looks the key up with one comparison per level, noting its rank,
+     * and deletes it by that rank, so the copying descent compares no
+     * keys. A missing key, or one mapped to another value than a
+     * non-null value, leaves the tree as it is. Must be called with
+     * writeLock held.
+     *
+     * @return the node of the deleted key, or null.
+     */
+    private Node<K, V> delete(K key, Object value) {
+        int rank = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = node.key.compareTo(key);
+            if (cmp > 0) {
+                node = node.left;
+            } else if (cmp < 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                rank += size(node.left);
+                break;
+            }
+        }
+        if (node == null || value != null && !value.equals(node.value)) {
+            return null;
+        }
+        version++;
+        Node<K, V> newRoot = own(root);
+        if (!isRed(newRoot.left) && !isRed(newRoot.right)) {
+            newRoot.color = RED;
+        }
+        newRoot = removeAt(newRoot, rank);
+        if (newRoot != null) {
+            newRoot.color = BLACK;
+        }
+        root = newRoot;
+        return node;
+    }
+
+    /**
+     * Deletes the key with the given rank within the subtree. Rotations
+     * keep the in-order position of every key, so the rank stays valid
+     * while the path is reshaped. Expects the node to be owned by the
+     * current write.
+     */
+    private Node<K, V> removeAt(Node<K, V> node, int rank) {
+        if (rank < size(node.left)) {
+            if (!isRed(node.left) && !isRed(node.left.left)) {
+                node = moveRedLeft(node);
+            }
+            node.left = removeAt(own(node.left), rank);
+        } else {
+            if (isRed(node.left)) {
+                node = rotateRight(node);
+            }
+            if (rank == size(node.left) && node.right == null) {
+                return null;
+            }
+            if (!isRed(node.right) && !isRed(node.right.left)) {
+                node = moveRedRight(node);
+            }
+            int leftSize = size(node.left);
+            if (rank == leftSize) {
+                Node<K, V> temp = node;
+                node = own(findMin(temp.right));
+                node.right = removeMin(temp.right);
+                node.left = temp.left;
+                node.color = temp.color;
+            } else {
+                node.right = removeAt(own(node.right), rank - leftSize - 1);
+            }
+        }
+        return balance(node);
+    }
+
+    private Node<K, V> removeMin(Node<K, V> node) {
+        if (node.left == null) {
+            return null;
+        }
+        node = own(node);
+        if (!isRed(node.left) && !isRed(node.left.left)) {
+            node = moveRedLeft(node);
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private Node<K, V> findMin(Node<K, V> node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            root = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K firstKey() {
+        Node<K, V> node = root;
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return findMin(node).key;
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K lastKey() {
+        Node<K, V> node = root;
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.key;
+    }
+
+    /**
+     * @param key the key
+     * @return the greatest key less than or equal to the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public K floorKey(K key) {
+        Objects.requireNonNull(key);
+        Node<K, V> node = root;
+        K floor = null;
+        while (node != null) {
+            int cmp = node.key.compareTo(key);
+            if (cmp > 0) {
+                node = node.left;
+            } else if (cmp < 0) {
+                floor = node.key;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * @param key the key
+     * @return the least key greater than or equal to the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public K ceilingKey(K key) {
+        Objects.requireNonNull(key);
+        Node<K, V> node = root;
+        K ceiling = null;
+        while (node != null) {
+            int cmp = node.key.compareTo(key);
+            if (cmp > 0) {
+                ceiling = node.key;
+                node = node.left;
+            } else if (cmp < 0) {
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+        return ceiling;
+    }
+
+    /**
+     * @param lo the low endpoint of the range.
+     * @param hi the high endpoint of the range.
+     * @return the number of keys in [lo, hi] in one version of this map,
+     * computed in O(log n) from subtree sizes.
+     * @throws NullPointerException if lo or hi is null.
+     */
+    public int countInRange(K lo, K hi) {
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        if (lo.compareTo(hi) > 0) {
+            return 0;
+        }
+        Node<K, V> snapshot = root;
+        return rank(snapshot, hi, true) - rank(snapshot, lo, false);
+    }
+
+    /**
+     * @return the number of keys less than key, or less than or equal
+     * to key when inclusive.
+     */
+    private int rank(Node<K, V> node, K key, boolean inclusive) {
+        int rank = 0;
+        while (node != null) {
+            int cmp = node.key.compareTo(key);
+            if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Passes mappings with keys in [lo, hi] to the action in ascending
+     * key order. The whole scan sees one version of this map and
+     * does not block writers.
+     *
+     * @param lo     the low endpoint of the range.
+     * @param hi     the high endpoint of the range.
+     * @param action the action to be performed for each mapping.
+     * @throws NullPointerException if an argument is null.
+     */
+    public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        Objects.requireNonNull(action);
+        forEachInRange(root, lo, hi, action);
+    }
+
+    private void forEachInRange(Node<K, V> node, K lo, K hi, BiConsumer<? super K, ? super V> action) {
+        while (node != null) {
+            boolean aboveLo = node.key.compareTo(lo) >= 0;
+            boolean belowHi = node.key.compareTo(hi) <= 0;
+            if (aboveLo) {
+                forEachInRange(node.left, lo, hi, action);
+            }
+            if (aboveLo && belowHi) {
+                action.accept(node.key, node.value);
+            }
+            if (!belowHi) {
+                return;
+            }
+            node = node.right;
+        }
+    }
+
+    /**
+     * @return true if the current version of this map is a valid
+     * left-leaning Red-Black Tree with consistent subtree sizes.
+     */
+    public boolean isValidRedBlackTree() {
+        Node<K, V> snapshot = root;
+        return !isRed(snapshot) && isOrdered(snapshot, null, null) && isSizeConsistent(snapshot)
+                && is23(snapshot) && blackHeight(snapshot) >= 0;
+    }
+
+    private boolean isOrdered(Node<K, V> node, K min, K max) {
+        if (node == null) {
+            return true;
+        }
+        if (min != null && node.key.compareTo(min) <= 0) {
+            return false;
+        }
+        if (max != null && node.key.compareTo(max) >= 0) {
+            return false;
+        }
+        return isOrdered(node.left, min, node.key) && isOrdered(node.right, node.key, max);
+    }
+
+    private boolean isSizeConsistent(Node<K, V> node) {
+        if (node == null) {
+            return true;
+        }
+        if (node.size != size(node.left) + size(node.right) + 1) {
+            return false;
+        }
+        return isSizeConsistent(node.left) && isSizeConsistent(node.right);
+    }
+
+    private boolean is23(Node<K, V> node) {
+        if (node == null) {
+            return true;
+        }
+        if (isRed(node.right) || (isRed(node) && isRed(node.left))) {
+            return false;
+        }
+        return is23(node.left) && is23(node.right);
+    }
+
+    private int blackHeight(Node<K, V> node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left < 0 || left != right) {
+            return -1;
+        }
+        return left + (isRed(node) ? 0 : 1);
+    }
+
+    /**
+     * @return a view of the entries in ascending key order. Its iterators
+     * walk the version of the map current when they were created;
+     * their remove method removes the key from the live map.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new SnapshotIterator(root);
+                }
+
+                @Override
+                public int size() {
+                    return ConcurrentCustomTreeMap.this.size();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    if (entry.getKey() == null) {
+                        return false;
+                    }
+                    V value = get(entry.getKey());
+                    return value != null && value.equals(entry.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    return entry.getKey() != null
+                            && ConcurrentCustomTreeMap.this.remove(entry.getKey(), entry.getValue());
+                }
+
+                @Override
+                public void clear() {
+                    ConcurrentCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class SnapshotIterator implements Iterator<Entry<K, V>> {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+        private Node<K, V> lastReturned;
+
+        SnapshotIterator(Node<K, V> snapshot) {
+            pushLeft(snapshot);
+        }
+
+        private void pushLeft(Node<K, V> node) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            pushLeft(node.right);
+            lastReturned = node;
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentCustomTreeMap.this.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * Node of the tree. Its fields are only changed by the write that
+     * created it, before the node is published.
+     */
+    private static class Node<K, V> implements Map.Entry<K, V> {
+
+        private final K key;
+        private final long version;
+        private V value;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private int size;
+        private boolean color;
+
+        Node(K key, V value, boolean color, int size, long version) {
+            this.key = key;
+            this.value = value;
+            this.color = color;
+            this.size = size;
+            this.version = version;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * @throws UnsupportedOperationException always, published
+         *                                       nodes are immutable.
+         */
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
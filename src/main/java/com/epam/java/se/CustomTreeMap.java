@@ -1,19 +1,156 @@
 package com.epam.java.se;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Class represents an implementation of Custom TreeMap which is
- * a Binary Search Tree with balanced Red-Black Tree put method.
+ * a Binary Search Tree with balanced left-leaning Red-Black Tree
+ * put and remove methods. Navigation methods run in O(log n) and
+ * sub-map views are live, bounded windows over the same tree.
+ * Keys are sorted by their natural ordering or by a comparator given
+ * at creation, so keys such as byte arrays need no wrapper objects.
  * <p>
  * Created by Мария on 26.03.2017.
  */
-public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
+public class CustomTreeMap<K, V> implements NavigableMap<K, V> {
     private Node<K, V> root;
-    private V savePreviousValue;
+    private int modCount;
+    private KeySet keySet;
+    private Collection<V> values;
+    private Set<Entry<K, V>> entrySet;
+    /**
+     * Nodes created before the last snapshot have an older version and
+     * are shared with it, so they are copied instead of being changed.
+     */
+    private int version;
+    /**
+     * Number of mappings for every value, maintained only while the
+     * value index is enabled, null otherwise.
+     */
+    private HashMap<V, Integer> valueCounts;
+    /**
+     * Aggregate kept in every node next to its size, null if none.
+     */
+    private final Monoid<? super V, Object> monoid;
+    /**
+     * Orders the keys, null for their natural ordering.
+     */
+    private final Comparator<? super K> comparator;
+    /**
+     * Counters of the enabled statistics, null while they are disabled,
+     * so that a disabled map pays one null check per operation.
+     */
+    private Instrumentation stats;
+    /**
+     * Log of the changes while the map is durable, null otherwise.
+     */
+    private WriteAheadLog<K, V> wal;
+    /**
+     * Nodes passed by the descent of the last put, reused by every put,
+     * null until the first one. A red-black tree of at most 2^31 - 1
+     * keys is at most MAX_DEPTH high, which also fits the turns of the
+     * path into a long.
+     */
+    private Node<K, V>[] path;
+    /**
+     * Number of keys of a batch which descend the tree together.
+     */
+    private static final int BATCH_LANES = 16;
+    private static final int MAX_DEPTH = Long.SIZE;
     private static final boolean RED = true;
     private static final boolean BLACK = false;
 
+    /**
+     * Creates an empty map whose keys are sorted by their natural ordering.
+     */
+    public CustomTreeMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    /**
+     * Creates an empty map whose keys are sorted by the given comparator.
+     *
+     * @param comparator orders the keys, null for their natural ordering.
+     * @see KeyComparators
+     */
+    public CustomTreeMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.monoid = null;
+    }
+
+    /**
+     * Creates an empty map which keeps the aggregate of the given monoid
+     * over the values of every subtree. put, remove and the rotations
+     * maintain it, so aggregate(monoid, lo, hi) runs in O(log n).
+     *
+     * @param monoid summarizes the values, also the handle to query it.
+     * @throws NullPointerException if the monoid is null.
+     * @see CustomTreeMap#aggregate(Monoid, Object, Object)
+     */
+    public CustomTreeMap(Monoid<? super V, ?> monoid) {
+        this(null, monoid);
+    }
+
+    /**
+     * Creates an empty map whose keys are sorted by the given comparator
+     * and which keeps the aggregate of the given monoid.
+     *
+     * @param comparator orders the keys, null for their natural ordering.
+     * @param monoid     summarizes the values, also the handle to query it.
+     * @throws NullPointerException if the monoid is null.
+     */
+    public CustomTreeMap(Comparator<? super K> comparator, Monoid<? super V, ?> monoid) {
+        this.comparator = comparator;
+        this.monoid = (Monoid<? super V, Object>) Objects.requireNonNull(monoid);
+    }
+
+    /**
+     * Creates a map with the mappings and the ordering of the given sorted
+     * map, building the balanced tree in O(n) without comparisons or rotations.
+     *
+     * @param m the sorted map whose mappings are to be placed in this map.
+     * @throws NullPointerException if the specified map is null.
+     * @see CustomTreeMap#putAll(Map)
+     */
+    public CustomTreeMap(SortedMap<K, ? extends V> m) {
+        this(m.comparator());
+        putAll(m);
+    }
+
+    /**
+     * Creates a map from keys given in strictly ascending order and
+     * their values, in O(n).
+     *
+     * @param keys   keys in strictly ascending order.
+     * @param values values, values[i] is mapped to keys[i].
+     * @return a new map with the given mappings.
+     * @throws NullPointerException     if an array or a key is null.
+     * @throws IllegalArgumentException if the arrays differ in length
+     *                                  or the keys are not strictly ascending.
+     */
+    public static <K extends Comparable<K>, V> CustomTreeMap<K, V> fromSorted(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys.length != values.length");
+        }
+        List<Entry<K, V>> entries = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]));
+        }
+        CustomTreeMap<K, V> map = new CustomTreeMap<>();
+        map.putAllSorted(entries.iterator());
+        return map;
+    }
+
     /**
      * Calculates a size of TreeMap
      * Associated methods:
@@ -49,47 +186,113 @@ public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     @Override
     public boolean containsKey(Object key) {
         Objects.requireNonNull(key);
-
-        if (root == null) {
-            return false;
+        long start = stats == null ? 0 : System.nanoTime();
+        boolean found = lookup((K) key) != null;
+        if (stats != null) {
+            stats.recordGet(start);
         }
-        return find(root, (K) key) != null;
+        return found;
     }
 
     /**
-     * Searches values through entire TreeMap
+     * Searches values through entire TreeMap, or looks the value up in
+     * O(1) expected time if the value index is enabled.
      * Associated methods:
      *
      * @param value value whose presence in this map is to be tested,
      *              allows null values.
      * @return true specified value is presented in one or more keys
      * @see CustomTreeMap#getValue(Node, Object)
+     * @see CustomTreeMap#enableValueIndex()
      */
     @Override
     public boolean containsValue(Object value) {
-        if (root == null) {
-            return false;
+        if (valueCounts != null) {
+            return valueCounts.containsKey(value);
         }
-        if (root.value == null) {
-            return value == null;
+        return getValue(root, value) != null;
+    }
+
+    /**
+     * Scans the tree with an explicit stack, so neither deep trees
+     * nor null values deeper in the tree are a problem.
+     */
+    private Node<K, V> getValue(Node<K, V> node, Object value) {
+        Deque<Node<K, V>> stack = new ArrayDeque<>();
+        while (node != null || !stack.isEmpty()) {
+            if (node == null) {
+                node = stack.pop();
+            }
+            if (Objects.equals(node.value, value)) {
+                return node;
+            }
+            if (node.right != null) {
+                stack.push(node.right);
+            }
+            node = node.left;
         }
-        return getValue(root, (V) value) != null;
+        return null;
     }
 
-    private Node<K, V> getValue(Node<K, V> node, V value) {
-        if (node == null) {
-            return null;
+    /**
+     * Turns on the value index: a value to count multiset kept up to
+     * date by put, remove, setValue and clear, which makes containsValue
+     * O(1) expected instead of a full scan. Building the index takes
+     * O(n); afterwards every write pays one hash map update.
+     *
+     * @see CustomTreeMap#valueIndexMemoryBytes()
+     */
+    public void enableValueIndex() {
+        if (valueCounts != null) {
+            return;
         }
-        if (node.value.equals(value)) {
-            return node;
+        valueCounts = new HashMap<>();
+        for (V value : values()) {
+            indexValue(value);
         }
+    }
 
-        if (getValue(node.left, value) != null) {
-            return node;
-        } else if (getValue(node.right, value) != null) {
-            return node;
+    /**
+     * Turns off the value index and releases its memory.
+     */
+    public void disableValueIndex() {
+        valueCounts = null;
+    }
+
+    /**
+     * @return true if containsValue is served by the value index.
+     */
+    public boolean isValueIndexEnabled() {
+        return valueCounts != null;
+    }
+
+    /**
+     * Estimates the heap used by the value index on a 64-bit JVM with
+     * compressed references: the HashMap itself, its table, one entry
+     * per distinct value and a boxed count. The values are shared with
+     * the map and not counted.
+     *
+     * @return estimated size of the value index in bytes, 0 if disabled.
+     */
+    public long valueIndexMemoryBytes() {
+        if (valueCounts == null) {
+            return 0;
+        }
+        int distinct = valueCounts.size();
+        long table = Math.max(16, Long.highestOneBit(Math.max(1, (long) (distinct / 0.75f)) * 2 - 1));
+        return 48 + 16 + 4 * table + (long) distinct * (32 + 16);
+    }
+
+    private void indexValue(V value) {
+        if (valueCounts != null) {
+            valueCounts.merge(value, 1, Integer::sum);
+        }
+    }
+
+    private void unindexValue(V value) {
+        if (valueCounts != null) {
+            valueCounts.computeIfPresent(value, (v, count) -> count == 1 ? null : count - 1);
         }
-        return null;
     }
 
     /**
@@ -101,24 +304,19 @@ public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     @Override
     public V get(Object key) {
         Objects.requireNonNull(key);
-        return get(root, (K) key);
-    }
-
-    private V get(Node<K, V> node, K key) {
-        if (node == null) {
-            return null;
+        long start = stats == null ? 0 : System.nanoTime();
+        Node<K, V> node = lookup((K) key);
+        if (stats != null) {
+            stats.recordGet(start);
         }
-        if (node.key.compareTo(key) > 0) {
-            return get(node.left, key);
-        } else if (node.key.compareTo(key) < 0) {
-            return get(node.right, key);
-        } else return node.value;
+        return node == null ? null : node.value;
     }
 
     /**
      * Put key-value pairs in this map. Allows null values.
      * If the map previously contained a mapping for
-     * the key, the old value is replaced by the specified value.
+     * the key, the old value is replaced in place by the specified
+     * value without restructuring the tree.
      * Keys are sorted by concrete rules: if child key is smaller
      * than parent key it will be placed left in tree and visa versa.
      * This method is balanced by implementation of red-black sorting
@@ -130,8 +328,7 @@ public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
      * @return the previous value associated with key, or
      * null if there was no mapping for key.
      * @throws NullPointerException if the specified key is null.
-     * @see CustomTreeMap#put(Node, Comparable, Object)
-     * @see CustomTreeMap#find(Node, Comparable)
+     * @see CustomTreeMap#insert(Node[], int, long, Node)
      * @see CustomTreeMap#rotateLeft(Node)
      * @see CustomTreeMap#rotateRight(Node)
      * @see CustomTreeMap#flipColors(Node)
@@ -140,82 +337,246 @@ public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     @Override
     public V put(K key, V value) {
         Objects.requireNonNull(key);
-        root = put(root, key, value);
-        root.color = BLACK;
-        if (savePreviousValue != null) {
-            return savePreviousValue;
+        if (root == null) {
+            // the first key is compared nowhere else, check its type
+            compare(key, key);
         }
-        return null;
-    }
-
-    private Node<K, V> put(Node<K, V> node, K key, V value) {
-        if (savePreviousValue != null) {
-            savePreviousValue = null;
+        long start = stats == null ? 0 : System.nanoTime();
+        if (wal != null) {
+            logPut(key, value);
         }
-        if (node == null) {
-            return new Node<>(key, value, RED, 1);
+        Node<K, V>[] path = this.path;
+        if (path == null) {
+            path = this.path = new Node[MAX_DEPTH];
         }
-        if (node.key.equals(key)) {
-            savePreviousValue = node.value;
-            node.value = value;
-        } else if (node.key.compareTo(key) > 0) {
-            node.left = put(node.left, key, value);
+        long turns = 0;
+        int depth = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = compare(node.key, key);
+            if (cmp == 0) {
+                break;
+            }
+            path[depth] = node;
+            if (cmp < 0) {
+                turns |= 1L << depth;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+            depth++;
+        }
+        V previous = null;
+        if (node != null) {
+            if (stats != null) {
+                stats.recordLookup(depth + 1);
+            }
+            previous = node.value;
+            unindexValue(previous);
+            indexValue(value);
+            if (node.version == version && monoid == null) {
+                node.value = value;
+            } else {
+                node = own(node);
+                node.value = value;
+                root = replace(path, depth, turns, update(node));
+            }
+        } else if (stats == null) {
+            root = insert(path, depth, turns, newNode(key, value));
+            root.color = BLACK;
         } else {
-            node.right = put(node.right, key, value);
+            stats.recordLookup(depth);
+            long rotations = stats.rotationCount;
+            long colorFlips = stats.colorFlipCount;
+            root = insert(path, depth, turns, newNode(key, value));
+            root.color = BLACK;
+            stats.recordInsert(rotations, colorFlips);
         }
+        if (stats != null) {
+            stats.recordPut(start);
+        }
+        return previous;
+    }
 
-        if (isRed(node.right) && !isRed(node.left)) {
-            node = rotateLeft(node);
+    private Node<K, V> newNode(K key, V value) {
+        modCount++;
+        indexValue(value);
+        return update(new Node<>(key, value, RED, 1));
+    }
+
+    /**
+     * Links the new node below the last of the depth nodes on the path
+     * the descent took and rebalances upwards. Bit i of turns is set if
+     * the path turned right below path[i]. Clears the path, so that the
+     * scratch array keeps no copied nodes alive.
+     *
+     * @return the new root.
+     */
+    private Node<K, V> insert(Node<K, V>[] path, int depth, long turns, Node<K, V> node) {
+        for (int i = depth - 1; i >= 0; i--) {
+            Node<K, V> parent = own(path[i]);
+            path[i] = null;
+            if ((turns & 1L << i) != 0) {
+                parent.right = node;
+            } else {
+                parent.left = node;
+            }
+            node = balance(parent);
         }
-        if (isRed(node.left) && isRed(node.left.left)) {
-            node = rotateRight(node);
+        return node;
+    }
+
+    /**
+     * Links the changed node back into the path like insert() does,
+     * but only recomputes sizes and aggregates, since replacing a value
+     * needs no rotations.
+     */
+    private Node<K, V> replace(Node<K, V>[] path, int depth, long turns, Node<K, V> node) {
+        for (int i = depth - 1; i >= 0; i--) {
+            Node<K, V> parent = own(path[i]);
+            path[i] = null;
+            if ((turns & 1L << i) != 0) {
+                parent.right = node;
+            } else {
+                parent.left = node;
+            }
+            node = update(parent);
         }
-        if (isRed(node.left) && isRed(node.right)) {
-            flipColors(node);
+        return node;
+    }
+
+    /**
+     * find() from the root for the public operations, which also counts
+     * the comparisons while statistics are enabled.
+     */
+    private Node<K, V> lookup(K key) {
+        if (stats == null) {
+            return find(root, key);
         }
-        node.size = size(node.left) + size(node.right) + 1;
+        int comparisons = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            comparisons++;
+            int cmp = compare(node.key, key);
+            if (cmp > 0) {
+                node = node.left;
+            } else if (cmp < 0) {
+                node = node.right;
+            } else {
+                break;
+            }
+        }
+        stats.recordLookup(comparisons);
         return node;
     }
 
+    /**
+     * Iterative lookup with one comparison per level.
+     */
     private Node<K, V> find(Node<K, V> node, K key) {
+        while (node != null) {
+            int cmp = compare(node.key, key);
+            if (cmp > 0) {
+                node = node.left;
+            } else if (cmp < 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node itself if it is not shared with a snapshot,
+     * otherwise a copy of it which can be changed.
+     */
+    private Node<K, V> own(Node<K, V> node) {
+        if (node.version == version) {
+            return node;
+        }
+        Node<K, V> copy = new Node<>(node.key, node.value, node.color, node.size);
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.aggregate = node.aggregate;
+        return copy;
+    }
+
+    /**
+     * Replaces the value of a present key, copying the shared nodes
+     * on the path to it.
+     */
+    private Node<K, V> replaceValue(Node<K, V> node, K key, V value) {
         if (node == null) {
             return null;
         }
-        if (node.key.equals(key)) {
-            return node;
-        } else if (node.key.compareTo(key) > 0) {
-            return find(node.left, key);
+        node = own(node);
+        int cmp = compare(node.key, key);
+        if (cmp > 0) {
+            node.left = replaceValue(node.left, key, value);
+        } else if (cmp < 0) {
+            node.right = replaceValue(node.right, key, value);
         } else {
-            return find(node.right, key);
+            node.value = value;
+        }
+        return update(node);
+    }
+
+    /**
+     * Recomputes the size and the aggregate of the node from its children.
+     */
+    private Node<K, V> update(Node<K, V> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        if (monoid != null) {
+            node.aggregate = monoid.combine(monoid.combine(aggregate(node.left), monoid.lift(node.value)),
+                    aggregate(node.right));
         }
+        return node;
+    }
+
+    private Object aggregate(Node<K, V> node) {
+        return node == null ? monoid.identity() : node.aggregate;
     }
 
     private Node <K, V> rotateRight(Node<K, V> node) {
-        Node<K, V> newNode = node.left;
+        if (stats != null) {
+            stats.rotationCount++;
+        }
+        Node<K, V> newNode = own(node.left);
         node.left = newNode.right;
         newNode.right = node;
         newNode.color = newNode.right.color;
         newNode.right.color = RED;
         newNode.size = node.size;
-        node.size = size(node.left) + size(node.right) + 1;
+        newNode.aggregate = node.aggregate;
+        update(node);
         return newNode;
     }
 
     private Node <K, V> rotateLeft(Node<K, V> node) {
-        Node<K, V> newNode = node.right;
+        if (stats != null) {
+            stats.rotationCount++;
+        }
+        Node<K, V> newNode = own(node.right);
         node.right = newNode.left;
         newNode.left = node;
         newNode.color = newNode.left.color;
         newNode.left.color = RED;
         newNode.size = node.size;
-        node.size = size(node.left) + size(node.right) + 1;
+        newNode.aggregate = node.aggregate;
+        update(node);
         return newNode;
     }
 
     private void flipColors(Node<K, V> node) {
-        node.color = RED;
-        node.left.color = BLACK;
-        node.right.color = BLACK;
+        if (stats != null) {
+            stats.colorFlipCount++;
+        }
+        node.left = own(node.left);
+        node.right = own(node.right);
+        node.color = !node.color;
+        node.left.color = !node.left.color;
+        node.right.color = !node.right.color;
     }
 
     private boolean isRed(Node<K, V> node) {
@@ -225,59 +586,226 @@ public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         return node.color == RED;
     }
 
+    private Node<K, V> balance(Node<K, V> node) {
+        if (isRed(node.right) && !isRed(node.left)) {
+            node = rotateLeft(node);
+        }
+        if (isRed(node.left) && isRed(node.left.left)) {
+            node = rotateRight(node);
+        }
+        if (isRed(node.left) && isRed(node.right)) {
+            flipColors(node);
+        }
+        return update(node);
+    }
+
+    private Node<K, V> moveRedLeft(Node<K, V> node) {
+        flipColors(node);
+        if (isRed(node.right.left)) {
+            node.right = rotateRight(node.right);
+            node = rotateLeft(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    private Node<K, V> moveRedRight(Node<K, V> node) {
+        flipColors(node);
+        if (isRed(node.left.left)) {
+            node = rotateRight(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
     /**
-     * Removes key-value pairs in this map. And than rebuild
-     * this map for keep sorting order.
+     * Removes key-value pairs in this map. The removal is a
+     * left-leaning red-black deletion, so the tree stays balanced
+     * and its height is bounded by 2 * log(n) after any mix
+     * of puts and removes.
      * Associated methods:
      *
      * @param key key whose mapping is to be removed from the map
-     * @return null, there is no way to return old value.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
      * @throws NullPointerException if the specified key is null.
-     * @see CustomTreeMap#remove(Node, Comparable)
+     * @see CustomTreeMap#removeAt(Node, int)
      * @see CustomTreeMap#removeMin(Node)
      * @see CustomTreeMap#findMin(Node)
+     * @see CustomTreeMap#moveRedLeft(Node)
+     * @see CustomTreeMap#moveRedRight(Node)
+     * @see CustomTreeMap#balance(Node)
      */
     @Override
     public V remove(Object key) {
         Objects.requireNonNull(key);
-        root = remove(root, (K) key);
-        return null;
+        long start = stats == null ? 0 : System.nanoTime();
+        int comparisons = 0;
+        int rank = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            comparisons++;
+            int cmp = compare(node.key, (K) key);
+            if (cmp > 0) {
+                node = node.left;
+            } else if (cmp < 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                rank += size(node.left);
+                break;
+            }
+        }
+        if (stats != null) {
+            stats.recordLookup(comparisons);
+        }
+        V previous = null;
+        if (node != null) {
+            previous = node.value;
+            remove(node, rank);
+        }
+        if (stats != null) {
+            stats.recordRemove(start);
+        }
+        return previous;
     }
 
-    private Node <K, V> remove(Node<K, V> node, K key) {
-        if (node == null) {
-            return null;
+    /**
+     * Removes the node, which has the given rank. The deletion finds
+     * its way down by the rank, so the keys are compared only once,
+     * by the lookup which found the node.
+     */
+    private void remove(Node<K, V> node, int rank) {
+        if (wal != null) {
+            logRemove(node.key);
+        }
+        unindexValue(node.value);
+        root = own(root);
+        if (!isRed(root.left) && !isRed(root.right)) {
+            root.color = RED;
         }
-        if (node.key.compareTo(key) > 0) {
-            node.left = remove(node.left, key);
-        } else if (node.key.compareTo(key) < 0) {
-            node.right = remove(node.right, key);
+        modCount++;
+        root = removeAt(root, rank);
+        if (root != null) {
+            root.color = BLACK;
+        }
+    }
+
+    /**
+     * Deletes the key with the given rank within the subtree. Rotations
+     * keep the in-order position of every key, so the rank stays valid
+     * while the tree is reshaped on the way down.
+     */
+    private Node<K, V> removeAt(Node<K, V> node, int rank) {
+        node = own(node);
+        if (rank < size(node.left)) {
+            if (!isRed(node.left) && !isRed(node.left.left)) {
+                node = moveRedLeft(node);
+            }
+            node.left = removeAt(node.left, rank);
         } else {
-            if (node.right == null) {
-                return node.left;
+            if (isRed(node.left)) {
+                node = rotateRight(node);
+            }
+            if (rank == size(node.left) && node.right == null) {
+                return null;
             }
-            if (node.left == null) {
-                return node.right;
+            if (!isRed(node.right) && !isRed(node.right.left)) {
+                node = moveRedRight(node);
+            }
+            int leftSize = size(node.left);
+            if (rank == leftSize) {
+                Node<K, V> temp = node;
+                node = own(findMin(temp.right));
+                node.right = removeMin(temp.right);
+                node.left = temp.left;
+                node.color = temp.color;
+            } else {
+                node.right = removeAt(node.right, rank - leftSize - 1);
             }
-            Node <K, V> temp = node;
-            node = findMin(temp.right);
-            node.right = removeMin(temp.right);
-            node.left = temp.left;
         }
-        node.size = size(node.left) + size(node.right) + 1;
-        return node;
+        return balance(node);
     }
 
-    private Node <K, V> removeMin(Node<K, V> node) {
-        if (node == null) {
-            return null;
+    /**
+     * Removes the mapping with the smallest key in this map,
+     * keeping red-black invariants.
+     *
+     * @throws NoSuchElementException if this map is empty.
+     * @see CustomTreeMap#removeMin(Node)
+     */
+    public void removeMin() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<K, V> min = findMin(root);
+        if (wal != null) {
+            logRemove(min.key);
+        }
+        unindexValue(min.value);
+        root = own(root);
+        if (!isRed(root.left) && !isRed(root.right)) {
+            root.color = RED;
+        }
+        modCount++;
+        root = removeMin(root);
+        if (root != null) {
+            root.color = BLACK;
+        }
+    }
+
+    /**
+     * Removes the mapping with the largest key in this map,
+     * keeping red-black invariants.
+     *
+     * @throws NoSuchElementException if this map is empty.
+     * @see CustomTreeMap#removeMax(Node)
+     */
+    public void removeMax() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<K, V> max = findMax(root);
+        if (wal != null) {
+            logRemove(max.key);
+        }
+        unindexValue(max.value);
+        root = own(root);
+        if (!isRed(root.left) && !isRed(root.right)) {
+            root.color = RED;
+        }
+        modCount++;
+        root = removeMax(root);
+        if (root != null) {
+            root.color = BLACK;
         }
+    }
+
+    private Node<K, V> removeMin(Node<K, V> node) {
         if (node.left == null) {
-            return node.right;
+            return null;
+        }
+        node = own(node);
+        if (!isRed(node.left) && !isRed(node.left.left)) {
+            node = moveRedLeft(node);
         }
         node.left = removeMin(node.left);
-        node.size = size(node.left) + size(node.right) + 1;
-        return node;
+        return balance(node);
+    }
+
+    private Node<K, V> removeMax(Node<K, V> node) {
+        node = own(node);
+        if (isRed(node.left)) {
+            node = rotateRight(node);
+        }
+        if (node.right == null) {
+            return null;
+        }
+        if (!isRed(node.right) && !isRed(node.right.left)) {
+            node = moveRedRight(node);
+        }
+        node.right = removeMax(node.right);
+        return balance(node);
     }
 
     private Node <K, V> findMin(Node<K, V> node) {
@@ -289,158 +817,2683 @@ public class CustomTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         } else return findMin(node.left);
     }
 
-    /**
-     * @return common height of this TreeMap
-     */
-    public int commonHeight() {
-        return Math.max(heightOfLeftSubtree(), heightOfRightSubtree());
+    private Node<K, V> findMax(Node<K, V> node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
     }
 
     /**
-     * @return height of left branches of this TreeMap
+     * Searches the least node whose key is greater than the given key,
+     * or equal to it if inclusive is set.
      */
-    public int heightOfLeftSubtree() {
-        return leftHeight(root);
+    private Node<K, V> ceilingNode(K key, boolean inclusive) {
+        Node<K, V> node = root;
+        Node<K, V> result = null;
+        while (node != null) {
+            int cmp = compare(node.key, key);
+            if (cmp == 0 && inclusive) {
+                return node;
+            }
+            if (cmp > 0) {
+                result = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return result;
     }
 
     /**
-     * @return height of right branches of this TreeMap
+     * Searches the greatest node whose key is less than the given key,
+     * or equal to it if inclusive is set.
      */
-    public int heightOfRightSubtree() {
-        return rightHeight(root);
+    private Node<K, V> floorNode(K key, boolean inclusive) {
+        Node<K, V> node = root;
+        Node<K, V> result = null;
+        while (node != null) {
+            int cmp = compare(node.key, key);
+            if (cmp == 0 && inclusive) {
+                return node;
+            }
+            if (cmp < 0) {
+                result = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
     }
 
-    private int leftHeight(Node node) {
+    private static <K, V> Entry<K, V> exportEntry(Entry<K, V> node) {
         if (node == null) {
-            return 0;
+            return null;
         }
-        return leftHeight(node.left) + 1;
+        return new AbstractMap.SimpleImmutableEntry<>(node.getKey(), node.getValue());
     }
 
-    private int rightHeight(Node node) {
+    private static <K> K keyOrNull(Entry<K, ?> node) {
+        return node == null ? null : node.getKey();
+    }
+
+    private static <K> K keyOrThrow(Entry<K, ?> node) {
         if (node == null) {
-            return 0;
+            throw new NoSuchElementException();
         }
-        return rightHeight(node.right) + 1;
+        return node.getKey();
     }
 
     /**
-     * @return true if height of left branches equals or one less
-     * than height of right branches and visa versa.
+     * @return the comparator of the keys, or null if they are compared
+     * by their natural ordering.
      */
-    public boolean isBalanced() {
-        if (heightOfLeftSubtree() == heightOfRightSubtree()) {
-            return true;
-        }
-        if (heightOfRightSubtree() - heightOfLeftSubtree() == 1 ||
-                (heightOfRightSubtree() - heightOfLeftSubtree() == -1)) {
-            return true;
-        }
-        return false;
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
     }
 
     /**
-     * Clears entire map.
+     * The only way keys are compared, once per visited node. Without a
+     * comparator the key is compared directly, so natural ordering costs
+     * no extra call.
+     */
+    private int compare(K key, K other) {
+        return comparator == null ? ((Comparable<? super K>) key).compareTo(other)
+                : comparator.compare(key, other);
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the greatest key strictly less than
+     * the given key, or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
      */
     @Override
-    public void clear() {
-        if (root != null) {
-            root = null;
+    public Entry<K, V> lowerEntry(K key) {
+        Objects.requireNonNull(key);
+        return exportEntry(floorNode(key, false));
+    }
+
+    /**
+     * @param key the key
+     * @return the greatest key strictly less than the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public K lowerKey(K key) {
+        Objects.requireNonNull(key);
+        return keyOrNull(floorNode(key, false));
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the greatest key less than or equal to
+     * the given key, or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        Objects.requireNonNull(key);
+        return exportEntry(floorNode(key, true));
+    }
+
+    /**
+     * @param key the key
+     * @return the greatest key less than or equal to the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public K floorKey(K key) {
+        Objects.requireNonNull(key);
+        return keyOrNull(floorNode(key, true));
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the least key greater than or equal to
+     * the given key, or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        Objects.requireNonNull(key);
+        return exportEntry(ceilingNode(key, true));
+    }
+
+    /**
+     * @param key the key
+     * @return the least key greater than or equal to the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public K ceilingKey(K key) {
+        Objects.requireNonNull(key);
+        return keyOrNull(ceilingNode(key, true));
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the least key strictly greater than
+     * the given key, or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        Objects.requireNonNull(key);
+        return exportEntry(ceilingNode(key, false));
+    }
+
+    /**
+     * @param key the key
+     * @return the least key strictly greater than the given key,
+     * or null if there is no such key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public K higherKey(K key) {
+        Objects.requireNonNull(key);
+        return keyOrNull(ceilingNode(key, false));
+    }
+
+    /**
+     * @return an entry with the least key, or null if this map is empty.
+     */
+    @Override
+    public Entry<K, V> firstEntry() {
+        return exportEntry(findMin(root));
+    }
+
+    /**
+     * @return an entry with the greatest key, or null if this map is empty.
+     */
+    @Override
+    public Entry<K, V> lastEntry() {
+        return exportEntry(findMax(root));
+    }
+
+    /**
+     * Removes and returns a mapping associated with the least key.
+     *
+     * @return the removed first entry, or null if this map is empty.
+     * @see CustomTreeMap#removeMin()
+     */
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        Entry<K, V> entry = exportEntry(findMin(root));
+        if (entry != null) {
+            removeMin();
         }
+        return entry;
     }
 
     /**
-     * Copies all of the mappings from the specified map to this map
+     * Removes and returns a mapping associated with the greatest key.
      *
-     * @param m - mappings from specified map to be stored in this map
-     * @throws NullPointerException if specified map or it's key is null.
+     * @return the removed last entry, or null if this map is empty.
+     * @see CustomTreeMap#removeMax()
      */
     @Override
-    public void putAll(Map<? extends K, ? extends V> m) {
-        Objects.requireNonNull(m);
-        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+    public Entry<K, V> pollLastEntry() {
+        Entry<K, V> entry = exportEntry(findMax(root));
+        if (entry != null) {
+            removeMax();
         }
+        return entry;
     }
 
     /**
-     * @return returns a Set of the keys contained in this map.
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
      */
     @Override
-    public Set<K> keySet() {
-        Set<K> keySet = new HashSet<>();
-        for (Entry<K, V> node : listOfNodes()) {
-            keySet.add(node.getKey());
+    public K firstKey() {
+        return keyOrThrow(findMin(root));
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    @Override
+    public K lastKey() {
+        return keyOrThrow(findMax(root));
+    }
+
+    /**
+     * @return a live reverse order view of this map.
+     */
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return new SubMap(null, false, null, false, true);
+    }
+
+    /**
+     * @return a live NavigableSet view of the keys, in ascending order.
+     */
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        if (keySet == null) {
+            keySet = new KeySet(this);
         }
         return keySet;
     }
 
     /**
-     * @return returns a Collection of values contained in this map.
+     * @return a live NavigableSet view of the keys, in descending order.
      */
     @Override
-    public Collection<V> values() {
-        List<V> values = new ArrayList<>();
-        for (Entry<K, V> node : listOfNodes()) {
-            values.add(node.getValue());
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    /**
+     * Returns a live view of the portion of this map whose keys range
+     * from fromKey to toKey. Creating the view is O(1), navigation
+     * inside it is O(log n).
+     *
+     * @param fromKey       low endpoint of the keys in the returned map
+     * @param fromInclusive true if the low endpoint is to be included
+     * @param toKey         high endpoint of the keys in the returned map
+     * @param toInclusive   true if the high endpoint is to be included
+     * @return a view of the portion of this map.
+     * @throws NullPointerException     if fromKey or toKey is null.
+     * @throws IllegalArgumentException if fromKey is greater than toKey.
+     * @see CustomTreeMap.SubMap
+     */
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        Objects.requireNonNull(fromKey);
+        Objects.requireNonNull(toKey);
+        if (compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
         }
-        return values;
+        return new SubMap(fromKey, fromInclusive, toKey, toInclusive, false);
     }
 
     /**
-     * @return returns a Set of the key-value pairs contained in this map.
+     * @param toKey     high endpoint of the keys in the returned map
+     * @param inclusive true if the high endpoint is to be included
+     * @return a live view of the portion of this map whose keys are
+     * less than (or equal to, if inclusive is true) toKey.
+     * @throws NullPointerException if toKey is null.
      */
     @Override
-    public Set<Entry<K, V>> entrySet() {
-        return new HashSet<>(listOfNodes());
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        Objects.requireNonNull(toKey);
+        return new SubMap(null, false, toKey, inclusive, false);
+    }
+
+    /**
+     * @param fromKey   low endpoint of the keys in the returned map
+     * @param inclusive true if the low endpoint is to be included
+     * @return a live view of the portion of this map whose keys are
+     * greater than (or equal to, if inclusive is true) fromKey.
+     * @throws NullPointerException if fromKey is null.
+     */
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        Objects.requireNonNull(fromKey);
+        return new SubMap(fromKey, inclusive, null, false, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
     }
 
-    private List<Map.Entry<K, V>> listOfNodes() {
-        List<Map.Entry<K, V>> nodes = new ArrayList<>();
-        nodesToList(root, nodes);
-        return nodes;
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
     }
 
-    private void nodesToList(Node<K, V> node, List<Map.Entry<K, V>> nodes) {
-        if (node != null) {
-            nodesToList(node.left, nodes);
-            nodes.add(node);
-            nodesToList(node.right, nodes);
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * Counts keys which are strictly less than the given key
+     * using subtree sizes, so it runs in O(log n).
+     * Associated methods:
+     *
+     * @param key the key to be ranked.
+     * @return the number of keys in this map less than the given key.
+     * @throws NullPointerException if the specified key is null.
+     * @see CustomTreeMap#rank(Object, boolean)
+     */
+    public int rank(K key) {
+        Objects.requireNonNull(key);
+        return rank(key, false);
+    }
+
+    /**
+     * Counts keys less than the given key, or less than or equal
+     * to it if inclusive is set.
+     */
+    private int rank(K key, boolean inclusive) {
+        int rank = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = compare(key, node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left) + (inclusive ? 1 : 0);
+            }
         }
+        return rank;
     }
 
-    private class Node<K extends Comparable<K>, V> implements Map.Entry<K, V> {
+    /**
+     * Returns the key with the given rank in O(log n), so select(0)
+     * is the smallest key and select(size() - 1) is the largest one.
+     *
+     * @param index the rank of the key, starting from zero.
+     * @return the key such that exactly index keys are less than it.
+     * @throws IndexOutOfBoundsException if index is negative or
+     *                                   not less than size().
+     */
+    public K select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<K, V> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
 
-        private final K key;
-        private V value;
-        private Node<K, V> left;
-        private Node<K, V> right;
-        private int size;
-        private boolean color;
+    /**
+     * Counts keys between lo and hi, both inclusive, in O(log n).
+     *
+     * @param lo the low endpoint of the range.
+     * @param hi the high endpoint of the range.
+     * @return the number of keys in [lo, hi], or 0 if lo is greater than hi.
+     * @throws NullPointerException if lo or hi is null.
+     */
+    public int countInRange(K lo, K hi) {
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        if (compare(lo, hi) > 0) {
+            return 0;
+        }
+        return rank(hi, true) - rank(lo, false);
+    }
+
+    /**
+     * Returns the key at the given percentile by the nearest-rank
+     * method, e.g. percentile(99) for p99, in O(log n).
+     *
+     * @param percentile a value from 0 to 100.
+     * @return the smallest key such that at least the given percent
+     * of keys are less than or equal to it.
+     * @throws IllegalArgumentException if percentile is not in [0, 100].
+     * @throws NoSuchElementException   if this map is empty.
+     * @see CustomTreeMap#select(int)
+     */
+    public K percentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be in [0, 100]: " + percentile);
+        }
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        int index = (int) Math.ceil(percentile / 100 * size()) - 1;
+        return select(Math.max(index, 0));
+    }
 
+    /**
+     * @return the median key, the same as percentile(50).
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K median() {
+        return percentile(50);
+    }
 
-        public Node(K key, V value, boolean color, int size) {
-            this.key = key;
-            this.value = value;
-            this.size = size;
-            this.color = color;
+    /**
+     * Aggregates the values of the keys in [lo, hi] in ascending key
+     * order, in O(log n): the stored aggregates of whole subtrees inside
+     * the range are combined with the values on the two search paths.
+     *
+     * @param monoid the monoid this map was created with.
+     * @param lo     the low endpoint of the range.
+     * @param hi     the high endpoint of the range.
+     * @return the aggregate of the values in the range, or the identity
+     * if there are none.
+     * @throws NullPointerException     if an argument is null.
+     * @throws IllegalArgumentException if this map does not keep the
+     *                                  aggregate of the given monoid.
+     */
+    public <A> A aggregate(Monoid<? super V, A> monoid, K lo, K hi) {
+        checkMonoid(monoid);
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        if (compare(lo, hi) > 0) {
+            return monoid.identity();
         }
+        return (A) aggregate(root, lo, hi);
+    }
 
-        @Override
-        public V getValue() {
-            return value;
+    /**
+     * @param monoid the monoid this map was created with.
+     * @return the aggregate of all values, in O(1).
+     * @throws IllegalArgumentException if this map does not keep the
+     *                                  aggregate of the given monoid.
+     */
+    public <A> A aggregate(Monoid<? super V, A> monoid) {
+        checkMonoid(monoid);
+        return (A) aggregate(root);
+    }
+
+    private void checkMonoid(Monoid<?, ?> monoid) {
+        if (monoid != this.monoid || monoid == null) {
+            throw new IllegalArgumentException("This map does not aggregate " + monoid);
         }
+    }
 
-        @Override
-        public K getKey() {
-            return key;
+    /**
+     * Aggregates keys in [lo, hi] of the subtree, null meaning unbounded.
+     * Once the range is split at a node, each side has a single bound,
+     * so only one child per level is visited.
+     */
+    private Object aggregate(Node<K, V> node, K lo, K hi) {
+        while (node != null) {
+            if (lo != null && compare(node.key, lo) < 0) {
+                node = node.right;
+            } else if (hi != null && compare(node.key, hi) > 0) {
+                node = node.left;
+            } else {
+                Object left = lo == null ? aggregate(node.left) : aggregate(node.left, lo, null);
+                Object right = hi == null ? aggregate(node.right) : aggregate(node.right, null, hi);
+                return monoid.combine(monoid.combine(left, monoid.lift(node.value)), right);
+            }
         }
+        return monoid.identity();
+    }
 
-        @Override
-        public V setValue(V value) {
-            V prev = this.value;
-            this.value = value;
-            return prev;
+    /**
+     * Iterates values in ascending key order, skipping every subtree whose
+     * aggregate fails subtreeFilter, and every key for which beyond holds
+     * together with the keys above it; beyond must be monotone in the key.
+     * This is how IntervalCustomTreeMap prunes with its max end point.
+     * The iterator is fail-fast and does not support removal.
+     */
+    Iterator<V> prunedValues(Predicate<Object> subtreeFilter, Predicate<? super K> beyond) {
+        return new Iterator<V>() {
+            private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+            private final int expectedModCount = modCount;
+
+            {
+                pushSpine(root);
+            }
+
+            private void pushSpine(Node<K, V> node) {
+                while (node != null && subtreeFilter.test(node.aggregate)) {
+                    if (!beyond.test(node.key)) {
+                        stack.push(node);
+                    }
+                    node = node.left;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<K, V> node = stack.pop();
+                pushSpine(node.right);
+                return node.value;
+            }
+        };
+    }
+
+    /**
+     * Validates the left-leaning red-black invariants of this map:
+     * keys are in symmetric order, subtree sizes are consistent,
+     * there are no red right links and no two red links in a row,
+     * and every path from the root to a null link has the same
+     * number of black links.
+     *
+     * @return true if all invariants hold.
+     */
+    public boolean isValidRedBlackTree() {
+        if (isRed(root)) {
+            return false;
+        }
+        return isOrdered(root, null, null) && isSizeConsistent(root)
+                && is23(root) && blackHeight(root) != -1;
+    }
+
+    private boolean isOrdered(Node<K, V> node, K min, K max) {
+        if (node == null) {
+            return true;
+        }
+        if (min != null && compare(node.key, min) <= 0) {
+            return false;
+        }
+        if (max != null && compare(node.key, max) >= 0) {
+            return false;
+        }
+        return isOrdered(node.left, min, node.key) && isOrdered(node.right, node.key, max);
+    }
+
+    private boolean isSizeConsistent(Node<K, V> node) {
+        if (node == null) {
+            return true;
+        }
+        if (node.size != size(node.left) + size(node.right) + 1) {
+            return false;
+        }
+        return isSizeConsistent(node.left) && isSizeConsistent(node.right);
+    }
+
+    private boolean is23(Node<K, V> node) {
+        if (node == null) {
+            return true;
+        }
+        if (isRed(node.right)) {
+            return false;
+        }
+        if (isRed(node) && isRed(node.left)) {
+            return false;
+        }
+        return is23(node.left) && is23(node.right);
+    }
+
+    private int blackHeight(Node<K, V> node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left == -1 || right == -1 || left != right) {
+            return -1;
+        }
+        return isRed(node) ? left : left + 1;
+    }
+
+    /**
+     * @return common height of this TreeMap
+     * @deprecated this is only the longer of the leftmost and the
+     * rightmost path; stats() reports the true height and depths.
+     */
+    @Deprecated
+    public int commonHeight() {
+        return Math.max(heightOfLeftSubtree(), heightOfRightSubtree());
+    }
+
+    /**
+     * @return height of left branches of this TreeMap
+     * @deprecated this is only the length of the leftmost path;
+     * stats() reports the true height and depths.
+     */
+    @Deprecated
+    public int heightOfLeftSubtree() {
+        return leftHeight(root);
+    }
+
+    /**
+     * @return height of right branches of this TreeMap
+     * @deprecated this is only the length of the rightmost path;
+     * stats() reports the true height and depths.
+     */
+    @Deprecated
+    public int heightOfRightSubtree() {
+        return rightHeight(root);
+    }
+
+    private int leftHeight(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        return leftHeight(node.left) + 1;
+    }
+
+    private int rightHeight(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        return rightHeight(node.right) + 1;
+    }
+
+    /**
+     * @return true if height of left branches equals or one less
+     * than height of right branches and visa versa.
+     * @deprecated compares only the leftmost and the rightmost path,
+     * which says little about the balance of the tree; use
+     * isValidRedBlackTree() or the depths reported by stats().
+     */
+    @Deprecated
+    public boolean isBalanced() {
+        if (heightOfLeftSubtree() == heightOfRightSubtree()) {
+            return true;
+        }
+        if (heightOfRightSubtree() - heightOfLeftSubtree() == 1 ||
+                (heightOfRightSubtree() - heightOfLeftSubtree() == -1)) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts counting operations, their latency, comparisons per lookup,
+     * and rotations and color flips per insert. While statistics are
+     * disabled, which is the default, none of this is measured.
+     *
+     * @see CustomTreeMap#stats()
+     */
+    public void enableStats() {
+        if (stats == null) {
+            stats = new Instrumentation();
+        }
+    }
+
+    /**
+     * Stops counting and drops the counters.
+     */
+    public void disableStats() {
+        stats = null;
+    }
+
+    /**
+     * @return true if statistics are enabled.
+     */
+    public boolean isStatsEnabled() {
+        return stats != null;
+    }
+
+    /**
+     * Takes a snapshot of the counters and walks the tree in O(n) for
+     * the depths of all nodes.
+     *
+     * @return the statistics of this map.
+     * @throws IllegalStateException if statistics are disabled.
+     */
+    public TreeStats stats() {
+        if (stats == null) {
+            throw new IllegalStateException("Statistics are disabled");
+        }
+        long[] depthHistogram = new long[height(root) + 1];
+        countDepths(root, 1, depthHistogram);
+        return stats.snapshot(depthHistogram);
+    }
+
+    /**
+     * Registers the statistics of this map as an MBean in the platform
+     * MBean server, enabling them if needed. The MBean keeps the counters
+     * it was registered with, so it should be unregistered when the
+     * statistics are disabled.
+     *
+     * @param name the name of the MBean.
+     * @throws JMException if the MBean cannot be registered.
+     * @see TreeStatsMXBean
+     */
+    public void registerStatsMBean(ObjectName name) throws JMException {
+        enableStats();
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new StandardMBean(stats, TreeStatsMXBean.class, true), name);
+    }
+
+    private int height(Node<K, V> node) {
+        if (node == null) {
+            return 0;
+        }
+        return Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    private void countDepths(Node<K, V> node, int depth, long[] depthHistogram) {
+        while (node != null) {
+            depthHistogram[depth]++;
+            countDepths(node.left, depth + 1, depthHistogram);
+            node = node.right;
+            depth++;
+        }
+    }
+
+    /**
+     * Clears entire map.
+     */
+    @Override
+    public void clear() {
+        if (root != null) {
+            if (wal != null) {
+                logClear();
+            }
+            modCount++;
+            root = null;
+            if (valueCounts != null) {
+                valueCounts.clear();
+            }
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * When m is a SortedMap in natural order and the batch is not small
+     * compared to this map, its entries are merged with this map in one
+     * linear pass and the tree is rebuilt in O(n) reusing the existing
+     * nodes. Otherwise the mappings are put one by one.
+     * Associated methods:
+     *
+     * @param m - mappings from specified map to be stored in this map
+     * @throws NullPointerException if specified map or it's key is null.
+     * @see CustomTreeMap#mergeSorted(Entry[], int)
+     * @see CustomTreeMap#buildFromSorted(Node[], int, int, int)
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        Objects.requireNonNull(m);
+        int count = m.size();
+        if (m instanceof SortedMap && Objects.equals(((SortedMap<?, ?>) m).comparator(), comparator)
+                && preferMerge(count)) {
+            Object[] keys = new Object[count];
+            Object[] values = new Object[count];
+            int i = 0;
+            for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+                keys[i] = entry.getKey();
+                values[i++] = entry.getValue();
+            }
+            mergeSorted(keys, values, count);
+            return;
+        }
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Merges entries given in strictly ascending key order into this map
+     * in O(n + m), for example from a sorted stream or a file.
+     * The input is validated before the map is changed.
+     *
+     * @param entries entries in strictly ascending key order.
+     * @throws NullPointerException     if entries or one of the keys is null.
+     * @throws IllegalArgumentException if the keys are not strictly ascending.
+     */
+    public void putAllSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries) {
+        Objects.requireNonNull(entries);
+        List<Object> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        while (entries.hasNext()) {
+            Entry<? extends K, ? extends V> entry = entries.next();
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        checkSorted(keys.toArray(), keys.size());
+        if (keys.isEmpty()) {
+            return;
+        }
+        mergeSorted(keys.toArray(), values.toArray(), keys.size());
+    }
+
+    /**
+     * Looks up a batch of keys in strictly ascending order. The keys
+     * descend the tree side by side instead of one after another, so the
+     * cache misses of a lookup overlap with those of the others, and
+     * neighbouring keys find the nodes of their common path in cache.
+     *
+     * @param keys   keys in strictly ascending order.
+     * @param values receives the value of keys[i] in values[i], or null
+     *               if the key is absent; at least as long as keys.
+     * @return the number of keys present in this map.
+     * @throws NullPointerException      if an array or one of the keys is null.
+     * @throws IllegalArgumentException  if the keys are not strictly ascending.
+     * @throws IndexOutOfBoundsException if values is shorter than keys.
+     */
+    public int getAll(K[] keys, V[] values) {
+        checkBatch(keys, values.length);
+        Node<K, V>[] found = new Node[keys.length];
+        findAll(keys, found, null);
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (found[i] != null) {
+                values[i] = found[i].value;
+                count++;
+            } else {
+                values[i] = null;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Puts a batch of mappings with keys in strictly ascending order.
+     * A batch which is large relative to the map is merged with the tree
+     * in O(n + m) like putAllSorted. Otherwise the keys are looked up
+     * together as in getAll, present keys get their new values and only
+     * the absent ones are inserted by put, which descends once more.
+     *
+     * @param keys   keys in strictly ascending order.
+     * @param values values, values[i] is mapped to keys[i].
+     * @return the number of keys which were absent and are added.
+     * @throws NullPointerException      if an array or one of the keys is null.
+     * @throws IllegalArgumentException  if the keys are not strictly ascending.
+     * @throws IndexOutOfBoundsException if values is shorter than keys.
+     */
+    public int putBatch(K[] keys, V[] values) {
+        checkBatch(keys, values.length);
+        int count = keys.length;
+        if (preferMerge(count)) {
+            int size = size();
+            mergeSorted(keys, values, count);
+            return size() - size;
+        }
+        Node<K, V>[] found = new Node[count];
+        findAll(keys, found, null);
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (found[i] != null) {
+                if (wal != null) {
+                    logPut(keys[i], values[i]);
+                }
+                found[i].replace(this, values[i]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (found[i] == null) {
+                put(keys[i], values[i]);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes a batch of keys in strictly ascending order. A batch which
+     * is large relative to the map is removed in one in-order pass which
+     * rebuilds the tree in O(n + m). Otherwise the keys are looked up
+     * together as in getAll, which also yields their ranks, and only the
+     * present ones are removed, each by one descent by rank.
+     *
+     * @param keys keys in strictly ascending order.
+     * @return the number of keys which were present and are removed.
+     * @throws NullPointerException     if the array or one of the keys is null.
+     * @throws IllegalArgumentException if the keys are not strictly ascending.
+     */
+    public int removeBatch(K[] keys) {
+        checkBatch(keys, keys.length);
+        int count = keys.length;
+        if (preferMerge(count)) {
+            return removeSorted(keys, count);
+        }
+        Node<K, V>[] found = new Node[count];
+        int[] ranks = new int[count];
+        findAll(keys, found, ranks);
+        int removed = 0;
+        for (int i = 0; i < count; i++) {
+            if (found[i] != null) {
+                // the keys before this one which are gone lowered its rank
+                remove(found[i], ranks[i] - removed);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Stores the node of keys[i] in found[i], or null. The keys descend
+     * in groups of BATCH_LANES, all of a group one level per round, so
+     * the loads of the next nodes do not depend on each other and the
+     * CPU overlaps their cache misses instead of waiting for each one.
+     * Unless ranks is null, ranks[i] receives the rank of a present key.
+     */
+    private void findAll(K[] keys, Node<K, V>[] found, int[] ranks) {
+        if (root == null) {
+            return;
+        }
+        for (int from = 0; from < keys.length; from += BATCH_LANES) {
+            int to = Math.min(from + BATCH_LANES, keys.length);
+            for (int i = from; i < to; i++) {
+                found[i] = root;
+            }
+            int pending = -1 >>> (32 - (to - from));
+            while (pending != 0) {
+                for (int lanes = pending; lanes != 0; lanes &= lanes - 1) {
+                    int lane = Integer.numberOfTrailingZeros(lanes);
+                    Node<K, V> node = found[from + lane];
+                    int cmp = compare(keys[from + lane], node.key);
+                    if (ranks != null && cmp >= 0) {
+                        ranks[from + lane] += cmp > 0 ? size(node.left) + 1 : size(node.left);
+                    }
+                    if (cmp != 0) {
+                        node = cmp < 0 ? node.left : node.right;
+                        found[from + lane] = node;
+                        if (node != null) {
+                            continue;
+                        }
+                    }
+                    pending &= ~(1 << lane);
+                }
+            }
+        }
+    }
+
+    private void checkBatch(K[] keys, int valuesLength) {
+        if (valuesLength < keys.length) {
+            throw new IndexOutOfBoundsException("values.length < keys.length");
+        }
+        checkSorted(keys, keys.length);
+    }
+
+    /**
+     * Validates the input of the sorted bulk operations before the map
+     * is changed.
+     */
+    private void checkSorted(Object[] keys, int count) {
+        for (int i = 0; i < count; i++) {
+            Objects.requireNonNull(keys[i]);
+            if (i > 0 && compare((K) keys[i - 1], (K) keys[i]) >= 0) {
+                throw new IllegalArgumentException("Keys are not in strictly ascending order: "
+                        + keys[i - 1] + ", " + keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes the keys in one in-order pass and rebuilds the tree
+     * from the remaining nodes.
+     */
+    private int removeSorted(K[] keys, int count) {
+        if (wal != null) {
+            logRemoves(keys, count);
+        }
+        Node<K, V>[] nodes = new Node[size()];
+        int n = 0;
+        int next = 0;
+        Deque<Node<K, V>> stack = new ArrayDeque<>();
+        for (Node<K, V> node = root; node != null; node = node.left) {
+            stack.push(node);
+        }
+        while (!stack.isEmpty()) {
+            Node<K, V> node = stack.pop();
+            for (Node<K, V> child = node.right; child != null; child = child.left) {
+                stack.push(child);
+            }
+            while (next < count && compare(keys[next], node.key) < 0) {
+                next++;
+            }
+            if (next < count && compare(keys[next], node.key) == 0) {
+                unindexValue(node.value);
+                next++;
+            } else {
+                nodes[n++] = own(node);
+            }
+        }
+        int removed = nodes.length - n;
+        if (removed > 0) {
+            modCount++;
+            root = buildFromSorted(nodes, 0, n, 31 - Integer.numberOfLeadingZeros(n + 1));
+        }
+        return removed;
+    }
+
+    /**
+     * @return true if rebuilding the tree is cheaper than count puts.
+     */
+    private boolean preferMerge(int count) {
+        if (count == 0) {
+            return false;
+        }
+        int total = size() + count;
+        return (long) count * (33 - Integer.numberOfLeadingZeros(total)) >= total;
+    }
+
+    private void mergeSorted(Object[] keys, Object[] values, int count) {
+        if (wal != null) {
+            logPuts(keys, values, count);
+        }
+        Node<K, V>[] nodes = new Node[size() + count];
+        int n = 0;
+        int next = 0;
+        Deque<Node<K, V>> stack = new ArrayDeque<>();
+        for (Node<K, V> node = root; node != null; node = node.left) {
+            stack.push(node);
+        }
+        while (!stack.isEmpty()) {
+            Node<K, V> node = stack.pop();
+            for (Node<K, V> child = node.right; child != null; child = child.left) {
+                stack.push(child);
+            }
+            while (next < count && compare((K) keys[next], node.key) < 0) {
+                nodes[n++] = new Node<>((K) keys[next], (V) values[next], BLACK, 1);
+                indexValue((V) values[next]);
+                next++;
+            }
+            node = own(node);
+            if (next < count && compare((K) keys[next], node.key) == 0) {
+                unindexValue(node.value);
+                node.value = (V) values[next];
+                indexValue(node.value);
+                next++;
+            }
+            nodes[n++] = node;
+        }
+        while (next < count) {
+            nodes[n++] = new Node<>((K) keys[next], (V) values[next], BLACK, 1);
+            indexValue((V) values[next]);
+            next++;
+        }
+        modCount++;
+        root = buildFromSorted(nodes, 0, n, 31 - Integer.numberOfLeadingZeros(n + 1));
+    }
+
+    /**
+     * Links nodes[lo, hi) into a left-leaning red-black tree with the
+     * given black height in O(hi - lo). Every subtree is built as a
+     * 2-3 tree: the root is a 2-node (one black node) when the keys fit
+     * into two children of the lower black height, otherwise a 3-node
+     * (a black node with a red left child), and the remaining keys are
+     * split evenly. A tree of black height h holds from 2^h - 1 to
+     * 3^h - 1 keys, and floor(log2(n + 1)) always fits n keys.
+     */
+    private Node<K, V> buildFromSorted(Node<K, V>[] nodes, int lo, int hi, int blackHeight) {
+        if (blackHeight == 0) {
+            return null;
+        }
+        int count = hi - lo;
+        if (count - 1 <= 2 * maxKeys(blackHeight - 1)) {
+            int mid = lo + count / 2;
+            Node<K, V> node = nodes[mid];
+            node.left = buildFromSorted(nodes, lo, mid, blackHeight - 1);
+            node.right = buildFromSorted(nodes, mid + 1, hi, blackHeight - 1);
+            node.color = BLACK;
+            return update(node);
+        }
+        int rest = count - 2;
+        int first = lo + (rest + 2) / 3;
+        int second = first + 1 + (rest + 1) / 3;
+        Node<K, V> red = nodes[first];
+        red.left = buildFromSorted(nodes, lo, first, blackHeight - 1);
+        red.right = buildFromSorted(nodes, first + 1, second, blackHeight - 1);
+        red.color = RED;
+        update(red);
+        Node<K, V> black = nodes[second];
+        black.left = red;
+        black.right = buildFromSorted(nodes, second + 1, hi, blackHeight - 1);
+        black.color = BLACK;
+        return update(black);
+    }
+
+    /**
+     * @return the largest number of keys in a 2-3 tree of the given
+     * black height, 3^h - 1, saturated at Integer.MAX_VALUE.
+     */
+    private static long maxKeys(int blackHeight) {
+        long keys = 1;
+        for (int i = 0; i < blackHeight && keys <= Integer.MAX_VALUE; i++) {
+            keys *= 3;
+        }
+        return keys - 1;
+    }
+
+    /**
+     * Splits this map at the key in O(log n). The halves share their
+     * nodes with this map, which stays unchanged; afterwards each of the
+     * three copies the shared nodes on the path of a change, as after
+     * snapshot(). The halves keep the comparator and the monoid, but
+     * not the value index or the statistics.
+     *
+     * @param key the key where to split, which need not be present.
+     * @return two maps: the mappings with keys less than the key, and
+     * those with keys greater than or equal to it.
+     * @throws NullPointerException if the key is null.
+     */
+    public List<CustomTreeMap<K, V>> split(K key) {
+        Objects.requireNonNull(key);
+        CustomTreeMap<K, V> left = emptyLike();
+        CustomTreeMap<K, V> right = emptyLike();
+        left.version = ++version;
+        right.version = version + 1;
+        Split parts = left.split(root, spineHeight(root), key);
+        if (parts.match != null) {
+            parts.right = left.join(null, 0, left.own(parts.match), parts.right, parts.rightHeight).node;
+        }
+        left.root = left.blacken(parts.left);
+        right.root = left.blacken(parts.right);
+        return Arrays.asList(left, right);
+    }
+
+    /**
+     * Joins two maps whose keys do not overlap in O(log n), walking down
+     * the taller tree only to the black height of the other. The result
+     * shares its nodes with both maps, which stay unchanged, like split.
+     *
+     * @param left  map whose keys are all less than those of right.
+     * @param right map whose keys are all greater than those of left.
+     * @return a new map with the mappings of both.
+     * @throws NullPointerException     if a map is null.
+     * @throws IllegalArgumentException if the keys overlap or the maps
+     *                                  differ in comparator or monoid.
+     */
+    public static <K, V> CustomTreeMap<K, V> join(CustomTreeMap<K, V> left, CustomTreeMap<K, V> right) {
+        Objects.requireNonNull(left);
+        return left.join(right);
+    }
+
+    private CustomTreeMap<K, V> join(CustomTreeMap<K, V> right) {
+        checkCompatible(right);
+        if (root != null && right.root != null && compare(findMax(root).key, findMin(right.root).key) >= 0) {
+            throw new IllegalArgumentException("Keys of the maps overlap");
+        }
+        CustomTreeMap<K, V> result = emptyLike();
+        result.version = shareWith(right);
+        result.root = result.blacken(result.join(root, spineHeight(root), right.root, spineHeight(right.root)).node);
+        return result;
+    }
+
+    /**
+     * Returns the mappings of both maps in O(m log(n / m + 1)) for sizes
+     * m &lt;= n, splitting one tree at the keys of the other and joining
+     * the pieces. The result shares its nodes with both maps, which stay
+     * unchanged, like split.
+     *
+     * @param other the map to be added.
+     * @return a new map, with the value of other for keys in both maps.
+     * @throws NullPointerException     if other is null.
+     * @throws IllegalArgumentException if the maps differ in comparator or monoid.
+     */
+    public CustomTreeMap<K, V> union(CustomTreeMap<K, V> other) {
+        checkCompatible(other);
+        CustomTreeMap<K, V> result = emptyLike();
+        result.version = shareWith(other);
+        result.root = result.blacken(result.union(root, spineHeight(root), other.root, spineHeight(other.root)).node);
+        return result;
+    }
+
+    /**
+     * Returns the mappings of this map whose keys are also in the other
+     * one, in O(m log(n / m + 1)) like union.
+     *
+     * @param other the map whose keys are kept.
+     * @return a new map with the values of this map.
+     * @throws NullPointerException     if other is null.
+     * @throws IllegalArgumentException if the maps differ in comparator or monoid.
+     */
+    public CustomTreeMap<K, V> intersection(CustomTreeMap<K, V> other) {
+        checkCompatible(other);
+        CustomTreeMap<K, V> result = emptyLike();
+        result.version = shareWith(other);
+        result.root = result.blacken(result.intersection(root, spineHeight(root),
+                other.root, spineHeight(other.root)).node);
+        return result;
+    }
+
+    /**
+     * Returns the mappings of this map whose keys are not in the other
+     * one, in O(m log(n / m + 1)) like union.
+     *
+     * @param other the map whose keys are removed.
+     * @return a new map with the remaining mappings of this map.
+     * @throws NullPointerException     if other is null.
+     * @throws IllegalArgumentException if the maps differ in comparator or monoid.
+     */
+    public CustomTreeMap<K, V> difference(CustomTreeMap<K, V> other) {
+        checkCompatible(other);
+        CustomTreeMap<K, V> result = emptyLike();
+        result.version = shareWith(other);
+        result.root = result.blacken(result.difference(root, spineHeight(root),
+                other.root, spineHeight(other.root)).node);
+        return result;
+    }
+
+    private CustomTreeMap<K, V> emptyLike() {
+        return monoid == null ? new CustomTreeMap<>(comparator) : new CustomTreeMap<>(comparator, monoid);
+    }
+
+    private void checkCompatible(CustomTreeMap<K, V> other) {
+        Objects.requireNonNull(other);
+        if (!Objects.equals(comparator, other.comparator) || monoid != other.monoid) {
+            throw new IllegalArgumentException("Maps differ in comparator or monoid");
+        }
+    }
+
+    /**
+     * Marks the nodes of this map and the other one as shared, like
+     * snapshot() does.
+     *
+     * @return a version newer than all their nodes, for a map which
+     * takes them over.
+     */
+    private int shareWith(CustomTreeMap<K, V> other) {
+        int shared = Math.max(version, other.version) + 1;
+        version++;
+        if (other != this) {
+            other.version++;
+        }
+        return shared;
+    }
+
+    /**
+     * Pieces of a tree split at a key, with their black heights.
+     * The operations below pass trees with their black height, counting
+     * the root only if it is black, and may return a tree with a red
+     * root together with its height as a Joined.
+     */
+    private class Split {
+        Node<K, V> left;
+        int leftHeight;
+        Node<K, V> right;
+        int rightHeight;
+        Node<K, V> match;
+    }
+
+    /**
+     * Tree returned by join and the set operations, with its black height.
+     */
+    private class Joined {
+        final Node<K, V> node;
+        final int height;
+
+        Joined(Node<K, V> node, int height) {
+            this.node = node;
+            this.height = height;
+        }
+    }
+
+    /**
+     * @return the black height of a tree, counted along its left spine.
+     */
+    private int spineHeight(Node<K, V> node) {
+        int height = 0;
+        for (; node != null; node = node.left) {
+            if (!isRed(node)) {
+                height++;
+            }
+        }
+        return height;
+    }
+
+    private Node<K, V> blacken(Node<K, V> node) {
+        if (isRed(node)) {
+            node = own(node);
+            node.color = BLACK;
+        }
+        return node;
+    }
+
+    private Split split(Node<K, V> node, int height, K key) {
+        if (node == null) {
+            return new Split();
+        }
+        int childHeight = isRed(node) ? height : height - 1;
+        int cmp = compare(key, node.key);
+        if (cmp == 0) {
+            Split parts = new Split();
+            parts.left = node.left;
+            parts.leftHeight = childHeight;
+            parts.right = node.right;
+            parts.rightHeight = childHeight;
+            parts.match = node;
+            return parts;
+        }
+        if (cmp < 0) {
+            Split parts = split(node.left, childHeight, key);
+            Joined right = join(parts.right, parts.rightHeight, own(node), node.right, childHeight);
+            parts.right = right.node;
+            parts.rightHeight = right.height;
+            return parts;
+        }
+        Split parts = split(node.right, childHeight, key);
+        Joined left = join(node.left, childHeight, own(node), parts.left, parts.leftHeight);
+        parts.left = left.node;
+        parts.leftHeight = left.height;
+        return parts;
+    }
+
+    /**
+     * Joins the trees with the middle node, whose key lies between theirs.
+     * A red root of either tree is made black first; the taller tree is
+     * then descended to the black height of the other, where the middle
+     * node is attached as a red link and balanced on the way up like
+     * an insert.
+     */
+    private Joined join(Node<K, V> left, int leftHeight, Node<K, V> middle,
+                        Node<K, V> right, int rightHeight) {
+        if (isRed(left)) {
+            left = blacken(left);
+            leftHeight++;
+        }
+        if (isRed(right)) {
+            right = blacken(right);
+            rightHeight++;
+        }
+        if (leftHeight > rightHeight) {
+            return new Joined(joinRight(left, leftHeight, middle, right, rightHeight), leftHeight);
+        }
+        if (leftHeight < rightHeight) {
+            return new Joined(joinLeft(left, leftHeight, middle, right, rightHeight), rightHeight);
+        }
+        return new Joined(attach(left, middle, right), leftHeight);
+    }
+
+    private Node<K, V> attach(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        middle.left = left;
+        middle.right = right;
+        middle.color = RED;
+        return update(middle);
+    }
+
+    private Node<K, V> joinRight(Node<K, V> node, int height, Node<K, V> middle,
+                                 Node<K, V> right, int rightHeight) {
+        if (height == rightHeight && !isRed(node)) {
+            return attach(node, middle, right);
+        }
+        node = own(node);
+        node.right = joinRight(node.right, isRed(node) ? height : height - 1, middle, right, rightHeight);
+        return balance(node);
+    }
+
+    private Node<K, V> joinLeft(Node<K, V> left, int leftHeight, Node<K, V> middle,
+                                Node<K, V> node, int height) {
+        if (height == leftHeight && !isRed(node)) {
+            return attach(left, middle, node);
+        }
+        node = own(node);
+        node.left = joinLeft(left, leftHeight, middle, node.left, isRed(node) ? height : height - 1);
+        return balance(node);
+    }
+
+    /**
+     * Joins the trees without a middle node by taking the smallest node
+     * of the right one out of it.
+     */
+    private Joined join(Node<K, V> left, int leftHeight, Node<K, V> right, int rightHeight) {
+        if (right == null) {
+            return new Joined(left, leftHeight);
+        }
+        if (left == null) {
+            return new Joined(right, rightHeight);
+        }
+        Node<K, V> min = findMin(right);
+        right = own(right);
+        if (!isRed(right.left) && !isRed(right.right)) {
+            right.color = RED;
+        }
+        right = blacken(removeMin(right));
+        return join(left, leftHeight, own(min), right, spineHeight(right));
+    }
+
+    private Joined union(Node<K, V> node, int height, Node<K, V> other, int otherHeight) {
+        if (node == null || other == null) {
+            return node == null ? new Joined(other, otherHeight) : new Joined(node, height);
+        }
+        int childHeight = isRed(other) ? otherHeight : otherHeight - 1;
+        Split parts = split(node, height, other.key);
+        Joined left = union(parts.left, parts.leftHeight, other.left, childHeight);
+        Joined right = union(parts.right, parts.rightHeight, other.right, childHeight);
+        return join(left.node, left.height, own(other), right.node, right.height);
+    }
+
+    private Joined intersection(Node<K, V> node, int height, Node<K, V> other, int otherHeight) {
+        if (node == null || other == null) {
+            return new Joined(null, 0);
+        }
+        int childHeight = isRed(other) ? otherHeight : otherHeight - 1;
+        Split parts = split(node, height, other.key);
+        Joined left = intersection(parts.left, parts.leftHeight, other.left, childHeight);
+        Joined right = intersection(parts.right, parts.rightHeight, other.right, childHeight);
+        if (parts.match != null) {
+            return join(left.node, left.height, own(parts.match), right.node, right.height);
+        }
+        return join(left.node, left.height, right.node, right.height);
+    }
+
+    private Joined difference(Node<K, V> node, int height, Node<K, V> other, int otherHeight) {
+        if (node == null || other == null) {
+            return new Joined(node, height);
+        }
+        int childHeight = isRed(other) ? otherHeight : otherHeight - 1;
+        Split parts = split(node, height, other.key);
+        Joined left = difference(parts.left, parts.leftHeight, other.left, childHeight);
+        Joined right = difference(parts.right, parts.rightHeight, other.right, childHeight);
+        return join(left.node, left.height, right.node, right.height);
+    }
+
+    /**
+     * Returns an immutable view of the current mappings of this map in
+     * O(1). The view shares all nodes with this map; afterwards put and
+     * remove copy only the O(log n) shared nodes on their path instead of
+     * changing them, so the view never changes. Until the first snapshot
+     * is taken nothing is copied.
+     * <p>
+     * The snapshot must be taken by the thread that modifies this map.
+     * The returned view may then be read by any number of threads
+     * without locking while this map keeps changing.
+     *
+     * @return a read-only map with the current mappings.
+     */
+    public NavigableMap<K, V> snapshot() {
+        version++;
+        CustomTreeMap<K, V> snapshot = new CustomTreeMap<>(comparator);
+        snapshot.root = root;
+        return Collections.unmodifiableNavigableMap(snapshot);
+    }
+
+    /**
+     * Writes the entries of this map in ascending key order to a
+     * versioned snapshot file, which can later be reopened in O(1)
+     * with SnapshotMap#open and queried without reloading the map.
+     *
+     * @param path            snapshot file to be created or replaced.
+     * @param keySerializer   serializer of keys.
+     * @param valueSerializer serializer of values.
+     * @throws IOException           if the snapshot cannot be written.
+     * @throws IllegalStateException if this map has a comparator, since
+     *                               SnapshotMap searches by natural ordering.
+     * @see SnapshotMap#write(SortedMap, Path, SnapshotSerializer, SnapshotSerializer)
+     */
+    public void writeSnapshot(Path path, SnapshotSerializer<K> keySerializer,
+                              SnapshotSerializer<V> valueSerializer) throws IOException {
+        if (comparator != null) {
+            throw new IllegalStateException("Snapshot files require natural ordering");
+        }
+        // the keys are Comparable without a comparator, but K does not say so
+        SnapshotMap.write(size(), entrySet(), path, keySerializer, valueSerializer);
+    }
+
+    /**
+     * Makes this map durable: from now on every put, remove and clear,
+     * including those made through views, iterators, entries and the
+     * batch methods, is appended to a write-ahead log in the directory
+     * before it is applied. The map is first filled from the files a
+     * previous durable map left there, its last checkpoint followed by
+     * the changes logged since.
+     * <p>
+     * Changes are committed in groups: the log writes and forces
+     * syncEvery changes together, so a crash loses at most the last
+     * syncEvery - 1 changes, and none with syncEvery 1. With syncEvery 0
+     * changes are committed only by sync(), checkpoint(), a full buffer
+     * or disableDurability(). When the log outgrows the last checkpoint,
+     * the next change first writes a new one, so recovery stays
+     * proportional to the size of the map. Failures to write the log
+     * are thrown as UncheckedIOException; the failed change is not
+     * applied to the map, though it may still reach the log.
+     *
+     * @param directory       directory of the checkpoint and the log,
+     *                        created if it does not exist.
+     * @param keySerializer   serializer of keys.
+     * @param valueSerializer serializer of values.
+     * @param syncEvery       number of changes per commit, 0 to commit
+     *                        only on sync().
+     * @throws IOException              if the files cannot be read or written.
+     * @throws IllegalStateException    if the map is not empty or
+     *                                  already durable.
+     * @throws IllegalArgumentException if syncEvery is negative.
+     * @see CustomTreeMap#checkpoint()
+     */
+    public void enableDurability(Path directory, SnapshotSerializer<K> keySerializer,
+                                 SnapshotSerializer<V> valueSerializer, int syncEvery) throws IOException {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(keySerializer);
+        Objects.requireNonNull(valueSerializer);
+        if (wal != null) {
+            throw new IllegalStateException("Durability is already enabled");
+        }
+        if (root != null) {
+            throw new IllegalStateException("Durability requires an empty map");
+        }
+        try {
+            wal = WriteAheadLog.open(directory, keySerializer, valueSerializer, syncEvery,
+                    this::put, key -> remove(key), this::clear);
+        } catch (IOException | RuntimeException e) {
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Commits the pending changes and closes the log. The files stay
+     * in the directory for the next enableDurability.
+     *
+     * @throws IOException if the pending changes cannot be written.
+     */
+    public void disableDurability() throws IOException {
+        if (wal != null) {
+            try {
+                wal.close();
+            } finally {
+                wal = null;
+            }
+        }
+    }
+
+    /**
+     * @return true if changes are logged.
+     */
+    public boolean isDurable() {
+        return wal != null;
+    }
+
+    /**
+     * Commits the changes made since the last commit.
+     *
+     * @throws IOException           if the changes cannot be written.
+     * @throws IllegalStateException if the map is not durable.
+     */
+    public void sync() throws IOException {
+        checkDurable().sync();
+    }
+
+    /**
+     * Writes the whole map as the new checkpoint and empties the log,
+     * in O(n). Recovery then reads the checkpoint without replaying
+     * the changes which led to it.
+     *
+     * @throws IOException           if the checkpoint cannot be written.
+     * @throws IllegalStateException if the map is not durable.
+     */
+    public void checkpoint() throws IOException {
+        checkDurable().checkpoint(this);
+    }
+
+    private WriteAheadLog<K, V> checkDurable() {
+        if (wal == null) {
+            throw new IllegalStateException("Durability is not enabled");
+        }
+        return wal;
+    }
+
+    /**
+     * Checkpoints if the log is due for it, before the change is
+     * appended, so the checkpoint never misses a logged change.
+     */
+    private void logPut(K key, V value) {
+        try {
+            checkpointIfDue();
+            wal.appendPut(key, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logRemove(K key) {
+        try {
+            checkpointIfDue();
+            wal.appendRemove(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logClear() {
+        try {
+            checkpointIfDue();
+            wal.appendClear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logPuts(Object[] keys, Object[] values, int count) {
+        try {
+            checkpointIfDue();
+            for (int i = 0; i < count; i++) {
+                wal.appendPut((K) keys[i], (V) values[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logRemoves(K[] keys, int count) {
+        try {
+            checkpointIfDue();
+            for (int i = 0; i < count; i++) {
+                wal.appendRemove(keys[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkpointIfDue() throws IOException {
+        if (wal.isCheckpointDue()) {
+            wal.checkpoint(this);
+        }
+    }
+
+    /**
+     * Returns a live view of the keys contained in this map.
+     * The view is created once and iterates keys in ascending
+     * order directly over the tree, without copying.
+     *
+     * @return returns a Set of the keys contained in this map.
+     * @see CustomTreeMap#navigableKeySet()
+     */
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    /**
+     * Returns a live view of the values contained in this map,
+     * ordered by their keys.
+     *
+     * @return returns a Collection of values contained in this map.
+     * @see CustomTreeMap.Values
+     */
+    @Override
+    public Collection<V> values() {
+        if (values == null) {
+            values = new Values();
+        }
+        return values;
+    }
+
+    /**
+     * Returns a live view of the key-value pairs contained in this map,
+     * ordered by their keys. Entries support setValue.
+     *
+     * @return returns a Set of the key-value pairs contained in this map.
+     * @see CustomTreeMap.EntrySet
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private class Values extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            return new TreeIterator<V>(null, false, null, false, false) {
+                @Override
+                V element(Node<K, V> node) {
+                    return node.value;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new TreeSpliterator<>(Spliterator.ORDERED, null, node -> node.value);
+        }
+
+        @Override
+        public int size() {
+            return CustomTreeMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            CustomTreeMap.this.clear();
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator(null, false, null, false, false);
+        }
+
+        @Override
+        public Spliterator<Entry<K, V>> spliterator() {
+            return new TreeSpliterator<>(KEY_CHARACTERISTICS,
+                    (a, b) -> compare(a.getKey(), b.getKey()), CustomTreeMap.this::entry);
+        }
+
+        @Override
+        public int size() {
+            return CustomTreeMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            if (entry.getKey() == null) {
+                return false;
+            }
+            Node<K, V> node = find(root, (K) entry.getKey());
+            return node != null && Objects.equals(node.value, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            CustomTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            CustomTreeMap.this.clear();
+        }
+    }
+
+    /**
+     * NavigableSet view of the keys of this map or of one of its
+     * sub-maps. Every operation is delegated to the backing map.
+     */
+    private class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+        private final NavigableMap<K, ?> map;
+
+        KeySet(NavigableMap<K, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            Iterator<? extends Entry<K, ?>> entries = map.entrySet().iterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return entries.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        /**
+         * Splits by subtree when this is the key set of the whole map.
+         */
+        @Override
+        public Spliterator<K> spliterator() {
+            if (map != CustomTreeMap.this) {
+                return NavigableSet.super.spliterator();
+            }
+            return new TreeSpliterator<>(KEY_CHARACTERISTICS, comparator, node -> node.key);
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!map.containsKey(o)) {
+                return false;
+            }
+            map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            return keyOrNull(map.pollFirstEntry());
+        }
+
+        @Override
+        public K pollLast() {
+            return keyOrNull(map.pollLastEntry());
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(map.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+
+        @Override
+        public K first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return map.lastKey();
+        }
+    }
+
+    /**
+     * Live view of a key range of this map. A null bound means the
+     * range is unbounded at that side, which is unambiguous since the
+     * map does not allow null keys. When descending is set, the view
+     * presents the same range in reverse order.
+     */
+    private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+        private KeySet navigableKeySet;
+        private Set<Entry<K, V>> entrySet;
+
+        SubMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (lo == null) {
+                return false;
+            }
+            int cmp = compare(key, lo);
+            return cmp < 0 || (cmp == 0 && !loInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (hi == null) {
+                return false;
+            }
+            int cmp = compare(key, hi);
+            return cmp > 0 || (cmp == 0 && !hiInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private boolean inClosedRange(K key) {
+            return (lo == null || compare(key, lo) >= 0)
+                    && (hi == null || compare(key, hi) <= 0);
+        }
+
+        private boolean inRange(K key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        private Node<K, V> absLowest() {
+            Node<K, V> node = lo == null ? findMin(root) : ceilingNode(lo, loInclusive);
+            return node == null || tooHigh(node.key) ? null : node;
+        }
+
+        private Node<K, V> absHighest() {
+            Node<K, V> node = hi == null ? findMax(root) : floorNode(hi, hiInclusive);
+            return node == null || tooLow(node.key) ? null : node;
+        }
+
+        private Node<K, V> absCeiling(K key, boolean inclusive) {
+            if (tooLow(key)) {
+                return absLowest();
+            }
+            Node<K, V> node = ceilingNode(key, inclusive);
+            return node == null || tooHigh(node.key) ? null : node;
+        }
+
+        private Node<K, V> absFloor(K key, boolean inclusive) {
+            if (tooHigh(key)) {
+                return absHighest();
+            }
+            Node<K, V> node = floorNode(key, inclusive);
+            return node == null || tooLow(node.key) ? null : node;
+        }
+
+        private Node<K, V> lowest() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Node<K, V> highest() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        private Node<K, V> ceiling(K key, boolean inclusive) {
+            Objects.requireNonNull(key);
+            return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+        }
+
+        private Node<K, V> floor(K key, boolean inclusive) {
+            Objects.requireNonNull(key);
+            return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+        }
+
+        private Entry<K, V> poll(Node<K, V> node) {
+            Entry<K, V> entry = exportEntry(node);
+            if (node != null) {
+                CustomTreeMap.this.remove(node.key);
+            }
+            return entry;
+        }
+
+        private Iterator<Entry<K, V>> entryIterator() {
+            if (descending) {
+                return new EntryIterator(hi, hiInclusive, lo, loInclusive, true);
+            }
+            return new EntryIterator(lo, loInclusive, hi, hiInclusive, false);
+        }
+
+        @Override
+        public int size() {
+            int above = hi == null ? CustomTreeMap.this.size() : rank(hi, hiInclusive);
+            int below = lo == null ? 0 : rank(lo, !loInclusive);
+            return Math.max(above - below, 0);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Objects.requireNonNull(key);
+            return inRange((K) key) && CustomTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            Objects.requireNonNull(key);
+            return inRange((K) key) ? CustomTreeMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            Objects.requireNonNull(key);
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return CustomTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            Objects.requireNonNull(key);
+            return inRange((K) key) ? CustomTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Entry<K, V>>() {
+                    @Override
+                    public Iterator<Entry<K, V>> iterator() {
+                        return entryIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return SubMap.this.size();
+                    }
+
+                    @Override
+                    public boolean isEmpty() {
+                        return SubMap.this.isEmpty();
+                    }
+
+                    @Override
+                    public boolean contains(Object o) {
+                        if (!(o instanceof Map.Entry)) {
+                            return false;
+                        }
+                        Object key = ((Map.Entry<?, ?>) o).getKey();
+                        return key != null && inRange((K) key) && CustomTreeMap.this.entrySet().contains(o);
+                    }
+
+                    @Override
+                    public boolean remove(Object o) {
+                        return contains(o) && CustomTreeMap.this.entrySet().remove(o);
+                    }
+                };
+            }
+            return entrySet;
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public Entry<K, V> lowerEntry(K key) {
+            return exportEntry(floor(key, false));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(floor(key, false));
+        }
+
+        @Override
+        public Entry<K, V> floorEntry(K key) {
+            return exportEntry(floor(key, true));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floor(key, true));
+        }
+
+        @Override
+        public Entry<K, V> ceilingEntry(K key) {
+            return exportEntry(ceiling(key, true));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceiling(key, true));
+        }
+
+        @Override
+        public Entry<K, V> higherEntry(K key) {
+            return exportEntry(ceiling(key, false));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(ceiling(key, false));
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return exportEntry(lowest());
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return exportEntry(highest());
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            return poll(lowest());
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            return poll(highest());
+        }
+
+        @Override
+        public K firstKey() {
+            return keyOrThrow(lowest());
+        }
+
+        @Override
+        public K lastKey() {
+            return keyOrThrow(highest());
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap(lo, loInclusive, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            if (navigableKeySet == null) {
+                navigableKeySet = new KeySet(this);
+            }
+            return navigableKeySet;
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            Objects.requireNonNull(fromKey);
+            Objects.requireNonNull(toKey);
+            if (!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if (!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if (descending) {
+                if (compare(fromKey, toKey) < 0) {
+                    throw new IllegalArgumentException("fromKey > toKey");
+                }
+                return new SubMap(toKey, toInclusive, fromKey, fromInclusive, true);
+            }
+            if (compare(fromKey, toKey) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return new SubMap(fromKey, fromInclusive, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            Objects.requireNonNull(toKey);
+            if (!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if (descending) {
+                return new SubMap(toKey, inclusive, hi, hiInclusive, true);
+            }
+            return new SubMap(lo, loInclusive, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            Objects.requireNonNull(fromKey);
+            if (!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if (descending) {
+                return new SubMap(lo, loInclusive, fromKey, inclusive, true);
+            }
+            return new SubMap(fromKey, inclusive, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /**
+     * In-order iterator which walks the tree in place using an
+     * explicit stack of pending ancestors, so it needs O(log n)
+     * memory. It starts at the given key (or at the first key in the
+     * chosen direction if from is null) and stops at the fence.
+     * It is fail-fast: any structural modification not made through
+     * the iterator itself causes ConcurrentModificationException.
+     * Since removal may rotate the tree, remove() re-seeks the stack
+     * to the successor of the removed key.
+     */
+    private abstract class TreeIterator<T> implements Iterator<T> {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+        private final K fence;
+        private final boolean fenceInclusive;
+        private final boolean descending;
+        private Node<K, V> lastReturned;
+        private int expectedModCount = modCount;
+
+        TreeIterator(K from, boolean fromInclusive, K fence, boolean fenceInclusive, boolean descending) {
+            this.fence = fence;
+            this.fenceInclusive = fenceInclusive;
+            this.descending = descending;
+            seek(from, fromInclusive);
+        }
+
+        abstract T element(Node<K, V> node);
+
+        private int compare(K key, K other) {
+            int cmp = CustomTreeMap.this.compare(key, other);
+            return descending ? -cmp : cmp;
+        }
+
+        private void pushSpine(Node<K, V> node) {
+            while (node != null) {
+                stack.push(node);
+                node = descending ? node.right : node.left;
+            }
+        }
+
+        private void seek(K from, boolean inclusive) {
+            stack.clear();
+            if (from == null) {
+                pushSpine(root);
+                return;
+            }
+            Node<K, V> node = root;
+            while (node != null) {
+                int cmp = compare(node.key, from);
+                if (cmp == 0 && inclusive) {
+                    stack.push(node);
+                    return;
+                }
+                if (cmp > 0) {
+                    stack.push(node);
+                    node = descending ? node.right : node.left;
+                } else {
+                    node = descending ? node.left : node.right;
+                }
+            }
+        }
+
+        private boolean beyondFence(K key) {
+            if (fence == null) {
+                return false;
+            }
+            int cmp = compare(key, fence);
+            return cmp > 0 || (cmp == 0 && !fenceInclusive);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && !beyondFence(stack.peek().key);
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            pushSpine(descending ? node.left : node.right);
+            lastReturned = node;
+            return element(node);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            CustomTreeMap.this.remove(lastReturned.key);
+            seek(lastReturned.key, false);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    private static final int KEY_CHARACTERISTICS = Spliterator.DISTINCT | Spliterator.SORTED
+            | Spliterator.ORDERED | Spliterator.NONNULL;
+
+    /**
+     * Spliterator over the keys in [lo, hi) of the whole tree, null
+     * meaning unbounded. trySplit cuts the range at the highest node
+     * strictly inside it, which is the root of the subtree holding the
+     * range, so both halves stay roughly equal and their exact sizes are
+     * computed from subtree sizes in O(log n). Nothing is copied.
+     * Traversal without splitting walks the tree recursively;
+     * single steps use a TreeIterator. It is fail-fast like the iterators.
+     */
+    private class TreeSpliterator<T> implements Spliterator<T> {
+        private final int characteristics;
+        private final Comparator<? super T> comparator;
+        private final Function<Node<K, V>, ? extends T> element;
+        private final int expectedModCount;
+        private K lo;
+        private final K hi;
+        private int size;
+        private TreeIterator<T> iterator;
+
+        TreeSpliterator(int characteristics, Comparator<? super T> comparator,
+                        Function<Node<K, V>, ? extends T> element) {
+            this(characteristics, comparator, element, modCount, null, null, size());
+        }
+
+        private TreeSpliterator(int characteristics, Comparator<? super T> comparator,
+                                Function<Node<K, V>, ? extends T> element, int expectedModCount,
+                                K lo, K hi, int size) {
+            this.characteristics = characteristics | Spliterator.SIZED | Spliterator.SUBSIZED;
+            this.comparator = comparator;
+            this.element = element;
+            this.expectedModCount = expectedModCount;
+            this.lo = lo;
+            this.hi = hi;
+            this.size = size;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        private boolean belowHi(K key) {
+            return hi == null || compare(key, hi) < 0;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            checkForComodification();
+            if (iterator != null || size < 2) {
+                return null;
+            }
+            Node<K, V> node = root;
+            while (node != null) {
+                if (lo != null && compare(node.key, lo) <= 0) {
+                    node = node.right;
+                } else if (!belowHi(node.key)) {
+                    node = node.left;
+                } else {
+                    break;
+                }
+            }
+            if (node == null) {
+                return null;
+            }
+            int prefixSize = rank(node.key, false) - (lo == null ? 0 : rank(lo, false));
+            if (prefixSize == 0) {
+                return null;
+            }
+            TreeSpliterator<T> split = new TreeSpliterator<>(characteristics, comparator, element,
+                    expectedModCount, lo, node.key, prefixSize);
+            lo = node.key;
+            size -= prefixSize;
+            return split;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            checkForComodification();
+            if (iterator == null) {
+                iterator = new TreeIterator<T>(lo, true, hi, false, false) {
+                    @Override
+                    T element(Node<K, V> node) {
+                        return element.apply(node);
+                    }
+                };
+            }
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            action.accept(iterator.next());
+            size--;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (iterator != null) {
+                while (tryAdvance(action)) {
+                }
+                return;
+            }
+            forEach(root, lo != null, hi != null, action);
+            size = 0;
+            checkForComodification();
+        }
+
+        /**
+         * In-order walk of [lo, hi). A subtree below a node inside the
+         * range can only cross one of the bounds, so the other one is
+         * no longer compared.
+         */
+        private void forEach(Node<K, V> node, boolean checkLo, boolean checkHi, Consumer<? super T> action) {
+            while (node != null) {
+                boolean aboveLo = !checkLo || compare(node.key, lo) >= 0;
+                boolean belowHi = !checkHi || compare(node.key, hi) < 0;
+                if (aboveLo) {
+                    forEach(node.left, checkLo, !belowHi, action);
+                }
+                if (aboveLo && belowHi) {
+                    action.accept(element.apply(node));
+                }
+                if (!belowHi) {
+                    return;
+                }
+                checkLo = !aboveLo;
+                node = node.right;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            if ((characteristics & Spliterator.SORTED) == 0) {
+                throw new IllegalStateException();
+            }
+            return comparator;
+        }
+    }
+
+    private class EntryIterator extends TreeIterator<Entry<K, V>> {
+
+        EntryIterator(K from, boolean fromInclusive, K fence, boolean fenceInclusive, boolean descending) {
+            super(from, fromInclusive, fence, fenceInclusive, descending);
+        }
+
+        @Override
+        Entry<K, V> element(Node<K, V> node) {
+            return entry(node);
+        }
+    }
+
+    /**
+     * Nodes taken over from another map by split, join or the set
+     * operations still write through to the map which created them,
+     * so they are handed out as an entry of this map instead.
+     */
+    private Entry<K, V> entry(Node<K, V> node) {
+        if (node.belongsTo(this)) {
+            return node;
+        }
+        return new AbstractMap.SimpleEntry<K, V>(node) {
+            @Override
+            public V setValue(V value) {
+                if (find(root, getKey()) != null) {
+                    put(getKey(), value);
+                }
+                return super.setValue(value);
+            }
+        };
+    }
+
+    private class Node<K, V> implements Map.Entry<K, V> {
+
+        private final K key;
+        private final int version = CustomTreeMap.this.version;
+        private V value;
+        private Object aggregate;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private int size;
+        private boolean color;
+
+
+        public Node(K key, V value, boolean color, int size) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+            this.color = color;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * Replaces the value. If the node is shared with a snapshot, the
+         * map gets a copy with the new value and this entry keeps the old one.
+         * With the value index or an aggregate the node is looked up first,
+         * so only a value that really changes in the map is re-indexed and
+         * the aggregates on its path are recomputed.
+         */
+        @Override
+        public V setValue(V value) {
+            CustomTreeMap map = CustomTreeMap.this;
+            if (map.wal != null) {
+                Node live = map.find(map.root, key);
+                if (live != null && (live == this || version != map.version)) {
+                    map.logPut(key, value);
+                }
+            }
+            return replace(map, value);
+        }
+
+        /**
+         * setValue without logging, for changes which are already logged,
+         * in the given map, which need not be the one which created the node.
+         */
+        V replace(CustomTreeMap map, V value) {
+            V prev = this.value;
+            boolean shared = version != map.version;
+            if (!shared && map.valueCounts == null && map.monoid == null) {
+                this.value = value;
+                return prev;
+            }
+            Node live = map.find(map.root, key);
+            if (!shared && live != this) {
+                this.value = value;
+                return prev;
+            }
+            if (live != null) {
+                map.unindexValue(live.value);
+                map.indexValue(value);
+                map.root = map.replaceValue(map.root, key, value);
+            }
+            return prev;
+        }
+
+        /**
+         * @return true if the node was created by the given map, whose
+         * entries it then writes through to.
+         */
+        boolean belongsTo(CustomTreeMap<?, ?> map) {
+            return CustomTreeMap.this == map;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
         }
     }
 }
\ No newline at end of file
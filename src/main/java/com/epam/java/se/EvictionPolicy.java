@@ -0,0 +1,181 @@
+package com.epam.java.se;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Chooses which key BoundedCustomTreeMap evicts when it is full and
+ * which keys have expired. The map reports every put, successful get
+ * and removal of a key, so a policy may keep its own bookkeeping.
+ * A policy instance belongs to a single map.
+ *
+ * @param <K> the type of keys
+ * @see BoundedCustomTreeMap
+ */
+public interface EvictionPolicy<K extends Comparable<K>> {
+
+    /**
+     * @return a policy evicting the smallest key, in O(log n).
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> smallestKey() {
+        return map -> map.firstKey();
+    }
+
+    /**
+     * @return a policy evicting the largest key, in O(log n).
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> largestKey() {
+        return map -> map.lastKey();
+    }
+
+    /**
+     * @return a policy evicting the least recently put or read key.
+     * It keeps every key in an access-ordered LinkedHashMap.
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> leastRecentlyUsed() {
+        return new EvictionPolicy<K>() {
+            private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+            @Override
+            public void onPut(K key, boolean added) {
+                order.put(key, Boolean.TRUE);
+            }
+
+            @Override
+            public void onGet(K key) {
+                order.get(key);
+            }
+
+            @Override
+            public void onRemove(K key) {
+                order.remove(key);
+            }
+
+            @Override
+            public void onClear() {
+                order.clear();
+            }
+
+            @Override
+            public K victim(NavigableMap<K, ?> map) {
+                return order.keySet().iterator().next();
+            }
+        };
+    }
+
+    /**
+     * @param timeToLive how long an entry lives after it was last put.
+     * @param unit       the unit of timeToLive.
+     * @return a policy expiring entries after the time to live and
+     * evicting the oldest entry when the map is full.
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> timeToLive(long timeToLive, TimeUnit unit) {
+        return timeToLive(timeToLive, unit, System::nanoTime);
+    }
+
+    /**
+     * @param timeToLive how long an entry lives after it was last put.
+     * @param unit       the unit of timeToLive.
+     * @param nanoClock  source of the current time in nanoseconds.
+     * @return a policy expiring entries after the time to live and
+     * evicting the oldest entry when the map is full.
+     * @throws IllegalArgumentException if timeToLive is not positive.
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> timeToLive(long timeToLive, TimeUnit unit,
+                                                                  LongSupplier nanoClock) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive: " + timeToLive);
+        }
+        long ttlNanos = unit.toNanos(timeToLive);
+        Objects.requireNonNull(nanoClock);
+        return new EvictionPolicy<K>() {
+            /**
+             * Write times in insertion order, which is also the order
+             * of expiry since every entry has the same time to live.
+             */
+            private final LinkedHashMap<K, Long> writeTimes = new LinkedHashMap<>();
+
+            @Override
+            public void onPut(K key, boolean added) {
+                writeTimes.remove(key);
+                writeTimes.put(key, nanoClock.getAsLong());
+            }
+
+            @Override
+            public void onRemove(K key) {
+                writeTimes.remove(key);
+            }
+
+            @Override
+            public void onClear() {
+                writeTimes.clear();
+            }
+
+            @Override
+            public K victim(NavigableMap<K, ?> map) {
+                return writeTimes.keySet().iterator().next();
+            }
+
+            @Override
+            public boolean isExpired(K key) {
+                Long writeTime = writeTimes.get(key);
+                return writeTime != null && nanoClock.getAsLong() - writeTime >= ttlNanos;
+            }
+
+            @Override
+            public K expired() {
+                if (writeTimes.isEmpty()) {
+                    return null;
+                }
+                Map.Entry<K, Long> oldest = writeTimes.entrySet().iterator().next();
+                return nanoClock.getAsLong() - oldest.getValue() >= ttlNanos ? oldest.getKey() : null;
+            }
+        };
+    }
+
+    /**
+     * Called after a key was put, added is false if it replaced a value.
+     */
+    default void onPut(K key, boolean added) {
+    }
+
+    /**
+     * Called after a successful get of a present key.
+     */
+    default void onGet(K key) {
+    }
+
+    /**
+     * Called after a key was removed or evicted.
+     */
+    default void onRemove(K key) {
+    }
+
+    /**
+     * Called after all keys were removed.
+     */
+    default void onClear() {
+    }
+
+    /**
+     * @param map the non-empty map, read-only.
+     * @return a present key to be evicted.
+     */
+    K victim(NavigableMap<K, ?> map);
+
+    /**
+     * @return true if the present key must be treated as absent.
+     */
+    default boolean isExpired(K key) {
+        return false;
+    }
+
+    /**
+     * @return an expired key to be removed, or null if there is none.
+     * Called before every write until it returns null.
+     */
+    default K expired() {
+        return null;
+    }
+}
@@ -0,0 +1,102 @@
+package com.epam.java.se;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes values of type T into a fixed number of bytes, so they can be
+ * stored in the slots of OffHeapCustomTreeMap. Codecs use absolute
+ * ByteBuffer accessors and must not change the buffer position.
+ *
+ * @param <T> the type of encoded values
+ * @see OffHeapCustomTreeMap
+ */
+public interface FixedWidthCodec<T> {
+
+    FixedWidthCodec<Long> LONG = new FixedWidthCodec<Long>() {
+        @Override
+        public int width() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Long value) {
+            buffer.putLong(offset, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        public int compare(ByteBuffer buffer, int offset, Long value) {
+            return Long.compare(buffer.getLong(offset), value);
+        }
+    };
+
+    FixedWidthCodec<Integer> INT = new FixedWidthCodec<Integer>() {
+        @Override
+        public int width() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Integer value) {
+            buffer.putInt(offset, value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        public int compare(ByteBuffer buffer, int offset, Integer value) {
+            return Integer.compare(buffer.getInt(offset), value);
+        }
+    };
+
+    FixedWidthCodec<Double> DOUBLE = new FixedWidthCodec<Double>() {
+        @Override
+        public int width() {
+            return Double.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Double value) {
+            buffer.putDouble(offset, value);
+        }
+
+        @Override
+        public Double read(ByteBuffer buffer, int offset) {
+            return buffer.getDouble(offset);
+        }
+
+        @Override
+        public int compare(ByteBuffer buffer, int offset, Double value) {
+            return Double.compare(buffer.getDouble(offset), value);
+        }
+    };
+
+    /**
+     * @return number of bytes taken by every encoded value.
+     */
+    int width();
+
+    void write(ByteBuffer buffer, int offset, T value);
+
+    T read(ByteBuffer buffer, int offset);
+
+    /**
+     * Compares the encoded value at offset with the given one. The
+     * default implementation decodes the stored value, codecs of
+     * primitive types override it to compare without boxing.
+     *
+     * @return a negative integer, zero, or a positive integer as the
+     * stored value is less than, equal to, or greater than value.
+     * @throws ClassCastException if T is not Comparable.
+     */
+    default int compare(ByteBuffer buffer, int offset, T value) {
+        return ((Comparable<T>) read(buffer, offset)).compareTo(value);
+    }
+}
@@ -0,0 +1,143 @@
+package com.epam.java.se;
+
+/**
+ * Counters of a CustomTreeMap while its statistics are enabled. They are
+ * updated by the thread using the map, without synchronization, and
+ * also serve as the MBean of the map.
+ *
+ * @see CustomTreeMap#enableStats()
+ */
+final class Instrumentation implements TreeStatsMXBean {
+    long getCount;
+    long getNanos;
+    long putCount;
+    long putNanos;
+    long removeCount;
+    long removeNanos;
+    long lookupCount;
+    long comparisonCount;
+    int maxLookupDepth;
+    long insertCount;
+    long insertRotations;
+    long insertColorFlips;
+    long rotationCount;
+    long colorFlipCount;
+    private volatile TreeStats last;
+
+    void recordGet(long start) {
+        getCount++;
+        getNanos += System.nanoTime() - start;
+    }
+
+    void recordPut(long start) {
+        putCount++;
+        putNanos += System.nanoTime() - start;
+    }
+
+    void recordRemove(long start) {
+        removeCount++;
+        removeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * @param comparisons comparisons of the lookup, which is the depth
+     *                    of the node it found or of the last one it visited.
+     */
+    void recordLookup(int comparisons) {
+        lookupCount++;
+        comparisonCount += comparisons;
+        if (comparisons > maxLookupDepth) {
+            maxLookupDepth = comparisons;
+        }
+    }
+
+    /**
+     * @param rotations  rotationCount before the insert.
+     * @param colorFlips colorFlipCount before the insert.
+     */
+    void recordInsert(long rotations, long colorFlips) {
+        insertCount++;
+        insertRotations += rotationCount - rotations;
+        insertColorFlips += colorFlipCount - colorFlips;
+    }
+
+    TreeStats snapshot(long[] depthHistogram) {
+        TreeStats stats = new TreeStats(this, depthHistogram);
+        last = stats;
+        return stats;
+    }
+
+    private static double ratio(long total, long count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    @Override
+    public long getGetCount() {
+        return getCount;
+    }
+
+    @Override
+    public double getAverageGetNanos() {
+        return ratio(getNanos, getCount);
+    }
+
+    @Override
+    public long getPutCount() {
+        return putCount;
+    }
+
+    @Override
+    public double getAveragePutNanos() {
+        return ratio(putNanos, putCount);
+    }
+
+    @Override
+    public long getRemoveCount() {
+        return removeCount;
+    }
+
+    @Override
+    public double getAverageRemoveNanos() {
+        return ratio(removeNanos, removeCount);
+    }
+
+    @Override
+    public double getComparisonsPerLookup() {
+        return ratio(comparisonCount, lookupCount);
+    }
+
+    @Override
+    public int getMaxLookupDepth() {
+        return maxLookupDepth;
+    }
+
+    @Override
+    public double getRotationsPerInsert() {
+        return ratio(insertRotations, insertCount);
+    }
+
+    @Override
+    public double getColorFlipsPerInsert() {
+        return ratio(insertColorFlips, insertCount);
+    }
+
+    @Override
+    public int getHeight() {
+        TreeStats stats = last;
+        return stats == null ? -1 : stats.getHeight();
+    }
+
+    @Override
+    public double getAverageDepth() {
+        TreeStats stats = last;
+        return stats == null ? -1 : stats.getAverageDepth();
+    }
+
+    @Override
+    public void reset() {
+        getCount = getNanos = putCount = putNanos = removeCount = removeNanos = 0;
+        lookupCount = comparisonCount = 0;
+        maxLookupDepth = 0;
+        insertCount = insertRotations = insertColorFlips = rotationCount = colorFlipCount = 0;
+    }
+}
@@ -0,0 +1,536 @@
+package com.epam.java.se;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Class represents a Custom TreeMap specialized for primitive
+ * int keys. It is a left-leaning Red-Black Tree with the same
+ * balancing and subtree sizes as CustomTreeMap, but keys are stored
+ * unboxed and compared with plain operators, so lookups allocate
+ * nothing and do not go through compareTo.
+ * Allows null values.
+ *
+ * @param <V> the type of mapped values
+ * @see CustomTreeMap
+ */
+public class IntCustomTreeMap<V> {
+    private Node<V> root;
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    /**
+     * A key-value mapping of this map. Entries returned by navigation
+     * methods are the tree nodes themselves, so they are only valid
+     * until the next modification of the map.
+     *
+     * @param <V> the type of mapped values
+     */
+    public interface Entry<V> {
+        int getKey();
+
+        V getValue();
+    }
+
+    /**
+     * Receives key-value pairs without boxing the key.
+     *
+     * @param <V> the type of mapped values
+     */
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size(root);
+    }
+
+    private int size(Node<V> node) {
+        if (node == null) {
+            return 0;
+        } else return node.size;
+    }
+
+    /**
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key.
+     */
+    public boolean containsKey(int key) {
+        return find(key) != null;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     */
+    public V get(int key) {
+        Node<V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+    private Node<V> find(int key) {
+        Node<V> node = root;
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put key-value pairs in this map. If the map previously contained
+     * a mapping for the key, the old value is replaced in place.
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     */
+    public V put(int key, V value) {
+        Node<V> node = find(key);
+        if (node != null) {
+            V previous = node.value;
+            node.value = value;
+            return previous;
+        }
+        root = put(root, key, value);
+        root.color = BLACK;
+        return null;
+    }
+
+    private Node<V> put(Node<V> node, int key, V value) {
+        if (node == null) {
+            return new Node<>(key, value, RED, 1);
+        }
+        if (key < node.key) {
+            node.left = put(node.left, key, value);
+        } else {
+            node.right = put(node.right, key, value);
+        }
+        return balance(node);
+    }
+
+    /**
+     * Removes the mapping for the key, keeping the tree balanced.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the removed value, or null if there was no mapping for key.
+     */
+    public V remove(int key) {
+        Node<V> node = find(key);
+        if (node == null) {
+            return null;
+        }
+        if (!isRed(root.left) && !isRed(root.right)) {
+            root.color = RED;
+        }
+        root = remove(root, key);
+        if (root != null) {
+            root.color = BLACK;
+        }
+        return node.value;
+    }
+
+    private Node<V> remove(Node<V> node, int key) {
+        if (key < node.key) {
+            if (!isRed(node.left) && !isRed(node.left.left)) {
+                node = moveRedLeft(node);
+            }
+            node.left = remove(node.left, key);
+        } else {
+            if (isRed(node.left)) {
+                node = rotateRight(node);
+            }
+            if (key == node.key && node.right == null) {
+                return null;
+            }
+            if (!isRed(node.right) && !isRed(node.right.left)) {
+                node = moveRedRight(node);
+            }
+            if (key == node.key) {
+                Node<V> temp = node;
+                node = findMin(temp.right);
+                node.right = removeMin(temp.right);
+                node.left = temp.left;
+                node.color = temp.color;
+            } else {
+                node.right = remove(node.right, key);
+            }
+        }
+        return balance(node);
+    }
+
+    private Node<V> removeMin(Node<V> node) {
+        if (node.left == null) {
+            return null;
+        }
+        if (!isRed(node.left) && !isRed(node.left.left)) {
+            node = moveRedLeft(node);
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private Node<V> rotateRight(Node<V> node) {
+        Node<V> newNode = node.left;
+        node.left = newNode.right;
+        newNode.right = node;
+        newNode.color = node.color;
+        node.color = RED;
+        newNode.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return newNode;
+    }
+
+    private Node<V> rotateLeft(Node<V> node) {
+        Node<V> newNode = node.right;
+        node.right = newNode.left;
+        newNode.left = node;
+        newNode.color = node.color;
+        node.color = RED;
+        newNode.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return newNode;
+    }
+
+    private void flipColors(Node<V> node) {
+        node.color = !node.color;
+        node.left.color = !node.left.color;
+        node.right.color = !node.right.color;
+    }
+
+    private boolean isRed(Node<V> node) {
+        if (node == null) {
+            return false;
+        }
+        return node.color == RED;
+    }
+
+    private Node<V> balance(Node<V> node) {
+        if (isRed(node.right) && !isRed(node.left)) {
+            node = rotateLeft(node);
+        }
+        if (isRed(node.left) && isRed(node.left.left)) {
+            node = rotateRight(node);
+        }
+        if (isRed(node.left) && isRed(node.right)) {
+            flipColors(node);
+        }
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private Node<V> moveRedLeft(Node<V> node) {
+        flipColors(node);
+        if (isRed(node.right.left)) {
+            node.right = rotateRight(node.right);
+            node = rotateLeft(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    private Node<V> moveRedRight(Node<V> node) {
+        flipColors(node);
+        if (isRed(node.left.left)) {
+            node = rotateRight(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    private Node<V> findMin(Node<V> node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private Node<V> findMax(Node<V> node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Clears entire map.
+     */
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public int firstKey() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        return findMin(root).key;
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public int lastKey() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        return findMax(root).key;
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the greatest key less than or equal to
+     * the given key, or null if there is no such key.
+     */
+    public Entry<V> floorEntry(int key) {
+        return floorNode(key, true);
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the greatest key strictly less than
+     * the given key, or null if there is no such key.
+     */
+    public Entry<V> lowerEntry(int key) {
+        return floorNode(key, false);
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the least key greater than or equal to
+     * the given key, or null if there is no such key.
+     */
+    public Entry<V> ceilingEntry(int key) {
+        return ceilingNode(key, true);
+    }
+
+    /**
+     * @param key the key
+     * @return an entry with the least key strictly greater than
+     * the given key, or null if there is no such key.
+     */
+    public Entry<V> higherEntry(int key) {
+        return ceilingNode(key, false);
+    }
+
+    private Node<V> ceilingNode(int key, boolean inclusive) {
+        Node<V> node = root;
+        Node<V> result = null;
+        while (node != null) {
+            if (key == node.key && inclusive) {
+                return node;
+            }
+            if (key < node.key) {
+                result = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    private Node<V> floorNode(int key, boolean inclusive) {
+        Node<V> node = root;
+        Node<V> result = null;
+        while (node != null) {
+            if (key == node.key && inclusive) {
+                return node;
+            }
+            if (key > node.key) {
+                result = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param key the key to be ranked.
+     * @return the number of keys in this map less than the given key.
+     */
+    public int rank(int key) {
+        return rank(key, false);
+    }
+
+    private int rank(int key, boolean inclusive) {
+        int rank = 0;
+        Node<V> node = root;
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left) + (inclusive ? 1 : 0);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * @param index the rank of the key, starting from zero.
+     * @return the key such that exactly index keys are less than it.
+     * @throws IndexOutOfBoundsException if index is negative or
+     *                                   not less than size().
+     */
+    public int select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<V> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * @param lo the low endpoint of the range.
+     * @param hi the high endpoint of the range.
+     * @return the number of keys in [lo, hi], or 0 if lo is greater than hi.
+     */
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return rank(hi, true) - rank(lo, false);
+    }
+
+    /**
+     * Passes every mapping to the action in ascending key order.
+     *
+     * @param action the action to be performed for each mapping.
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        forEachInRange(root, Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+    }
+
+    /**
+     * Passes mappings with keys in [lo, hi] to the action in ascending
+     * key order, visiting only the subtrees which intersect the range.
+     *
+     * @param lo     the low endpoint of the range.
+     * @param hi     the high endpoint of the range.
+     * @param action the action to be performed for each mapping.
+     */
+    public void forEachInRange(int lo, int hi, EntryConsumer<? super V> action) {
+        forEachInRange(root, lo, hi, action);
+    }
+
+    private void forEachInRange(Node<V> node, int lo, int hi, EntryConsumer<? super V> action) {
+        if (node == null) {
+            return;
+        }
+        if (lo < node.key) {
+            forEachInRange(node.left, lo, hi, action);
+        }
+        if (lo <= node.key && node.key <= hi) {
+            action.accept(node.key, node.value);
+        }
+        if (hi > node.key) {
+            forEachInRange(node.right, lo, hi, action);
+        }
+    }
+
+    /**
+     * Validates the left-leaning red-black invariants of this map.
+     *
+     * @return true if all invariants hold.
+     * @see CustomTreeMap#isValidRedBlackTree()
+     */
+    public boolean isValidRedBlackTree() {
+        return !isRed(root) && isValid(root, Integer.MIN_VALUE, Integer.MAX_VALUE) && blackHeight(root) != -1;
+    }
+
+    private boolean isValid(Node<V> node, int min, int max) {
+        if (node == null) {
+            return true;
+        }
+        if (node.key < min || node.key > max) {
+            return false;
+        }
+        if (node.size != size(node.left) + size(node.right) + 1) {
+            return false;
+        }
+        if (isRed(node.right) || (isRed(node) && isRed(node.left))) {
+            return false;
+        }
+        return (node.left == null || node.left.key < node.key)
+                && (node.right == null || node.right.key > node.key)
+                && isValid(node.left, min, node.key) && isValid(node.right, node.key, max);
+    }
+
+    private int blackHeight(Node<V> node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left == -1 || right == -1 || left != right) {
+            return -1;
+        }
+        return isRed(node) ? left : left + 1;
+    }
+
+    private static class Node<V> implements Entry<V> {
+        private final int key;
+        private V value;
+        private Node<V> left;
+        private Node<V> right;
+        private int size;
+        private boolean color;
+
+        Node(int key, V value, boolean color, int size) {
+            this.key = key;
+            this.value = value;
+            this.color = color;
+            this.size = size;
+        }
+
+        @Override
+        public int getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
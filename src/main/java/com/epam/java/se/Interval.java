@@ -0,0 +1,77 @@
+package com.epam.java.se;
+
+import java.util.Objects;
+
+/**
+ * A closed interval [start, end] used as a key of IntervalCustomTreeMap.
+ * Intervals are ordered by start and then by end, so several intervals
+ * may share a start point.
+ *
+ * @param <K> the type of endpoints
+ * @see IntervalCustomTreeMap
+ */
+public final class Interval<K extends Comparable<K>> implements Comparable<Interval<K>> {
+    private final K start;
+    private final K end;
+
+    /**
+     * @param start the low endpoint, inclusive.
+     * @param end   the high endpoint, inclusive.
+     * @throws NullPointerException     if an endpoint is null.
+     * @throws IllegalArgumentException if start is greater than end.
+     */
+    public Interval(K start, K end) {
+        this.start = Objects.requireNonNull(start);
+        this.end = Objects.requireNonNull(end);
+        if (start.compareTo(end) > 0) {
+            throw new IllegalArgumentException("start > end: [" + start + ", " + end + "]");
+        }
+    }
+
+    public K getStart() {
+        return start;
+    }
+
+    public K getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true if start <= point <= end.
+     */
+    public boolean contains(K point) {
+        return start.compareTo(point) <= 0 && end.compareTo(point) >= 0;
+    }
+
+    /**
+     * @return true if this interval and [lo, hi] have a common point.
+     */
+    public boolean overlaps(K lo, K hi) {
+        return start.compareTo(hi) <= 0 && end.compareTo(lo) >= 0;
+    }
+
+    @Override
+    public int compareTo(Interval<K> other) {
+        int cmp = start.compareTo(other.start);
+        return cmp != 0 ? cmp : end.compareTo(other.end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Interval)) {
+            return false;
+        }
+        Interval<?> interval = (Interval<?>) o;
+        return start.equals(interval.start) && end.equals(interval.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start.hashCode() + end.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + "]";
+    }
+}
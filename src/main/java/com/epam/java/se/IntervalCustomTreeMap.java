@@ -0,0 +1,252 @@
+package com.epam.java.se;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Class represents an interval tree: a CustomTreeMap keyed by intervals
+ * in start order whose nodes also keep the greatest end point of their
+ * subtree. The end point is the tree's monoid aggregate, so it is
+ * maintained by the same insertion, deletion and rotations as Node.size.
+ * <p>
+ * Stabbing and overlap queries skip every subtree whose greatest end
+ * point is before the query and everything starting after it, so they
+ * run in O(log n + k) for k results. Results are passed on one by one
+ * without building a collection.
+ *
+ * @param <K> the type of interval endpoints
+ * @param <V> the type of mapped values
+ * @see Interval
+ */
+public class IntervalCustomTreeMap<K extends Comparable<K>, V> extends AbstractMap<Interval<K>, V> {
+    private final Monoid<Entry<Interval<K>, V>, K> maxEnd = new Monoid<Entry<Interval<K>, V>, K>() {
+        @Override
+        public K identity() {
+            return null;
+        }
+
+        @Override
+        public K lift(Entry<Interval<K>, V> entry) {
+            return entry.getKey().getEnd();
+        }
+
+        @Override
+        public K combine(K left, K right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            return left.compareTo(right) >= 0 ? left : right;
+        }
+    };
+    /**
+     * Values are the entries handed out to callers; setValue on them
+     * does not touch the end points, so no aggregate goes stale.
+     */
+    private final CustomTreeMap<Interval<K>, Entry<Interval<K>, V>> map = new CustomTreeMap<>(maxEnd);
+    private Set<Entry<Interval<K>, V>> entrySet;
+
+    /**
+     * @return the number of intervals in this map
+     */
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @param key interval whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the interval.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * @param key the interval whose associated value is to be returned
+     * @return value to which the interval is mapped or null
+     * if this map contains no mapping for the interval.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Entry<Interval<K>, V> entry = map.get(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * @param key   interval with which the specified value is to be associated.
+     * @param value value to be associated with the interval.
+     * @return the previous value associated with the interval, or
+     * null if there was no mapping for it.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V put(Interval<K> key, V value) {
+        Objects.requireNonNull(key);
+        Entry<Interval<K>, V> entry = map.get(key);
+        if (entry != null) {
+            return entry.setValue(value);
+        }
+        map.put(key, new SimpleEntry<>(key, value));
+        return null;
+    }
+
+    /**
+     * @param start the low endpoint, inclusive.
+     * @param end   the high endpoint, inclusive.
+     * @param value value to be associated with [start, end].
+     * @return the previous value associated with the interval, or
+     * null if there was no mapping for it.
+     * @throws IllegalArgumentException if start is greater than end.
+     */
+    public V put(K start, K end, V value) {
+        return put(new Interval<>(start, end), value);
+    }
+
+    /**
+     * @param key interval whose mapping is to be removed from the map
+     * @return the previous value associated with the interval, or
+     * null if there was no mapping for it.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V remove(Object key) {
+        Entry<Interval<K>, V> entry = map.remove(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Removes all of the intervals from this map.
+     */
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * @return the greatest end point of all intervals, in O(1).
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K maxEnd() {
+        if (map.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return map.aggregate(maxEnd);
+    }
+
+    /**
+     * Passes the intervals containing the point to the action in
+     * ascending order, in O(log n + k).
+     *
+     * @param point  the stabbing point.
+     * @param action the action to be performed for each interval.
+     * @throws NullPointerException if an argument is null.
+     */
+    public void forEachContaining(K point, BiConsumer<? super Interval<K>, ? super V> action) {
+        forEachOverlapping(point, point, action);
+    }
+
+    /**
+     * Passes the intervals having a common point with [lo, hi] to the
+     * action in ascending order, in O(log n + k).
+     *
+     * @param lo     the low endpoint of the query, inclusive.
+     * @param hi     the high endpoint of the query, inclusive.
+     * @param action the action to be performed for each interval.
+     * @throws NullPointerException if an argument is null.
+     */
+    public void forEachOverlapping(K lo, K hi, BiConsumer<? super Interval<K>, ? super V> action) {
+        Objects.requireNonNull(action);
+        Iterator<Entry<Interval<K>, V>> overlapping = overlappingIterator(lo, hi);
+        while (overlapping.hasNext()) {
+            Entry<Interval<K>, V> entry = overlapping.next();
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param lo the low endpoint of the query, inclusive.
+     * @param hi the high endpoint of the query, inclusive.
+     * @return a lazy sequential stream of the mappings whose intervals
+     * have a common point with [lo, hi], in ascending order.
+     * @throws NullPointerException if lo or hi is null.
+     */
+    public Stream<Entry<Interval<K>, V>> overlapping(K lo, K hi) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(overlappingIterator(lo, hi),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Walks the subtrees whose greatest end point is at least lo and
+     * the intervals starting at most at hi; of these only the ones
+     * ending before lo are skipped.
+     */
+    private Iterator<Entry<Interval<K>, V>> overlappingIterator(K lo, K hi) {
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        Iterator<Entry<Interval<K>, V>> candidates = map.prunedValues(
+                end -> end != null && ((K) end).compareTo(lo) >= 0,
+                interval -> interval.getStart().compareTo(hi) > 0);
+        return new Iterator<Entry<Interval<K>, V>>() {
+            private Entry<Interval<K>, V> next = advance();
+
+            private Entry<Interval<K>, V> advance() {
+                while (candidates.hasNext()) {
+                    Entry<Interval<K>, V> candidate = candidates.next();
+                    if (candidate.getKey().getEnd().compareTo(lo) >= 0) {
+                        return candidate;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry<Interval<K>, V> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Entry<Interval<K>, V> entry = next;
+                next = advance();
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * @return a view of the mappings in ascending interval order.
+     */
+    @Override
+    public Set<Entry<Interval<K>, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<Interval<K>, V>>() {
+                @Override
+                public Iterator<Entry<Interval<K>, V>> iterator() {
+                    return map.values().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+
+                @Override
+                public void clear() {
+                    map.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+}
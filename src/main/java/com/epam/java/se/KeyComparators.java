@@ -0,0 +1,89 @@
+package com.epam.java.se;
+
+import java.util.Comparator;
+
+/**
+ * Comparators for keys which either have no natural ordering or whose
+ * usual comparator is slow, to be passed to CustomTreeMap.
+ * Keys with a cheap natural ordering, such as String or Long, are
+ * fastest without a comparator: CustomTreeMap then calls compareTo
+ * directly.
+ *
+ * @see CustomTreeMap#CustomTreeMap(Comparator)
+ */
+public final class KeyComparators {
+    private static final Comparator<byte[]> UNSIGNED_BYTES = (left, right) -> {
+        if (left == right) {
+            return 0;
+        }
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            if (left[i] != right[i]) {
+                return (left[i] & 0xFF) - (right[i] & 0xFF);
+            }
+        }
+        return left.length - right.length;
+    };
+    private static final Comparator<String> CASE_INSENSITIVE = (left, right) -> {
+        if (left == right) {
+            return 0;
+        }
+        int length = Math.min(left.length(), right.length());
+        for (int i = 0; i < length; i++) {
+            char c1 = left.charAt(i);
+            char c2 = right.charAt(i);
+            if (c1 == c2) {
+                continue;
+            }
+            if ((c1 | c2) < 0x80) {
+                c1 = toLowerAscii(c1);
+                c2 = toLowerAscii(c2);
+            } else {
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 == c2) {
+                    continue;
+                }
+                c1 = Character.toLowerCase(c1);
+                c2 = Character.toLowerCase(c2);
+            }
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return left.length() - right.length();
+    };
+    private static final Comparator<Long> UNSIGNED_LONGS = (left, right) -> Long.compareUnsigned(left, right);
+
+    private KeyComparators() {
+    }
+
+    /**
+     * @return a comparator ordering byte arrays lexicographically, with
+     * bytes compared as unsigned values and a proper prefix first,
+     * like memcmp.
+     */
+    public static Comparator<byte[]> unsignedBytes() {
+        return UNSIGNED_BYTES;
+    }
+
+    /**
+     * @return a comparator ordering strings like
+     * String.CASE_INSENSITIVE_ORDER, which folds ASCII characters
+     * without calling Character methods.
+     */
+    public static Comparator<String> caseInsensitive() {
+        return CASE_INSENSITIVE;
+    }
+
+    /**
+     * @return a comparator ordering longs as unsigned values.
+     */
+    public static Comparator<Long> unsignedLongs() {
+        return UNSIGNED_LONGS;
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
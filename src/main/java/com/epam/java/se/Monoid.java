@@ -0,0 +1,97 @@
+package com.epam.java.se;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * An associative way to summarize values, kept by CustomTreeMap in every
+ * node next to the subtree size so that ranges of keys can be aggregated
+ * in O(log n). combine must be associative and identity must be its
+ * neutral element; it need not be commutative, values are always
+ * combined in ascending key order.
+ *
+ * @param <V> the type of summarized values
+ * @param <A> the type of the aggregate
+ * @see CustomTreeMap#CustomTreeMap(Monoid)
+ * @see CustomTreeMap#aggregate(Monoid, Object, Object)
+ */
+public interface Monoid<V, A> {
+
+    /**
+     * @param toLong extracts the summed number from a value.
+     * @return the sum of the numbers, 0 for no values.
+     */
+    static <V> Monoid<V, Long> longSum(ToLongFunction<? super V> toLong) {
+        Objects.requireNonNull(toLong);
+        return new Monoid<V, Long>() {
+            @Override
+            public Long identity() {
+                return 0L;
+            }
+
+            @Override
+            public Long lift(V value) {
+                return toLong.applyAsLong(value);
+            }
+
+            @Override
+            public Long combine(Long left, Long right) {
+                return left + right;
+            }
+        };
+    }
+
+    /**
+     * @param comparator compares values.
+     * @return the greatest value, null for no values.
+     */
+    static <V> Monoid<V, V> maxBy(Comparator<? super V> comparator) {
+        Objects.requireNonNull(comparator);
+        return new Monoid<V, V>() {
+            @Override
+            public V identity() {
+                return null;
+            }
+
+            @Override
+            public V lift(V value) {
+                return value;
+            }
+
+            @Override
+            public V combine(V left, V right) {
+                if (left == null) {
+                    return right;
+                }
+                if (right == null) {
+                    return left;
+                }
+                return comparator.compare(left, right) >= 0 ? left : right;
+            }
+        };
+    }
+
+    /**
+     * @param comparator compares values.
+     * @return the least value, null for no values.
+     */
+    static <V> Monoid<V, V> minBy(Comparator<? super V> comparator) {
+        return maxBy(comparator.reversed());
+    }
+
+    /**
+     * @return the aggregate of no values.
+     */
+    A identity();
+
+    /**
+     * @return the aggregate of a single value.
+     */
+    A lift(V value);
+
+    /**
+     * @return the aggregate of the values of left followed by those of right.
+     */
+    A combine(A left, A right);
+}
@@ -0,0 +1,558 @@
+package com.epam.java.se;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Class represents a Custom TreeMap whose left-leaning Red-Black Tree
+ * nodes live in direct memory, outside of the Java heap. Keys and values
+ * are encoded by fixed-width codecs, so every node takes a fixed slot:
+ * <pre>
+ * | left : int | right : int | size : int | color : byte | key | value |
+ * </pre>
+ * Slots are allocated from direct ByteBuffer chunks of CHUNK_SLOTS nodes,
+ * so the map is not limited by the 2 GB size of a single buffer and
+ * never copies nodes when it grows. Removed slots go to a free list.
+ * The collector only sees the chunk buffers, not the entries.
+ * <p>
+ * Keys are ordered by FixedWidthCodec#compare. Null keys and null values
+ * are not allowed since codecs have no spare encoding for null.
+ * The map must be closed when it is not needed anymore; after close()
+ * every operation throws IllegalStateException.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of mapped values
+ * @see FixedWidthCodec
+ * @see CustomTreeMap
+ */
+public class OffHeapCustomTreeMap<K, V> implements Iterable<Map.Entry<K, V>>, Closeable {
+    private static final int NIL = -1;
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int SIZE = 8;
+    private static final int COLOR = 12;
+    private static final int KEY = 13;
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    private final FixedWidthCodec<K> keyCodec;
+    private final FixedWidthCodec<V> valueCodec;
+    private final int valueOffset;
+    private final int nodeWidth;
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private int root = NIL;
+    private int top;
+    private int freeHead = NIL;
+    private int modCount;
+    private boolean closed;
+
+    /**
+     * @param keyCodec   codec of keys, it also defines their order.
+     * @param valueCodec codec of values.
+     * @throws NullPointerException if any codec is null.
+     */
+    public OffHeapCustomTreeMap(FixedWidthCodec<K> keyCodec, FixedWidthCodec<V> valueCodec) {
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.valueOffset = KEY + keyCodec.width();
+        this.nodeWidth = valueOffset + valueCodec.width();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+
+    private int offset(int slot) {
+        return (slot & CHUNK_MASK) * nodeWidth;
+    }
+
+    private int left(int slot) {
+        return chunk(slot).getInt(offset(slot) + LEFT);
+    }
+
+    private void setLeft(int slot, int child) {
+        chunk(slot).putInt(offset(slot) + LEFT, child);
+    }
+
+    private int right(int slot) {
+        return chunk(slot).getInt(offset(slot) + RIGHT);
+    }
+
+    private void setRight(int slot, int child) {
+        chunk(slot).putInt(offset(slot) + RIGHT, child);
+    }
+
+    private int size(int slot) {
+        return slot == NIL ? 0 : chunk(slot).getInt(offset(slot) + SIZE);
+    }
+
+    private void updateSize(int slot) {
+        chunk(slot).putInt(offset(slot) + SIZE, size(left(slot)) + size(right(slot)) + 1);
+    }
+
+    private boolean isRed(int slot) {
+        return slot != NIL && chunk(slot).get(offset(slot) + COLOR) != 0;
+    }
+
+    private void setColor(int slot, boolean color) {
+        chunk(slot).put(offset(slot) + COLOR, color == RED ? (byte) 1 : (byte) 0);
+    }
+
+    private int compareKey(int slot, K key) {
+        return keyCodec.compare(chunk(slot), offset(slot) + KEY, key);
+    }
+
+    private K key(int slot) {
+        return keyCodec.read(chunk(slot), offset(slot) + KEY);
+    }
+
+    private V value(int slot) {
+        return valueCodec.read(chunk(slot), offset(slot) + valueOffset);
+    }
+
+    private void setValue(int slot, V value) {
+        valueCodec.write(chunk(slot), offset(slot) + valueOffset, value);
+    }
+
+    private int allocate(K key, V value) {
+        int slot;
+        if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = left(slot);
+        } else {
+            if ((top >>> CHUNK_SHIFT) == chunkCount) {
+                addChunk();
+            }
+            slot = top++;
+        }
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        chunk.putInt(offset + LEFT, NIL);
+        chunk.putInt(offset + RIGHT, NIL);
+        chunk.putInt(offset + SIZE, 1);
+        chunk.put(offset + COLOR, (byte) 1);
+        keyCodec.write(chunk, offset + KEY, key);
+        valueCodec.write(chunk, offset + valueOffset, value);
+        return slot;
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount++] = ByteBuffer.allocateDirect(CHUNK_SLOTS * nodeWidth);
+    }
+
+    private void free(int slot) {
+        setLeft(slot, freeHead);
+        freeHead = slot;
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        ensureOpen();
+        return size(root);
+    }
+
+    /**
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        ensureOpen();
+        return root == NIL;
+    }
+
+    /**
+     * @return number of direct memory bytes reserved by this map.
+     */
+    public long offHeapBytes() {
+        return (long) chunkCount * CHUNK_SLOTS * nodeWidth;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public boolean containsKey(K key) {
+        Objects.requireNonNull(key);
+        ensureOpen();
+        return find(key) != NIL;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public V get(K key) {
+        Objects.requireNonNull(key);
+        ensureOpen();
+        int slot = find(key);
+        return slot == NIL ? null : value(slot);
+    }
+
+    private int find(K key) {
+        int slot = root;
+        while (slot != NIL) {
+            int cmp = compareKey(slot, key);
+            if (cmp > 0) {
+                slot = left(slot);
+            } else if (cmp < 0) {
+                slot = right(slot);
+            } else {
+                return slot;
+            }
+        }
+        return NIL;
+    }
+
+    /**
+     * Put key-value pairs in this map. If the map previously contained
+     * a mapping for the key, the old value is overwritten in its slot.
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key or value is null.
+     */
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        ensureOpen();
+        int slot = find(key);
+        if (slot != NIL) {
+            V previous = value(slot);
+            setValue(slot, value);
+            return previous;
+        }
+        root = put(root, key, value);
+        setColor(root, BLACK);
+        return null;
+    }
+
+    private int put(int slot, K key, V value) {
+        if (slot == NIL) {
+            modCount++;
+            return allocate(key, value);
+        }
+        if (compareKey(slot, key) > 0) {
+            setLeft(slot, put(left(slot), key, value));
+        } else {
+            setRight(slot, put(right(slot), key, value));
+        }
+        return balance(slot);
+    }
+
+    private int rotateRight(int slot) {
+        int newSlot = left(slot);
+        setLeft(slot, right(newSlot));
+        setRight(newSlot, slot);
+        setColor(newSlot, isRed(slot));
+        setColor(slot, RED);
+        updateSize(slot);
+        updateSize(newSlot);
+        return newSlot;
+    }
+
+    private int rotateLeft(int slot) {
+        int newSlot = right(slot);
+        setRight(slot, left(newSlot));
+        setLeft(newSlot, slot);
+        setColor(newSlot, isRed(slot));
+        setColor(slot, RED);
+        updateSize(slot);
+        updateSize(newSlot);
+        return newSlot;
+    }
+
+    private void flipColors(int slot) {
+        setColor(slot, !isRed(slot));
+        setColor(left(slot), !isRed(left(slot)));
+        setColor(right(slot), !isRed(right(slot)));
+    }
+
+    private int balance(int slot) {
+        if (isRed(right(slot)) && !isRed(left(slot))) {
+            slot = rotateLeft(slot);
+        }
+        if (isRed(left(slot)) && isRed(left(left(slot)))) {
+            slot = rotateRight(slot);
+        }
+        if (isRed(left(slot)) && isRed(right(slot))) {
+            flipColors(slot);
+        }
+        updateSize(slot);
+        return slot;
+    }
+
+    private int moveRedLeft(int slot) {
+        flipColors(slot);
+        if (isRed(left(right(slot)))) {
+            setRight(slot, rotateRight(right(slot)));
+            slot = rotateLeft(slot);
+            flipColors(slot);
+        }
+        return slot;
+    }
+
+    private int moveRedRight(int slot) {
+        flipColors(slot);
+        if (isRed(left(left(slot)))) {
+            slot = rotateRight(slot);
+            flipColors(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Removes key-value pairs in this map, keeping the tree balanced.
+     * The freed slot goes to the free list.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the removed value, or null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    public V remove(K key) {
+        Objects.requireNonNull(key);
+        ensureOpen();
+        int slot = find(key);
+        if (slot == NIL) {
+            return null;
+        }
+        V previous = value(slot);
+        modCount++;
+        if (!isRed(left(root)) && !isRed(right(root))) {
+            setColor(root, RED);
+        }
+        root = remove(root, key);
+        if (root != NIL) {
+            setColor(root, BLACK);
+        }
+        free(slot);
+        return previous;
+    }
+
+    private int remove(int slot, K key) {
+        if (compareKey(slot, key) > 0) {
+            if (!isRed(left(slot)) && !isRed(left(left(slot)))) {
+                slot = moveRedLeft(slot);
+            }
+            setLeft(slot, remove(left(slot), key));
+        } else {
+            if (isRed(left(slot))) {
+                slot = rotateRight(slot);
+            }
+            if (compareKey(slot, key) == 0 && right(slot) == NIL) {
+                return NIL;
+            }
+            if (!isRed(right(slot)) && !isRed(left(right(slot)))) {
+                slot = moveRedRight(slot);
+            }
+            if (compareKey(slot, key) == 0) {
+                int temp = slot;
+                slot = findMin(right(temp));
+                setRight(slot, removeMin(right(temp)));
+                setLeft(slot, left(temp));
+                setColor(slot, isRed(temp));
+            } else {
+                setRight(slot, remove(right(slot), key));
+            }
+        }
+        return balance(slot);
+    }
+
+    private int removeMin(int slot) {
+        if (left(slot) == NIL) {
+            return NIL;
+        }
+        if (!isRed(left(slot)) && !isRed(left(left(slot)))) {
+            slot = moveRedLeft(slot);
+        }
+        setLeft(slot, removeMin(left(slot)));
+        return balance(slot);
+    }
+
+    private int findMin(int slot) {
+        while (left(slot) != NIL) {
+            slot = left(slot);
+        }
+        return slot;
+    }
+
+    private int findMax(int slot) {
+        while (right(slot) != NIL) {
+            slot = right(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K firstKey() {
+        ensureOpen();
+        if (root == NIL) {
+            throw new NoSuchElementException();
+        }
+        return key(findMin(root));
+    }
+
+    /**
+     * @return the last (highest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K lastKey() {
+        ensureOpen();
+        if (root == NIL) {
+            throw new NoSuchElementException();
+        }
+        return key(findMax(root));
+    }
+
+    /**
+     * Clears entire map. Direct memory is kept for later puts.
+     */
+    public void clear() {
+        ensureOpen();
+        if (root != NIL) {
+            modCount++;
+        }
+        root = NIL;
+        top = 0;
+        freeHead = NIL;
+    }
+
+    /**
+     * Returns a fail-fast iterator over decoded entries in ascending key
+     * order. The entries are immutable copies, the iterator does not
+     * support remove.
+     *
+     * @return an iterator over the mappings of this map.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        ensureOpen();
+        return new Iterator<Map.Entry<K, V>>() {
+            private int[] stack = new int[64];
+            private int depth;
+            private final int expectedModCount = modCount;
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(int slot) {
+                while (slot != NIL) {
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = slot;
+                    slot = left(slot);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return depth > 0;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                ensureOpen();
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (depth == 0) {
+                    throw new NoSuchElementException();
+                }
+                int slot = stack[--depth];
+                pushLeft(right(slot));
+                return new AbstractMap.SimpleImmutableEntry<>(key(slot), value(slot));
+            }
+        };
+    }
+
+    /**
+     * Validates the left-leaning red-black invariants of this map.
+     *
+     * @return true if all invariants hold.
+     * @see CustomTreeMap#isValidRedBlackTree()
+     */
+    public boolean isValidRedBlackTree() {
+        ensureOpen();
+        return !isRed(root) && isValid(root) && blackHeight(root) != -1;
+    }
+
+    private boolean isValid(int slot) {
+        if (slot == NIL) {
+            return true;
+        }
+        if (size(slot) != size(left(slot)) + size(right(slot)) + 1) {
+            return false;
+        }
+        if (isRed(right(slot)) || (isRed(slot) && isRed(left(slot)))) {
+            return false;
+        }
+        K key = key(slot);
+        if ((left(slot) != NIL && compareKey(findMax(left(slot)), key) >= 0)
+                || (right(slot) != NIL && compareKey(findMin(right(slot)), key) <= 0)) {
+            return false;
+        }
+        return isValid(left(slot)) && isValid(right(slot));
+    }
+
+    private int blackHeight(int slot) {
+        if (slot == NIL) {
+            return 0;
+        }
+        int leftHeight = blackHeight(left(slot));
+        int rightHeight = blackHeight(right(slot));
+        if (leftHeight == -1 || rightHeight == -1 || leftHeight != rightHeight) {
+            return -1;
+        }
+        return isRed(slot) ? leftHeight : leftHeight + 1;
+    }
+
+    /**
+     * @return true if close() has been called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Releases the direct memory chunks of this map. Since Java 8 has no
+     * public way to free a direct buffer eagerly, the memory goes back to
+     * the system when the few chunk buffers are collected. Closing twice
+     * has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Arrays.fill(chunks, null);
+        chunkCount = 0;
+        root = NIL;
+        top = 0;
+        freeHead = NIL;
+    }
+}
@@ -0,0 +1,471 @@
+package com.epam.java.se;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Class represents a read-only sorted map served straight from a
+ * memory-mapped snapshot file. Opening a snapshot only maps the file and
+ * reads its header, so it takes O(1) regardless of the number of entries;
+ * lookups binary search the offset table and decode just the records
+ * they touch.
+ * <p>
+ * Snapshot format, all numbers big-endian:
+ * <pre>
+ * magic   : int  0x43544D53 ("CTMS")
+ * version : int  1
+ * count   : int  number of entries
+ * offsets : int[count] position of every record, in ascending key order
+ * records : keyLength int, key bytes, valueLength int (-1 for null), value bytes
+ * </pre>
+ * A snapshot is limited to 2 GB since it is mapped as a single buffer.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of mapped values
+ * @see CustomTreeMap#writeSnapshot(Path, SnapshotSerializer, SnapshotSerializer)
+ * @see SnapshotSerializer
+ */
+public class SnapshotMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+    static final int MAGIC = 0x43544D53;
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int NULL_LENGTH = -1;
+
+    private final ByteBuffer buffer;
+    private final SnapshotSerializer<K> keySerializer;
+    private final SnapshotSerializer<V> valueSerializer;
+    private final int count;
+    private Set<Entry<K, V>> entrySet;
+
+    private SnapshotMap(ByteBuffer buffer, SnapshotSerializer<K> keySerializer,
+                        SnapshotSerializer<V> valueSerializer) throws IOException {
+        this.buffer = buffer;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.count = readCount(buffer);
+    }
+
+    /**
+     * Validates the header.
+     *
+     * @return the number of entries.
+     */
+    private static int readCount(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        int version = buffer.getInt(Integer.BYTES);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        return buffer.getInt(2 * Integer.BYTES);
+    }
+
+    /**
+     * Writes the entries of the sorted map to a snapshot file. The file is
+     * written next to the target and then moved over it, so readers never
+     * see a partially written snapshot.
+     *
+     * @param map             map whose entries are written in its key order.
+     * @param path            snapshot file to be created or replaced.
+     * @param keySerializer   serializer of keys.
+     * @param valueSerializer serializer of values.
+     * @throws IOException              if the file cannot be written or exceeds 2 GB.
+     * @throws IllegalArgumentException if the map has a comparator, since
+     *                                  the snapshot is searched by natural ordering.
+     */
+    public static <K extends Comparable<K>, V> void write(SortedMap<K, ? extends V> map, Path path,
+                                                          SnapshotSerializer<K> keySerializer,
+                                                          SnapshotSerializer<V> valueSerializer) throws IOException {
+        if (map.comparator() != null) {
+            throw new IllegalArgumentException("Snapshot files require natural ordering");
+        }
+        write(map.size(), map.entrySet(), path, keySerializer, valueSerializer);
+    }
+
+    /**
+     * Writes the entries of a map in any key order, for a checkpoint of
+     * the write-ahead log. Such a file is only replayed by read() and
+     * must not be opened, since open() searches by natural ordering.
+     *
+     * @throws IOException if the file cannot be written or exceeds 2 GB.
+     */
+    static <K, V> void writeCheckpoint(SortedMap<K, ? extends V> map, Path path,
+                                       SnapshotSerializer<K> keySerializer,
+                                       SnapshotSerializer<V> valueSerializer) throws IOException {
+        write(map.size(), map.entrySet(), path, keySerializer, valueSerializer);
+    }
+
+    /**
+     * Writes count entries given in ascending key order to a snapshot
+     * file, for sources which are not a SortedMap.
+     *
+     * @throws IOException if the file cannot be written, exceeds 2 GB,
+     *                     or entries does not have count elements.
+     */
+    static <K, V> void write(int count, Iterable<? extends Entry<K, ? extends V>> entries, Path path,
+                             SnapshotSerializer<K> keySerializer,
+                             SnapshotSerializer<V> valueSerializer) throws IOException {
+        Objects.requireNonNull(keySerializer);
+        Objects.requireNonNull(valueSerializer);
+        long headerSize = HEADER_SIZE + (long) count * Integer.BYTES;
+        if (headerSize > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot exceeds 2 GB");
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            writeFile(temp, headerSize, count, entries, keySerializer, valueSerializer);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(path.toAbsolutePath().getParent());
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Forces the entries of the directory to the device, so that a file
+     * just created or renamed in it survives a crash. Platforms which
+     * cannot open a directory, like Windows, make renames durable on
+     * their own and are skipped.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel opened = channel) {
+            opened.force(true);
+        }
+    }
+
+    private static <K, V> void writeFile(Path file, long headerSize, int count,
+                                         Iterable<? extends Entry<K, ? extends V>> entries,
+                                         SnapshotSerializer<K> keySerializer,
+                                         SnapshotSerializer<V> valueSerializer) throws IOException {
+        int[] offsets = new int[count];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(headerSize);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            long position = headerSize;
+            int index = 0;
+            for (Entry<K, ? extends V> entry : entries) {
+                if (index == count) {
+                    throw new IOException("More than " + count + " entries");
+                }
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot exceeds 2 GB");
+                }
+                offsets[index++] = (int) position;
+                byte[] key = keySerializer.serialize(entry.getKey());
+                out.writeInt(key.length);
+                out.write(key);
+                position += Integer.BYTES + key.length;
+                if (entry.getValue() == null) {
+                    out.writeInt(NULL_LENGTH);
+                    position += Integer.BYTES;
+                } else {
+                    byte[] value = valueSerializer.serialize(entry.getValue());
+                    out.writeInt(value.length);
+                    out.write(value);
+                    position += Integer.BYTES + value.length;
+                }
+            }
+            out.flush();
+            if (index < count) {
+                throw new IOException("Fewer than " + count + " entries: " + index);
+            }
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds 2 GB");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate((int) headerSize);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count);
+            for (int offset : offsets) {
+                header.putInt(offset);
+            }
+            ((Buffer) header).flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Maps a snapshot file into memory. The file channel is closed right
+     * away, the mapping stays valid until the map is collected.
+     *
+     * @param path            snapshot file.
+     * @param keySerializer   serializer of keys used to write the file.
+     * @param valueSerializer serializer of values used to write the file.
+     * @return a read-only map backed by the mapped file.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static <K extends Comparable<K>, V> SnapshotMap<K, V> open(Path path,
+                                                                     SnapshotSerializer<K> keySerializer,
+                                                                     SnapshotSerializer<V> valueSerializer) throws IOException {
+        Objects.requireNonNull(keySerializer);
+        Objects.requireNonNull(valueSerializer);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SnapshotMap<>(buffer, keySerializer, valueSerializer);
+        }
+    }
+
+    /**
+     * Passes all entries of a snapshot file to the action in key order.
+     * Keys are never compared, so unlike open this also reads the
+     * checkpoints of maps sorted by a comparator.
+     *
+     * @param path            snapshot file.
+     * @param keySerializer   serializer of keys used to write the file.
+     * @param valueSerializer serializer of values used to write the file.
+     * @param action          receives every key and value.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    static <K, V> void read(Path path, SnapshotSerializer<K> keySerializer, SnapshotSerializer<V> valueSerializer,
+                            BiConsumer<? super K, ? super V> action) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds 2 GB");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int count = readCount(buffer);
+        for (int index = 0; index < count; index++) {
+            int offset = buffer.getInt(HEADER_SIZE + index * Integer.BYTES);
+            int keyLength = buffer.getInt(offset);
+            K key = keySerializer.deserialize(buffer, offset + Integer.BYTES, keyLength);
+            int valueOffset = offset + Integer.BYTES + keyLength;
+            int valueLength = buffer.getInt(valueOffset);
+            V value = valueLength == NULL_LENGTH ? null
+                    : valueSerializer.deserialize(buffer, valueOffset + Integer.BYTES, valueLength);
+            action.accept(key, value);
+        }
+    }
+
+    private int recordOffset(int index) {
+        return buffer.getInt(HEADER_SIZE + index * Integer.BYTES);
+    }
+
+    private K key(int index) {
+        int offset = recordOffset(index);
+        return keySerializer.deserialize(buffer, offset + Integer.BYTES, buffer.getInt(offset));
+    }
+
+    private V value(int index) {
+        int offset = recordOffset(index);
+        int valueOffset = offset + Integer.BYTES + buffer.getInt(offset);
+        int length = buffer.getInt(valueOffset);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        return valueSerializer.deserialize(buffer, valueOffset + Integer.BYTES, length);
+    }
+
+    /**
+     * Binary search over the offset table.
+     *
+     * @return index of the key, or -(insertion point) - 1 if it is absent.
+     */
+    private int indexOf(K key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key(mid).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * @return the number of key-value mappings in this snapshot
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the specified key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        return indexOf((K) key) >= 0;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        int index = indexOf((K) key);
+        return index >= 0 ? value(index) : null;
+    }
+
+    /**
+     * @return the first (lowest) key in this snapshot.
+     * @throws NoSuchElementException if the snapshot is empty.
+     */
+    public K firstKey() {
+        if (count == 0) {
+            throw new NoSuchElementException();
+        }
+        return key(0);
+    }
+
+    /**
+     * @return the last (highest) key in this snapshot.
+     * @throws NoSuchElementException if the snapshot is empty.
+     */
+    public K lastKey() {
+        if (count == 0) {
+            throw new NoSuchElementException();
+        }
+        return key(count - 1);
+    }
+
+    /**
+     * @param key the key
+     * @return the greatest key less than or equal to the given key,
+     * or null if there is no such key.
+     */
+    public K floorKey(K key) {
+        Objects.requireNonNull(key);
+        int index = indexOf(key);
+        int floor = index >= 0 ? index : -index - 2;
+        return floor >= 0 ? key(floor) : null;
+    }
+
+    /**
+     * @param key the key
+     * @return the least key greater than or equal to the given key,
+     * or null if there is no such key.
+     */
+    public K ceilingKey(K key) {
+        Objects.requireNonNull(key);
+        int index = indexOf(key);
+        int ceiling = index >= 0 ? index : -index - 1;
+        return ceiling < count ? key(ceiling) : null;
+    }
+
+    private int lowerBound(K key) {
+        int index = indexOf(key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int upperBound(K key) {
+        int index = indexOf(key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @param lo the low endpoint of the range.
+     * @param hi the high endpoint of the range.
+     * @return the number of keys in [lo, hi], computed in O(log n).
+     */
+    public int countInRange(K lo, K hi) {
+        Objects.requireNonNull(lo);
+        Objects.requireNonNull(hi);
+        if (lo.compareTo(hi) > 0) {
+            return 0;
+        }
+        return upperBound(hi) - lowerBound(lo);
+    }
+
+    /**
+     * Passes mappings with keys in [lo, hi] to the action in ascending
+     * key order, decoding only the records inside the range.
+     *
+     * @param lo     the low endpoint of the range.
+     * @param hi     the high endpoint of the range.
+     * @param action the action to be performed for each mapping.
+     */
+    public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        if (lo.compareTo(hi) > 0) {
+            return;
+        }
+        for (int i = lowerBound(lo), end = upperBound(hi); i < end; i++) {
+            action.accept(key(i), value(i));
+        }
+    }
+
+    /**
+     * @return a read-only view of the entries in ascending key order,
+     * decoded lazily while iterating.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<Entry<K, V>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < count;
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            if (index >= count) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<K, V> entry = new SimpleImmutableEntry<>(key(index), value(index));
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+        return entrySet;
+    }
+}
@@ -0,0 +1,67 @@
+package com.epam.java.se;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts keys or values to bytes for snapshot files written by
+ * CustomTreeMap#writeSnapshot and back when SnapshotMap reads them.
+ * Records may have any length; deserialize gets the exact bounds of
+ * one record and must use absolute reads or a duplicate of the buffer.
+ *
+ * @param <T> the type of serialized values
+ * @see SnapshotMap
+ */
+public interface SnapshotSerializer<T> {
+
+    SnapshotSerializer<String> STRING = new SnapshotSerializer<String>() {
+        @Override
+        public byte[] serialize(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(ByteBuffer buffer, int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer record = buffer.duplicate();
+            ((Buffer) record).position(offset);
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    SnapshotSerializer<Long> LONG = new SnapshotSerializer<Long>() {
+        @Override
+        public byte[] serialize(Long value) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+        }
+
+        @Override
+        public Long deserialize(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    SnapshotSerializer<Integer> INTEGER = new SnapshotSerializer<Integer>() {
+        @Override
+        public byte[] serialize(Integer value) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+        }
+
+        @Override
+        public Integer deserialize(ByteBuffer buffer, int offset, int length) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    byte[] serialize(T value);
+
+    /**
+     * @param buffer the mapped snapshot.
+     * @param offset position of the first byte of the record.
+     * @param length number of bytes in the record.
+     * @return the decoded value.
+     */
+    T deserialize(ByteBuffer buffer, int offset, int length);
+}
@@ -0,0 +1,714 @@
+package com.epam.java.se;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.StreamSupport;
+
+/**
+ * Class represents a sorted map which may grow beyond the heap, built
+ * like a log-structured merge tree. Changes go to a CustomTreeMap, the
+ * memtable, which is bounded: once it holds memtableLimit keys it is
+ * written to an immutable segment file in the SnapshotMap format and
+ * replaced by an empty one. Segments are memory-mapped, so their keys
+ * and values stay off the heap; only a bloom filter of about 10 bits
+ * per key is kept for every segment.
+ * <p>
+ * A lookup asks the memtable and then the segments from the newest to
+ * the oldest, skipping those whose bloom filter rules the key out, and
+ * the first tier which has the key decides. Removals of keys which may
+ * be in a segment leave a tombstone. Iteration merges all tiers in
+ * ascending key order.
+ * <p>
+ * Segments are grouped in tiers: flushed ones are tier 0, and once
+ * FAN_IN segments of a tier pile up a background thread merges them
+ * into one segment of the next tier, dropping tombstones when nothing
+ * older remains. The merged segment replaces its inputs on the next
+ * operation of the thread using the map, so the map itself needs no
+ * locks and, like CustomTreeMap, must be used by one thread at a time.
+ * <p>
+ * Segment files are scratch space: they are deleted when they are
+ * merged, on clear() and on close(). To return the previous value and
+ * keep size() exact, put and remove look the key up first.
+ *
+ * @param <K> the type of keys, whose natural ordering must be
+ *            consistent with equals and hashCode
+ * @param <V> the type of mapped values
+ * @see CustomTreeMap
+ * @see SnapshotMap
+ */
+public class TieredCustomTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements Closeable {
+    private static final int DEFAULT_MEMTABLE_LIMIT = 1 << 16;
+    private static final int FAN_IN = 4;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+    /**
+     * Stored values: a tombstone of a removed key, the null value, or
+     * any other value as it is.
+     */
+    private static final Object TOMBSTONE = new Object();
+    private static final Object NULL_VALUE = new Object();
+    private static final byte TAG_TOMBSTONE = 0;
+    private static final byte TAG_NULL = 1;
+    private static final byte TAG_VALUE = 2;
+
+    private final Path directory;
+    private final SnapshotSerializer<K> keySerializer;
+    private final SnapshotSerializer<Object> valueSerializer;
+    private final int memtableLimit;
+    private CustomTreeMap<K, Object> memtable = new CustomTreeMap<>();
+    /**
+     * Newest first, with tiers which never decrease towards the oldest.
+     * Replaced rather than changed, so iterators keep the list they started with.
+     */
+    private List<Segment<K>> segments = Collections.emptyList();
+    private int size;
+    private int modCount;
+    private long nextSegmentId;
+    private ExecutorService compactor;
+    private Future<Segment<K>> compaction;
+    private List<Segment<K>> compacting;
+    private Set<Entry<K, V>> entrySet;
+
+    /**
+     * Creates an empty map which flushes every 65536 keys.
+     *
+     * @param directory       directory of the segment files, created on
+     *                        the first flush.
+     * @param keySerializer   serializer of keys.
+     * @param valueSerializer serializer of values.
+     */
+    public TieredCustomTreeMap(Path directory, SnapshotSerializer<K> keySerializer,
+                               SnapshotSerializer<V> valueSerializer) {
+        this(directory, keySerializer, valueSerializer, DEFAULT_MEMTABLE_LIMIT);
+    }
+
+    /**
+     * @param memtableLimit number of keys, including tombstones, kept in
+     *                      memory before they are flushed to a segment.
+     * @throws IllegalArgumentException if memtableLimit is not positive.
+     */
+    public TieredCustomTreeMap(Path directory, SnapshotSerializer<K> keySerializer,
+                               SnapshotSerializer<V> valueSerializer, int memtableLimit) {
+        if (memtableLimit <= 0) {
+            throw new IllegalArgumentException("memtableLimit must be positive: " + memtableLimit);
+        }
+        this.directory = Objects.requireNonNull(directory);
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.valueSerializer = new TaggedSerializer<>(Objects.requireNonNull(valueSerializer));
+        this.memtableLimit = memtableLimit;
+    }
+
+    private static final class Segment<K extends Comparable<K>> {
+        final Path path;
+        final SnapshotMap<K, Object> map;
+        final BloomFilter bloom;
+        final int tier;
+
+        Segment(Path path, SnapshotMap<K, Object> map, BloomFilter bloom, int tier) {
+            this.path = path;
+            this.map = map;
+            this.bloom = bloom;
+            this.tier = tier;
+        }
+    }
+
+    /**
+     * Bloom filter over the hash codes of keys with double hashing,
+     * which answers false only for keys which were never added.
+     */
+    private static final class BloomFilter {
+        private final long[] bits;
+        private final int mask;
+
+        BloomFilter(int keys) {
+            long wanted = Math.max(64L, (long) keys * BLOOM_BITS_PER_KEY);
+            int size = (int) Math.min(1L << 30, Long.highestOneBit(wanted - 1) << 1);
+            bits = new long[size >>> 6];
+            mask = size - 1;
+        }
+
+        void add(int hash) {
+            long mixed = mix(hash);
+            int h1 = (int) mixed;
+            int h2 = (int) (mixed >>> 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(int hash) {
+            long mixed = mix(hash);
+            int h1 = (int) mixed;
+            int h2 = (int) (mixed >>> 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long mix(int hash) {
+            long z = hash * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+            return z ^ (z >>> 32);
+        }
+    }
+
+    /**
+     * Prefixes every value with a tag, so tombstones and null values
+     * can be told apart from each other and from absent keys.
+     */
+    private static final class TaggedSerializer<V> implements SnapshotSerializer<Object> {
+        private final SnapshotSerializer<V> values;
+
+        TaggedSerializer(SnapshotSerializer<V> values) {
+            this.values = values;
+        }
+
+        @Override
+        public byte[] serialize(Object value) {
+            if (value == TOMBSTONE) {
+                return new byte[]{TAG_TOMBSTONE};
+            }
+            if (value == NULL_VALUE) {
+                return new byte[]{TAG_NULL};
+            }
+            byte[] bytes = values.serialize((V) value);
+            byte[] tagged = new byte[bytes.length + 1];
+            tagged[0] = TAG_VALUE;
+            System.arraycopy(bytes, 0, tagged, 1, bytes.length);
+            return tagged;
+        }
+
+        @Override
+        public Object deserialize(ByteBuffer buffer, int offset, int length) {
+            byte tag = buffer.get(offset);
+            if (tag == TAG_TOMBSTONE) {
+                return TOMBSTONE;
+            }
+            if (tag == TAG_NULL) {
+                return NULL_VALUE;
+            }
+            return values.deserialize(buffer, offset + 1, length - 1);
+        }
+    }
+
+    /**
+     * Merges sorted sources into one sorted sequence; of equal keys only
+     * the one from the source listed first is returned.
+     */
+    private static final class MergeIterator<K extends Comparable<K>> implements Iterator<Entry<K, Object>> {
+        private final PriorityQueue<Cursor<K>> queue = new PriorityQueue<>((a, b) -> {
+            int cmp = a.entry.getKey().compareTo(b.entry.getKey());
+            return cmp != 0 ? cmp : Integer.compare(a.rank, b.rank);
+        });
+
+        MergeIterator(List<Iterator<Entry<K, Object>>> sources) {
+            for (int rank = 0; rank < sources.size(); rank++) {
+                advance(new Cursor<>(sources.get(rank), rank));
+            }
+        }
+
+        private static final class Cursor<K> {
+            final Iterator<Entry<K, Object>> source;
+            final int rank;
+            Entry<K, Object> entry;
+
+            Cursor(Iterator<Entry<K, Object>> source, int rank) {
+                this.source = source;
+                this.rank = rank;
+            }
+        }
+
+        private void advance(Cursor<K> cursor) {
+            if (cursor.source.hasNext()) {
+                cursor.entry = cursor.source.next();
+                queue.add(cursor);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Entry<K, Object> next() {
+            Cursor<K> top = queue.poll();
+            if (top == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, Object> entry = top.entry;
+            advance(top);
+            while (!queue.isEmpty() && queue.peek().entry.getKey().compareTo(entry.getKey()) == 0) {
+                advance(queue.poll());
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * @return the stored value of the key from the newest tier which
+     * has it, possibly a tombstone, or null if no tier has it.
+     */
+    private Object find(K key) {
+        Object stored = memtable.get(key);
+        if (stored != null) {
+            return stored;
+        }
+        int hash = key.hashCode();
+        for (Segment<K> segment : segments) {
+            if (segment.bloom.mightContain(hash)) {
+                stored = segment.map.get(key);
+                if (stored != null) {
+                    return stored;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLive(Object stored) {
+        return stored != null && stored != TOMBSTONE;
+    }
+
+    private V unwrap(Object stored) {
+        return stored == null || stored == TOMBSTONE || stored == NULL_VALUE ? null : (V) stored;
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for
+     * the specified key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        installCompaction();
+        return isLive(find((K) key));
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value to which the specified key is or null
+     * if this map contains no mapping for the key.
+     * @throws NullPointerException if the specified key is null.
+     */
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        installCompaction();
+        return unwrap(find((K) key));
+    }
+
+    /**
+     * Puts the mapping into the memtable, flushing it if it is full.
+     *
+     * @param key   key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     * @throws UncheckedIOException if a segment cannot be written.
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        installCompaction();
+        Object previous = find(key);
+        memtable.put(key, value == null ? NULL_VALUE : value);
+        if (!isLive(previous)) {
+            size++;
+            modCount++;
+        }
+        flushIfFull();
+        return unwrap(previous);
+    }
+
+    /**
+     * Removes the key from the memtable, or leaves a tombstone there
+     * if a segment may have it.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or
+     * null if there was no mapping for key.
+     * @throws NullPointerException if the specified key is null.
+     * @throws UncheckedIOException if a segment cannot be written.
+     */
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        installCompaction();
+        Object previous = find((K) key);
+        if (!isLive(previous)) {
+            return null;
+        }
+        if (segments.isEmpty()) {
+            memtable.remove(key);
+        } else {
+            memtable.put((K) key, TOMBSTONE);
+        }
+        size--;
+        modCount++;
+        flushIfFull();
+        return unwrap(previous);
+    }
+
+    /**
+     * Removes all mappings and deletes the segment files.
+     *
+     * @throws UncheckedIOException if a segment file cannot be deleted.
+     */
+    @Override
+    public void clear() {
+        List<Segment<K>> dropped = new ArrayList<>(segments);
+        Segment<K> merged = awaitMerge();
+        if (merged != null) {
+            dropped.add(merged);
+        }
+        compacting = null;
+        memtable = new CustomTreeMap<>();
+        segments = Collections.emptyList();
+        size = 0;
+        modCount++;
+        delete(dropped);
+    }
+
+    /**
+     * Clears the map, deleting its segment files, and stops the
+     * background compaction.
+     */
+    @Override
+    public void close() {
+        try {
+            clear();
+        } finally {
+            if (compactor != null) {
+                compactor.shutdown();
+                compactor = null;
+            }
+        }
+    }
+
+    /**
+     * @return the first (lowest) key currently in this map.
+     * @throws NoSuchElementException if this map is empty.
+     */
+    public K firstKey() {
+        return entrySet().iterator().next().getKey();
+    }
+
+    /**
+     * @return the number of segment files.
+     */
+    public int segmentCount() {
+        installCompaction();
+        return segments.size();
+    }
+
+    /**
+     * Writes the memtable to a new segment, even if it is not full.
+     *
+     * @throws UncheckedIOException if the segment cannot be written.
+     */
+    public void flush() {
+        installCompaction();
+        if (memtable.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Segment<K> segment = writeSegment(nextSegmentPath(), memtable.entrySet(), memtable.size(), 0, false);
+            List<Segment<K>> next = new ArrayList<>(segments.size() + 1);
+            next.add(segment);
+            next.addAll(segments);
+            segments = next;
+            memtable = new CustomTreeMap<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        scheduleCompaction();
+    }
+
+    private void flushIfFull() {
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    /**
+     * Waits until no compaction runs and no tier has FAN_IN segments.
+     *
+     * @throws UncheckedIOException if a merged segment cannot be written.
+     */
+    public void awaitCompaction() {
+        while (compaction != null) {
+            Segment<K> merged = awaitMerge();
+            install(merged);
+        }
+    }
+
+    private Path nextSegmentPath() {
+        return directory.resolve("segment-" + nextSegmentId++ + ".sst");
+    }
+
+    /**
+     * Writes the entries in two passes: the first counts them and fills
+     * the bloom filter, sized by the upper bound of their number, the
+     * second writes them.
+     *
+     * @return the opened segment, or null if no entry is left.
+     */
+    private Segment<K> writeSegment(Path path, Iterable<Entry<K, Object>> entries, int maxCount, int tier,
+                                    boolean dropTombstones) throws IOException {
+        BloomFilter bloom = new BloomFilter(maxCount);
+        int count = 0;
+        for (Entry<K, Object> entry : entries) {
+            if (!dropTombstones || entry.getValue() != TOMBSTONE) {
+                bloom.add(entry.getKey().hashCode());
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        Iterable<Entry<K, Object>> kept = !dropTombstones ? entries
+                : () -> StreamSupport.stream(entries.spliterator(), false)
+                .filter(entry -> entry.getValue() != TOMBSTONE)
+                .iterator();
+        SnapshotMap.write(count, kept, path, keySerializer, valueSerializer);
+        return new Segment<>(path, SnapshotMap.open(path, keySerializer, valueSerializer), bloom, tier);
+    }
+
+    /**
+     * Starts merging the oldest FAN_IN segments of the lowest tier which
+     * has that many, unless a merge is already running. Merging exactly
+     * FAN_IN keeps the segment sizes of a tier independent of how many
+     * flushes happened while the previous merge was running.
+     */
+    private void scheduleCompaction() {
+        if (compaction != null) {
+            return;
+        }
+        for (int from = 0; from < segments.size(); ) {
+            int tier = segments.get(from).tier;
+            int to = from;
+            while (to < segments.size() && segments.get(to).tier == tier) {
+                to++;
+            }
+            if (to - from >= FAN_IN) {
+                List<Segment<K>> inputs = new ArrayList<>(segments.subList(to - FAN_IN, to));
+                boolean oldest = to == segments.size();
+                Path path = nextSegmentPath();
+                compacting = inputs;
+                compaction = compactor().submit(() -> merge(inputs, path, tier + 1, oldest));
+                return;
+            }
+            from = to;
+        }
+    }
+
+    private Segment<K> merge(List<Segment<K>> inputs, Path path, int tier, boolean oldest) throws IOException {
+        int maxCount = 0;
+        for (Segment<K> input : inputs) {
+            maxCount += input.map.size();
+        }
+        Iterable<Entry<K, Object>> merged = () -> {
+            List<Iterator<Entry<K, Object>>> sources = new ArrayList<>();
+            for (Segment<K> input : inputs) {
+                sources.add(input.map.entrySet().iterator());
+            }
+            return new MergeIterator<>(sources);
+        };
+        return writeSegment(path, merged, maxCount, tier, oldest);
+    }
+
+    private ExecutorService compactor() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "tiered-map-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compactor;
+    }
+
+    /**
+     * Replaces the inputs of a finished merge with its output.
+     */
+    private void installCompaction() {
+        if (compaction != null && compaction.isDone()) {
+            install(awaitMerge());
+        }
+    }
+
+    /**
+     * Waits for the running merge, if any.
+     *
+     * @return its output, or null if there is none.
+     */
+    private Segment<K> awaitMerge() {
+        if (compaction == null) {
+            return null;
+        }
+        try {
+            return compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for compaction", e);
+        } catch (ExecutionException e) {
+            compacting = null;
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            compaction = null;
+        }
+    }
+
+    private void install(Segment<K> merged) {
+        if (compacting == null) {
+            return;
+        }
+        List<Segment<K>> next = new ArrayList<>(segments);
+        int at = next.indexOf(compacting.get(0));
+        next.removeAll(compacting);
+        if (merged != null) {
+            next.add(at, merged);
+        }
+        segments = next;
+        List<Segment<K>> inputs = compacting;
+        compacting = null;
+        delete(inputs);
+        scheduleCompaction();
+    }
+
+    private static <K extends Comparable<K>> void delete(List<Segment<K>> dropped) {
+        try {
+            for (Segment<K> segment : dropped) {
+                Files.deleteIfExists(segment.path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a view of the mappings in ascending key order. Its
+     * iterator merges the tiers as they were when it was created and
+     * fails fast if keys are added or removed other than through it.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new TierIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    TieredCustomTreeMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class TierIterator implements Iterator<Entry<K, V>> {
+        private final MergeIterator<K> merged;
+        private Entry<K, Object> next;
+        private K lastKey;
+        private int expectedModCount = modCount;
+
+        TierIterator() {
+            installCompaction();
+            List<Iterator<Entry<K, Object>>> sources = new ArrayList<>();
+            sources.add(memtable.snapshot().entrySet().iterator());
+            for (Segment<K> segment : segments) {
+                sources.add(segment.map.entrySet().iterator());
+            }
+            merged = new MergeIterator<>(sources);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (merged.hasNext()) {
+                Entry<K, Object> entry = merged.next();
+                if (entry.getValue() != TOMBSTONE) {
+                    next = entry;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastKey = next.getKey();
+            Entry<K, V> entry = new SimpleEntry<K, V>(lastKey, unwrap(next.getValue())) {
+                @Override
+                public V setValue(V value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+            advance();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            TieredCustomTreeMap.this.remove(lastKey);
+            expectedModCount = modCount;
+            lastKey = null;
+        }
+    }
+}
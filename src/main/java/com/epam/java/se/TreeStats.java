@@ -0,0 +1,206 @@
+package com.epam.java.se;
+
+/**
+ * Immutable snapshot of the statistics of a CustomTreeMap: operation
+ * counts and latencies, comparisons per lookup, rotations and color
+ * flips per insert, and the depths of all nodes, the true height
+ * instead of the height of the leftmost and rightmost paths.
+ * Depths count the root as 1.
+ *
+ * @see CustomTreeMap#enableStats()
+ * @see CustomTreeMap#stats()
+ */
+public final class TreeStats {
+    private final long getCount;
+    private final long getNanos;
+    private final long putCount;
+    private final long putNanos;
+    private final long removeCount;
+    private final long removeNanos;
+    private final long lookupCount;
+    private final long comparisonCount;
+    private final int maxLookupDepth;
+    private final long insertCount;
+    private final long insertRotations;
+    private final long insertColorFlips;
+    private final long rotationCount;
+    private final long colorFlipCount;
+    private final long[] depthHistogram;
+    private final int size;
+    private final long depthSum;
+
+    TreeStats(Instrumentation counters, long[] depthHistogram) {
+        this.getCount = counters.getCount;
+        this.getNanos = counters.getNanos;
+        this.putCount = counters.putCount;
+        this.putNanos = counters.putNanos;
+        this.removeCount = counters.removeCount;
+        this.removeNanos = counters.removeNanos;
+        this.lookupCount = counters.lookupCount;
+        this.comparisonCount = counters.comparisonCount;
+        this.maxLookupDepth = counters.maxLookupDepth;
+        this.insertCount = counters.insertCount;
+        this.insertRotations = counters.insertRotations;
+        this.insertColorFlips = counters.insertColorFlips;
+        this.rotationCount = counters.rotationCount;
+        this.colorFlipCount = counters.colorFlipCount;
+        this.depthHistogram = depthHistogram;
+        int size = 0;
+        long depthSum = 0;
+        for (int depth = 1; depth < depthHistogram.length; depth++) {
+            size += depthHistogram[depth];
+            depthSum += depth * depthHistogram[depth];
+        }
+        this.size = size;
+        this.depthSum = depthSum;
+    }
+
+    private static double ratio(long total, long count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @return the number of get and containsKey calls.
+     */
+    public long getGetCount() {
+        return getCount;
+    }
+
+    /**
+     * @return the average latency of get and containsKey in nanoseconds.
+     */
+    public double getAverageGetNanos() {
+        return ratio(getNanos, getCount);
+    }
+
+    /**
+     * @return the number of put calls, replacing or inserting.
+     */
+    public long getPutCount() {
+        return putCount;
+    }
+
+    /**
+     * @return the average latency of put in nanoseconds.
+     */
+    public double getAveragePutNanos() {
+        return ratio(putNanos, putCount);
+    }
+
+    /**
+     * @return the number of remove calls, whether the key was present or not.
+     */
+    public long getRemoveCount() {
+        return removeCount;
+    }
+
+    /**
+     * @return the average latency of remove in nanoseconds.
+     */
+    public double getAverageRemoveNanos() {
+        return ratio(removeNanos, removeCount);
+    }
+
+    /**
+     * @return the number of key lookups made by get, containsKey, put and remove.
+     */
+    public long getLookupCount() {
+        return lookupCount;
+    }
+
+    /**
+     * @return the number of key comparisons made by the lookups.
+     */
+    public long getComparisonCount() {
+        return comparisonCount;
+    }
+
+    /**
+     * @return the average number of key comparisons per lookup.
+     */
+    public double getComparisonsPerLookup() {
+        return ratio(comparisonCount, lookupCount);
+    }
+
+    /**
+     * @return the greatest number of key comparisons made by one lookup,
+     * which is the deepest depth a lookup reached.
+     */
+    public int getMaxLookupDepth() {
+        return maxLookupDepth;
+    }
+
+    /**
+     * @return the number of puts which added a new key.
+     */
+    public long getInsertCount() {
+        return insertCount;
+    }
+
+    /**
+     * @return the average number of rotations made by an insert.
+     */
+    public double getRotationsPerInsert() {
+        return ratio(insertRotations, insertCount);
+    }
+
+    /**
+     * @return the average number of color flips made by an insert.
+     */
+    public double getColorFlipsPerInsert() {
+        return ratio(insertColorFlips, insertCount);
+    }
+
+    /**
+     * @return the number of rotations made by inserts and removals.
+     */
+    public long getRotationCount() {
+        return rotationCount;
+    }
+
+    /**
+     * @return the number of color flips made by inserts and removals.
+     */
+    public long getColorFlipCount() {
+        return colorFlipCount;
+    }
+
+    /**
+     * @return the number of keys when the snapshot was taken.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the greatest depth of a node, 0 for an empty map.
+     */
+    public int getHeight() {
+        return depthHistogram.length - 1;
+    }
+
+    /**
+     * @return the average depth of a node, 0 for an empty map.
+     */
+    public double getAverageDepth() {
+        return ratio(depthSum, size);
+    }
+
+    /**
+     * @return the number of nodes at every depth, indexed by depth;
+     * element 0 is always 0.
+     */
+    public long[] getDepthHistogram() {
+        return depthHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TreeStats[size=%d, height=%d, averageDepth=%.2f, gets=%d (%.0f ns), "
+                        + "puts=%d (%.0f ns), removes=%d (%.0f ns), comparisons/lookup=%.2f, "
+                        + "maxLookupDepth=%d, rotations/insert=%.2f, colorFlips/insert=%.2f]",
+                size, getHeight(), getAverageDepth(), getCount, getAverageGetNanos(),
+                putCount, getAveragePutNanos(), removeCount, getAverageRemoveNanos(),
+                getComparisonsPerLookup(), maxLookupDepth, getRotationsPerInsert(), getColorFlipsPerInsert());
+    }
+}
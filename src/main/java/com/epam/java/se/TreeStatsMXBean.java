@@ -0,0 +1,55 @@
+package com.epam.java.se;
+
+/**
+ * Management interface of the statistics of a CustomTreeMap, registered
+ * by CustomTreeMap#registerStatsMBean. Counters are read while the map
+ * may be changing, so they are approximate. The height and the average
+ * depth need a walk of the tree, which only the thread using the map
+ * can make; they are those of the last CustomTreeMap#stats() call.
+ * ComparisonsPerLookup and MaxLookupDepth follow the average and the
+ * greatest depth reached by lookups without a walk, so a console sees
+ * them without any call on the map.
+ *
+ * @see TreeStats
+ */
+public interface TreeStatsMXBean {
+
+    long getGetCount();
+
+    double getAverageGetNanos();
+
+    long getPutCount();
+
+    double getAveragePutNanos();
+
+    long getRemoveCount();
+
+    double getAverageRemoveNanos();
+
+    double getComparisonsPerLookup();
+
+    /**
+     * @return the greatest number of comparisons made by one lookup,
+     * which is the deepest depth a lookup reached.
+     */
+    int getMaxLookupDepth();
+
+    double getRotationsPerInsert();
+
+    double getColorFlipsPerInsert();
+
+    /**
+     * @return the height at the last CustomTreeMap#stats() call, -1 before it.
+     */
+    int getHeight();
+
+    /**
+     * @return the average depth at the last CustomTreeMap#stats() call, -1 before it.
+     */
+    double getAverageDepth();
+
+    /**
+     * Sets all counters to zero.
+     */
+    void reset();
+}
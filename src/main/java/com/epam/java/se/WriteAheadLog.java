@@ -0,0 +1,332 @@
+package com.epam.java.se;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of a durable CustomTreeMap. A directory holds a
+ * checkpoint, which is a snapshot file in the SnapshotMap format, and
+ * a log of the changes made since it.
+ * <p>
+ * Log format, all numbers big-endian:
+ * <pre>
+ * magic   : int  0x43544D57 ("CTMW")
+ * version : int  1
+ * records : length int, crc int (CRC32 of the payload), payload
+ * payload : type byte (1 put, 2 remove, 3 clear),
+ *           for put and remove keyLength int, key bytes,
+ *           for put valueLength int (-1 for null), value bytes
+ * </pre>
+ * Records are collected in a buffer and written and forced together
+ * (group commit) every syncEvery records, when the buffer is full,
+ * or on sync(). Recovery stops at the first torn or corrupt record and
+ * cuts the log there.
+ * <p>
+ * A checkpoint writes the snapshot and then empties the log. A crash
+ * between the two leaves a log whose changes the snapshot already has;
+ * replaying it again gives the same map, since the last put, remove or
+ * clear of a key decides its state no matter what came before.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of mapped values
+ * @see CustomTreeMap#enableDurability(Path, SnapshotSerializer, SnapshotSerializer, int)
+ */
+final class WriteAheadLog<K, V> implements Closeable {
+    static final int MAGIC = 0x43544D57;
+    static final int VERSION = 1;
+    static final String LOG_FILE = "wal.log";
+    static final String CHECKPOINT_FILE = "checkpoint.snapshot";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int NULL_LENGTH = -1;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    /**
+     * The log is checkpointed once it outgrows the checkpoint
+     * CHECKPOINT_RATIO times plus MIN_CHECKPOINT_BYTES, which bounds
+     * recovery by the size of the map and amortizes the O(n)
+     * checkpoints to O(1) per change.
+     */
+    private static final long MIN_CHECKPOINT_BYTES = 1 << 20;
+    private static final int CHECKPOINT_RATIO = 2;
+
+    private final Path checkpointPath;
+    private final FileChannel channel;
+    private final SnapshotSerializer<K> keySerializer;
+    private final SnapshotSerializer<V> valueSerializer;
+    private final int syncEvery;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    /**
+     * Number of records appended since the last commit.
+     */
+    private int unsynced;
+    /**
+     * Size of the log including the buffered records.
+     */
+    private long logSize;
+    private long checkpointSize;
+
+    private WriteAheadLog(Path directory, FileChannel channel, SnapshotSerializer<K> keySerializer,
+                          SnapshotSerializer<V> valueSerializer, int syncEvery) throws IOException {
+        this.checkpointPath = directory.resolve(CHECKPOINT_FILE);
+        this.channel = channel;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.syncEvery = syncEvery;
+        this.checkpointSize = Files.exists(checkpointPath) ? Files.size(checkpointPath) : 0;
+    }
+
+    /**
+     * Opens or creates the log in the directory and replays the
+     * checkpoint and then the log through the given actions.
+     *
+     * @param syncEvery number of records per commit, 0 to commit only
+     *                  when the buffer is full or on sync().
+     * @throws IOException if the files cannot be read or written, or
+     *                     are not a checkpoint and a log.
+     */
+    static <K, V> WriteAheadLog<K, V> open(Path directory, SnapshotSerializer<K> keySerializer,
+                                           SnapshotSerializer<V> valueSerializer, int syncEvery,
+                                           BiConsumer<K, V> put, Consumer<K> remove,
+                                           Runnable clear) throws IOException {
+        if (syncEvery < 0) {
+            throw new IllegalArgumentException("syncEvery must not be negative: " + syncEvery);
+        }
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            SnapshotMap.read(checkpoint, keySerializer, valueSerializer, put);
+        }
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            WriteAheadLog<K, V> log = new WriteAheadLog<>(directory, channel, keySerializer,
+                    valueSerializer, syncEvery);
+            log.recover(put, remove, clear);
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void recover(BiConsumer<K, V> put, Consumer<K> remove, Runnable clear) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            ((Buffer) header).flip();
+            channel.truncate(0);
+            writeFully(header, 0);
+            channel.force(true);
+            SnapshotMap.forceDirectory(checkpointPath.toAbsolutePath().getParent());
+            logSize = HEADER_SIZE;
+            channel.position(logSize);
+            return;
+        }
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a write-ahead log");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported write-ahead log version: " + version);
+        }
+        long position = HEADER_SIZE;
+        while (true) {
+            int length;
+            int checksum;
+            byte[] payload;
+            try {
+                length = in.readInt();
+                checksum = in.readInt();
+                if (length <= 0 || length > size - position - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            replay(ByteBuffer.wrap(payload), put, remove, clear);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            channel.force(true);
+        }
+        logSize = position;
+        channel.position(logSize);
+    }
+
+    private void replay(ByteBuffer payload, BiConsumer<K, V> put, Consumer<K> remove,
+                        Runnable clear) throws IOException {
+        byte type = payload.get(0);
+        if (type == CLEAR) {
+            clear.run();
+            return;
+        }
+        int keyLength = payload.getInt(1);
+        K key = keySerializer.deserialize(payload, 1 + Integer.BYTES, keyLength);
+        if (type == REMOVE) {
+            remove.accept(key);
+        } else if (type == PUT) {
+            int valueOffset = 1 + Integer.BYTES + keyLength;
+            int valueLength = payload.getInt(valueOffset);
+            put.accept(key, valueLength == NULL_LENGTH ? null
+                    : valueSerializer.deserialize(payload, valueOffset + Integer.BYTES, valueLength));
+        } else {
+            throw new IOException("Unknown write-ahead log record type: " + type);
+        }
+    }
+
+    void appendPut(K key, V value) throws IOException {
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = value == null ? null : valueSerializer.serialize(value);
+        int length = 1 + Integer.BYTES + keyBytes.length + Integer.BYTES
+                + (valueBytes == null ? 0 : valueBytes.length);
+        ByteBuffer record = reserve(length);
+        record.put(PUT).putInt(keyBytes.length).put(keyBytes);
+        if (valueBytes == null) {
+            record.putInt(NULL_LENGTH);
+        } else {
+            record.putInt(valueBytes.length).put(valueBytes);
+        }
+        finish(record, length);
+    }
+
+    void appendRemove(K key) throws IOException {
+        byte[] keyBytes = keySerializer.serialize(key);
+        int length = 1 + Integer.BYTES + keyBytes.length;
+        ByteBuffer record = reserve(length);
+        record.put(REMOVE).putInt(keyBytes.length).put(keyBytes);
+        finish(record, length);
+    }
+
+    void appendClear() throws IOException {
+        ByteBuffer record = reserve(1);
+        record.put(CLEAR);
+        finish(record, 1);
+    }
+
+    /**
+     * @return the buffer positioned at the payload of a new record, or
+     * a buffer of its own for a record larger than the shared one.
+     */
+    private ByteBuffer reserve(int length) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (recordSize > buffer.remaining()) {
+            flush();
+        }
+        ByteBuffer record = recordSize > buffer.capacity() ? ByteBuffer.allocate(recordSize) : buffer;
+        record.putInt(length).putInt(0);
+        return record;
+    }
+
+    /**
+     * Fills in the checksum of the record just put and commits if due.
+     */
+    private void finish(ByteBuffer record, int length) throws IOException {
+        int start = record.position() - length;
+        ByteBuffer payload = record.duplicate();
+        ((Buffer) payload).limit(record.position()).position(start);
+        crc.reset();
+        crc.update(payload);
+        record.putInt(start - Integer.BYTES, (int) crc.getValue());
+        logSize += RECORD_HEADER_SIZE + length;
+        if (record != buffer) {
+            ((Buffer) record).flip();
+            writeFully(record, channel.position());
+        }
+        if (++unsynced >= syncEvery && syncEvery > 0) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file without forcing them.
+     */
+    private void flush() throws IOException {
+        ((Buffer) buffer).flip();
+        writeFully(buffer, channel.position());
+        ((Buffer) buffer).clear();
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+        channel.position(position);
+    }
+
+    /**
+     * Commits the group of records appended since the last commit:
+     * writes them with one call and forces them to the device.
+     */
+    void sync() throws IOException {
+        if (unsynced == 0 && buffer.position() == 0) {
+            return;
+        }
+        flush();
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    /**
+     * @return true if the log has outgrown the checkpoint.
+     */
+    boolean isCheckpointDue() {
+        return logSize - HEADER_SIZE > MIN_CHECKPOINT_BYTES + CHECKPOINT_RATIO * checkpointSize;
+    }
+
+    /**
+     * Replaces the checkpoint with a snapshot of the map, which must
+     * contain every logged change, and empties the log. The log is only
+     * emptied once the rename of the snapshot is forced to the device
+     * along with the directory, otherwise a crash could bring back the
+     * old checkpoint next to an empty log.
+     */
+    void checkpoint(SortedMap<K, V> map) throws IOException {
+        sync();
+        SnapshotMap.writeCheckpoint(map, checkpointPath, keySerializer, valueSerializer);
+        checkpointSize = Files.size(checkpointPath);
+        channel.truncate(HEADER_SIZE);
+        channel.force(true);
+        logSize = HEADER_SIZE;
+        channel.position(logSize);
+    }
+
+    /**
+     * Commits the pending records and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.epam.java.se;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the Map contract tests against the array-backed engine, next to
+ * the tests of its tree shape and slot reuse.
+ */
+public class ArrayCustomTreeMapTest extends MapContractTest {
+
+    @Override
+    protected Map<Integer, String> createMap() {
+        return new ArrayCustomTreeMap<>();
+    }
+
+    @Override
+    protected boolean isValidRedBlackTree(Map<Integer, String> map) {
+        return ((ArrayCustomTreeMap<Integer, String>) map).isValidRedBlackTree();
+    }
+
+    @Test
+    public void showThatWeCanCheckTreeMapAndItsBranchesHeight() {
+        ArrayCustomTreeMap map = new ArrayCustomTreeMap();
+
+        IntStream.range(1, 100000).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
+
+        IntStream.range(1, 100000).forEach(
+                i -> assertTrue(map.containsKey(i))
+        );
+        assertThat(map.commonHeight(), is(17));
+        assertThat(map.heightOfLeftSubtree(), is(17));
+        assertThat(map.heightOfRightSubtree(), is(16));
+
+
+    }
+
+    @Test
+    public void testIfMapIsBalanced() {
+        ArrayCustomTreeMap map = new ArrayCustomTreeMap();
+
+        IntStream.range(1, 100000).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
+
+        assertThat(map.isBalanced(), is(true));
+
+        IntStream.range(200, 15000).forEach(
+                i -> map.remove(i, String.valueOf(i))
+        );
+
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.size(), is(99999 - 14800));
+        assertTrue(map.commonHeight() <= 2 * (32 - Integer.numberOfLeadingZeros(map.size())));
+    }
+
+    @Test
+    public void testThatRemoveMinAndRemoveMaxKeepTreeValid() {
+        ArrayCustomTreeMap<Integer, String> map = new ArrayCustomTreeMap<>();
+        IntStream.range(0, 1000).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
+
+        for (int i = 0; i < 300; i++) {
+            map.removeMin();
+            map.removeMax();
+        }
+
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.size(), is(400));
+        assertThat(map.containsKey(299), is(false));
+        assertThat(map.containsKey(300), is(true));
+        assertThat(map.containsKey(699), is(true));
+        assertThat(map.containsKey(700), is(false));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testThatRemoveMinThrowsExceptionOnEmptyMap() {
+        new ArrayCustomTreeMap<Integer, String>().removeMin();
+    }
+
+    @Test
+    public void testThatMapGrowsFromZeroCapacityAndReusesFreedSlots() {
+        ArrayCustomTreeMap<Integer, String> map = new ArrayCustomTreeMap<>(0);
+        for (int round = 0; round < 5; round++) {
+            IntStream.range(0, 1000).forEach(
+                    i -> map.put(i, String.valueOf(i))
+            );
+            IntStream.range(0, 1000).filter(i -> i % 3 != 0).forEach(map::remove);
+            assertThat(map.isValidRedBlackTree(), is(true));
+        }
+
+        assertThat(map.size(), is(334));
+        assertThat(map.get(999), is("999"));
+        assertThat(map.containsValue("998"), is(false));
+        map.clear();
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.containsValue("999"), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatNegativeCapacityIsRejected() {
+        new ArrayCustomTreeMap<Integer, String>(-1);
+    }
+}
\ No newline at end of file
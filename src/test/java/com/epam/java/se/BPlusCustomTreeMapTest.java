@@ -0,0 +1,169 @@
+package com.epam.java.se;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BPlusCustomTreeMapTest {
+
+    private BPlusCustomTreeMap<Integer, String> m;
+
+    @Before
+    public void init() {
+        m = new BPlusCustomTreeMap<>(4, null);
+    }
+
+    @Test
+    public void testThatRandomOperationsMatchTreeMapAndKeepInvariants() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertThat(m.remove(key), is(expected.remove(key)));
+            } else {
+                assertThat(m.put(key, "v" + i), is(expected.put(key, "v" + i)));
+            }
+            if (i % 500 == 0) {
+                assertThat(m.isValidBPlusTree(), is(true));
+            }
+        }
+        assertThat(m.isValidBPlusTree(), is(true));
+        assertThat(m.size(), is(expected.size()));
+        assertThat(new ArrayList<>(m.entrySet()), is(new ArrayList<>(expected.entrySet())));
+        assertThat(m, is(expected));
+    }
+
+    @Test
+    public void testThatRemovingAllKeysShrinksTheTree() {
+        for (int i = 0; i < 1000; i++) {
+            m.put(i, "v" + i);
+        }
+        assertThat(m.height() > 3, is(true));
+        for (int i = 0; i < 1000; i += 2) {
+            m.remove(i);
+        }
+        for (int i = 999; i > 0; i -= 2) {
+            m.remove(i);
+        }
+        assertThat(m.isEmpty(), is(true));
+        assertThat(m.height(), is(1));
+        assertThat(m.isValidBPlusTree(), is(true));
+    }
+
+    @Test
+    public void testThatOrderStatisticsMatchSortedKeys() {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            m.put(3 * i, "v");
+            keys.add(3 * i);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(m.select(i), is(keys.get(i)));
+            assertThat(m.rank(keys.get(i)), is(i));
+            assertThat(m.rank(keys.get(i) + 1), is(i + 1));
+        }
+        assertThat(m.countInRange(10, 100), is(30));
+        assertThat(m.countInRange(9, 99), is(31));
+        assertThat(m.countInRange(100, 10), is(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testThatSelectOutOfRangeThrows() {
+        m.put(1, "a");
+        m.select(1);
+    }
+
+    @Test
+    public void testThatNavigationCrossesLeaves() {
+        for (int i = 0; i < 100; i++) {
+            m.put(2 * i, "v" + i);
+        }
+        assertThat(m.firstKey(), is(0));
+        assertThat(m.lastKey(), is(198));
+        for (int i = 0; i < 100; i++) {
+            int key = 2 * i;
+            assertThat(m.floorKey(key + 1), is(key));
+            assertThat(m.ceilingKey(key - 1), is(key));
+            assertThat(m.lowerKey(key), is(key == 0 ? null : key - 2));
+            assertThat(m.higherKey(key), is(key == 198 ? null : key + 2));
+        }
+        assertThat(m.floorKey(-1), is(nullValue()));
+        assertThat(m.ceilingKey(199), is(nullValue()));
+    }
+
+    @Test
+    public void testThatForEachInRangeVisitsKeysInOrder() {
+        for (int i = 0; i < 100; i++) {
+            m.put(i, "v" + i);
+        }
+        List<Integer> visited = new ArrayList<>();
+        m.forEachInRange(17, 63, (key, value) -> visited.add(key));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 17; i <= 63; i++) {
+            expected.add(i);
+        }
+        assertThat(visited, is(expected));
+    }
+
+    @Test
+    public void testThatIteratorRemoveAndSetValueWriteThrough() {
+        for (int i = 0; i < 200; i++) {
+            m.put(i, "v" + i);
+        }
+        Iterator<Map.Entry<Integer, String>> iterator = m.entrySet().iterator();
+        int visited = 0;
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            visited++;
+            if (entry.getKey() % 3 == 0) {
+                iterator.remove();
+            } else {
+                entry.setValue("w");
+            }
+        }
+        assertThat(visited, is(200));
+        assertThat(m.size(), is(133));
+        assertThat(m.containsKey(3), is(false));
+        assertThat(m.get(4), is("w"));
+        assertThat(m.containsValue("v4"), is(false));
+        assertThat(m.isValidBPlusTree(), is(true));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testThatIteratorFailsFastOnInsert() {
+        m.put(1, "a");
+        m.put(2, "b");
+        Iterator<Integer> iterator = m.keySet().iterator();
+        iterator.next();
+        m.put(3, "c");
+        iterator.next();
+    }
+
+    @Test
+    public void testThatComparatorOrdersKeys() {
+        BPlusCustomTreeMap<String, Integer> map = new BPlusCustomTreeMap<>(8, KeyComparators.caseInsensitive());
+        map.put("b", 1);
+        map.put("A", 2);
+        map.put("B", 3);
+        assertThat(map.size(), is(2));
+        assertThat(map.get("a"), is(2));
+        assertThat(map.firstKey(), is("A"));
+        assertThat(map.get("b"), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatTooSmallFanoutThrows() {
+        new BPlusCustomTreeMap<Integer, String>(3, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testThatNullKeyThrows() {
+        m.put(null, "a");
+    }
+}
@@ -0,0 +1,149 @@
+package com.epam.java.se;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertNull;
+
+public class BoundedCustomTreeMapTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatCapacityMustBePositive() {
+        new BoundedCustomTreeMap<Integer, String>(0, EvictionPolicy.smallestKey());
+    }
+
+    @Test
+    public void testThatSmallestKeysAreEvicted() {
+        List<Integer> evicted = new ArrayList<>();
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(3, EvictionPolicy.smallestKey(),
+                (key, value) -> evicted.add(key));
+
+        for (int key : new int[]{5, 1, 9, 3, 7}) {
+            m.put(key, "v" + key);
+        }
+
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(5, 7, 9)));
+        assertThat(evicted, is(Arrays.asList(1, 3)));
+        assertThat(m.getEvictionCount(), is(2L));
+    }
+
+    @Test
+    public void testThatLargestKeysAreEvicted() {
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(3, EvictionPolicy.largestKey());
+
+        for (int key : new int[]{5, 1, 9, 3, 7}) {
+            m.put(key, "v" + key);
+        }
+
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(1, 3, 5)));
+    }
+
+    @Test
+    public void testThatLeastRecentlyUsedKeyIsEvicted() {
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(3,
+                EvictionPolicy.leastRecentlyUsed());
+        m.put(1, "a");
+        m.put(2, "b");
+        m.put(3, "c");
+        m.get(1);
+        m.put(2, "b2");
+
+        m.put(4, "d");
+
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(1, 2, 4)));
+        m.remove(1);
+        m.put(5, "e");
+        m.put(6, "f");
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(4, 5, 6)));
+    }
+
+    @Test
+    public void testThatExpiredEntriesAreMissesAndEvictions() {
+        AtomicLong now = new AtomicLong();
+        List<String> evicted = new ArrayList<>();
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(10,
+                EvictionPolicy.timeToLive(10, TimeUnit.NANOSECONDS, now::get),
+                (key, value) -> evicted.add(key + "=" + value));
+        m.put(1, "a");
+        now.set(1);
+        m.put(2, "b");
+        now.set(5);
+        m.put(1, "a2");
+
+        now.set(12);
+        assertThat(m.get(1), is("a2"));
+        assertNull(m.get(2));
+        assertThat(m.containsKey(2), is(false));
+
+        now.set(20);
+        m.put(3, "c");
+        assertThat(new ArrayList<>(m.keySet()), is(Collections.singletonList(3)));
+        assertThat(evicted, is(Arrays.asList("2=b", "1=a2")));
+        assertThat(m.getHitCount(), is(1L));
+        assertThat(m.getMissCount(), is(1L));
+        assertThat(m.getEvictionCount(), is(2L));
+    }
+
+    @Test
+    public void testThatFullTimeToLiveMapEvictsTheOldestEntry() {
+        AtomicLong now = new AtomicLong();
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(2,
+                EvictionPolicy.timeToLive(1, TimeUnit.HOURS, now::get));
+        m.put(3, "a");
+        m.put(1, "b");
+        m.put(2, "c");
+
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void testThatHitsAndMissesAreCounted() {
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(2, EvictionPolicy.smallestKey());
+        m.put(1, null);
+
+        assertNull(m.get(1));
+        assertNull(m.get(2));
+        assertNull(m.get(3));
+
+        assertThat(m.getHitCount(), is(1L));
+        assertThat(m.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void testThatSustainedLoadKeepsTheSizeAtCapacity() {
+        BoundedCustomTreeMap<Integer, Integer> m = new BoundedCustomTreeMap<Integer, Integer>(1000,
+                EvictionPolicy.leastRecentlyUsed());
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(5000);
+            if (m.get(key) == null) {
+                m.put(key, i);
+            }
+        }
+
+        assertThat(m.size(), is(1000));
+        assertThat(m.getHitCount() + m.getMissCount(), is(100000L));
+        assertThat(m.getEvictionCount(), is(m.getMissCount() - 1000));
+    }
+
+    @Test
+    public void testThatIteratorRemovalIsSeenByThePolicy() {
+        BoundedCustomTreeMap<Integer, String> m = new BoundedCustomTreeMap<Integer, String>(2,
+                EvictionPolicy.leastRecentlyUsed());
+        m.put(1, "a");
+        m.put(2, "b");
+        Iterator<Integer> keys = m.keySet().iterator();
+        keys.next();
+        keys.remove();
+
+        m.put(3, "c");
+
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(2, 3)));
+        assertThat(m.getEvictionCount(), is(0L));
+    }
+}
@@ -0,0 +1,190 @@
+package com.epam.java.se;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConcurrentCustomTreeMapTest {
+
+    private ConcurrentCustomTreeMap<Integer, String> m;
+
+    @Before
+    public void init() {
+        m = new ConcurrentCustomTreeMap<>();
+    }
+
+    @Test
+    public void testThatWeCanPutGetAndRemove() {
+        assertNull(m.put(3, "a"));
+        assertThat(m.put(3, "b"), is("a"));
+        m.put(-7, "c");
+
+        assertThat(m.get(3), is("b"));
+        assertThat(m.containsKey(-7), is(true));
+        assertThat(m.remove(3), is("b"));
+        assertNull(m.remove(3));
+        assertNull(m.get(3));
+        assertThat(m.size(), is(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testThatNullValuesAreRejected() {
+        m.put(1, null);
+    }
+
+    @Test
+    public void testConditionalWrites() {
+        assertNull(m.putIfAbsent(1, "a"));
+        assertThat(m.putIfAbsent(1, "b"), is("a"));
+        assertThat(m.replace(1, "b", "c"), is(false));
+        assertThat(m.replace(1, "a", "c"), is(true));
+        assertNull(m.replace(2, "x"));
+        assertThat(m.containsKey(2), is(false));
+        assertThat(m.replace(1, "d"), is("c"));
+        assertThat(m.remove(1, "c"), is(false));
+        assertThat(m.remove(1, "d"), is(true));
+        assertThat(m.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testThatMapMatchesTreeMapAfterRandomChurn() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) > 0) {
+                assertEquals(expected.put(key, "v" + i), m.put(key, "v" + i));
+            } else {
+                assertEquals(expected.remove(key), m.remove(key));
+            }
+        }
+
+        assertThat(m.isValidRedBlackTree(), is(true));
+        assertThat(m, is((Map<Integer, String>) expected));
+        assertThat(new ArrayList<>(m.keySet()), is(new ArrayList<>(expected.keySet())));
+        assertThat(m.firstKey(), is(expected.firstKey()));
+        assertThat(m.lastKey(), is(expected.lastKey()));
+        assertThat(m.floorKey(2500), is(expected.floorKey(2500)));
+        assertThat(m.ceilingKey(2500), is(expected.ceilingKey(2500)));
+        assertThat(m.countInRange(1000, 3000), is(expected.subMap(1000, true, 3000, true).size()));
+
+        List<Integer> scanned = new ArrayList<>();
+        m.forEachInRange(1000, 3000, (key, value) -> scanned.add(key));
+        assertThat(scanned, is(new ArrayList<>(expected.subMap(1000, true, 3000, true).keySet())));
+    }
+
+    @Test
+    public void testThatIteratorIsASnapshot() {
+        for (int i = 0; i < 100; i++) {
+            m.put(i, "v" + i);
+        }
+
+        Iterator<Map.Entry<Integer, String>> iterator = m.entrySet().iterator();
+        m.clear();
+        m.put(1000, "new");
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            assertThat(entry.getValue(), is("v" + count));
+            count++;
+        }
+        assertThat(count, is(100));
+        assertThat(m.size(), is(1));
+    }
+
+    @Test
+    public void testThatIteratorRemoveChangesTheMap() {
+        for (int i = 0; i < 10; i++) {
+            m.put(i, "v" + i);
+        }
+
+        Iterator<Integer> iterator = m.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertThat(new ArrayList<>(m.keySet()), is(Arrays.asList(1, 3, 5, 7, 9)));
+        assertThat(m.isValidRedBlackTree(), is(true));
+    }
+
+    @Test
+    public void testThatReadersAlwaysSeeAConsistentVersion() throws Exception {
+        int keys = 20000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger violations = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            readers.add(executor.submit(() -> {
+                Random random = new Random();
+                while (!done.get()) {
+                    int size = m.size();
+                    int key = random.nextInt(keys);
+                    if (m.get(key) != null && m.countInRange(0, key) != key + 1) {
+                        violations.incrementAndGet();
+                    }
+                    if (m.countInRange(0, keys) < size) {
+                        violations.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < keys; i++) {
+                m.put(i, "v" + i);
+            }
+        });
+        writer.get(30, TimeUnit.SECONDS);
+        done.set(true);
+        for (Future<?> reader : readers) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(violations.get(), is(0));
+        assertThat(m.size(), is(keys));
+        assertThat(m.isValidRedBlackTree(), is(true));
+    }
+
+    @Test
+    public void testThatConcurrentWritersDoNotLoseUpdates() throws Exception {
+        int threads = 4;
+        int keys = 5000;
+        AtomicInteger wins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            String name = "t" + t;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < keys; i++) {
+                    if (m.putIfAbsent(i, name) == null) {
+                        wins.incrementAndGet();
+                    }
+                    m.put(keys + i * threads + id, name);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(wins.get(), is(keys));
+        assertThat(m.size(), is(keys + keys * threads));
+        assertThat(m.isValidRedBlackTree(), is(true));
+    }
+}
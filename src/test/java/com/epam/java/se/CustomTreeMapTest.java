@@ -1,377 +1,1042 @@
 package com.epam.java.se;
 
-import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
  * Created by Мария on 26.03.2017.
  */
 @FixMethodOrder
-public class CustomTreeMapTest {
+public class CustomTreeMapTest extends MapContractTest {
 
-    private Map<Integer, String> m;
+    @Override
+    protected Map<Integer, String> createMap() {
+        return new CustomTreeMap<>();
+    }
 
-    @Before
-    public void init() {
-        m = new CustomTreeMap<>();
+    @Override
+    protected boolean isValidRedBlackTree(Map<Integer, String> map) {
+        return ((CustomTreeMap<Integer, String>) map).isValidRedBlackTree();
     }
 
     @Test
-    public void testThatWeCanCreate() {
-        assertThat(m, is(notNullValue()));
+    public void showThatWeCanCheckTreeMapAndItsBranchesHeight() {
+        CustomTreeMap map = new CustomTreeMap();
+
+        IntStream.range(1, 100000).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
+
+        IntStream.range(1, 100000).forEach(
+                i -> assertTrue(map.containsKey(i))
+        );
+        assertThat(map.commonHeight(), is(17));
+        assertThat(map.heightOfLeftSubtree(), is(17));
+        assertThat(map.heightOfRightSubtree(), is(16));
+
+
     }
 
     @Test
-    public void testThatNewMapIsEmpty() {
-        assertThat(m.isEmpty(), is(true));
+    public void testIfMapIsBalanced() {
+        CustomTreeMap map = new CustomTreeMap();
+
+        IntStream.range(1, 100000).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
+
+        assertThat(map.isBalanced(), is(true));
+
+        IntStream.range(200, 15000).forEach(
+                i -> map.remove(i, String.valueOf(i))
+        );
+
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.size(), is(99999 - 14800));
+        assertTrue(map.commonHeight() <= 2 * (32 - Integer.numberOfLeadingZeros(map.size())));
     }
 
     @Test
-    public void testThatNotNewMapIsNotEmpty() {
-        m.put(10, "abc");
-        m.put(20, "rtr");
+    public void testThatRemoveMinAndRemoveMaxKeepTreeValid() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 1000).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
 
-        assertThat(m.isEmpty(), is(false));
+        for (int i = 0; i < 300; i++) {
+            map.removeMin();
+            map.removeMax();
+        }
+
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.size(), is(400));
+        assertThat(map.containsKey(299), is(false));
+        assertThat(map.containsKey(300), is(true));
+        assertThat(map.containsKey(699), is(true));
+        assertThat(map.containsKey(700), is(false));
     }
 
-    @Test
-    public void testThatOnNewMapContainKeyMethodReturnFalseForAnyObject() {
-        assertThat(m.containsKey(new Integer(1)), is(false));
+    @Test(expected = NoSuchElementException.class)
+    public void testThatRemoveMinThrowsExceptionOnEmptyMap() {
+        new CustomTreeMap<Integer, String>().removeMin();
     }
 
     @Test
-    public void testThatWeCanPutKeyValuePairAndCanCheckIt() {
-        m.put(new Integer(3), "abc");
-        m.put(new Integer(5), "rtr");
-        m.put(new Integer(23423), "efefe");
+    public void testNavigationMethods() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 50).forEach(
+                i -> map.put(i * 2, String.valueOf(i * 2))
+        );
 
-        assertThat(m.containsKey(3), is(true));
-        assertThat(m.containsKey(5), is(true));
-        assertThat(m.containsKey(23423), is(true));
+        assertThat(map.firstKey(), is(0));
+        assertThat(map.lastKey(), is(98));
+        assertThat(map.floorKey(7), is(6));
+        assertThat(map.floorKey(8), is(8));
+        assertThat(map.lowerKey(8), is(6));
+        assertThat(map.ceilingKey(7), is(8));
+        assertThat(map.higherKey(8), is(10));
+        assertThat(map.ceilingEntry(97).getValue(), is("98"));
+        assertEquals(map.higherKey(98), null);
+        assertEquals(map.lowerKey(0), null);
     }
 
-    @Test(expected = NullPointerException.class)
-    public void testThatWeCantPutNullKey() {
-        m.put(null, "abc");
+    @Test
+    public void testThatPollFirstAndLastEntriesRemoveThem() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 10).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
+
+        assertThat(map.pollFirstEntry().getKey(), is(0));
+        assertThat(map.pollLastEntry().getKey(), is(9));
+        assertThat(map.size(), is(8));
+        assertThat(map.firstKey(), is(1));
     }
 
-    @Test
-    public void testThatWeCanPutNullValue() {
-        m.put(1, null);
-        assertThat(m.containsKey(1), is(true));
+    @Test(expected = NoSuchElementException.class)
+    public void testThatFirstKeyThrowsExceptionOnEmptyMap() {
+        new CustomTreeMap<Integer, String>().firstKey();
     }
 
     @Test
-    public void testThatMapCanPutPairWithKeyThatAlreadyPresented() {
+    public void testThatSubMapIsLiveBoundedView() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 100).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
 
-        String oldValue = "aaaa";
-        String newValue = "bbbb";
+        NavigableMap<Integer, String> sub = map.subMap(10, true, 20, false);
 
-        m.put(1, oldValue);
-        m.put(1, newValue);
+        assertThat(sub.size(), is(10));
+        assertThat(sub.firstKey(), is(10));
+        assertThat(sub.lastKey(), is(19));
+        assertThat(sub.containsKey(20), is(false));
 
-        assertFalse(m.containsValue(oldValue));
-        assertTrue(m.containsValue(newValue));
-    }
+        map.remove(15);
+        sub.remove(10);
+        assertThat(sub.size(), is(8));
+        assertThat(map.containsKey(10), is(false));
 
-    @Test(expected = NullPointerException.class)
-    public void testThatContainsKeyMethodThrowsExceptionOnNullKey() {
-        m.containsKey(null);
+        sub.put(15, "again");
+        assertThat(map.get(15), is("again"));
     }
 
-    @Test(expected = ClassCastException.class)
-    public void testThatContainsKeyMethodThrowsExceptionOnWrongKeyClass() {
-        m.put(1, "");
-        m.containsKey(new String(""));
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatSubMapRejectsKeysOutOfRange() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.headMap(10).put(10, "ten");
     }
 
     @Test
-    public void testContainsValueMethodWorksProperlyOn() {
-        String value = "aaaa";
-
-        m.put(1, value);
+    public void testThatDescendingViewsIterateInReverseOrder() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 10).forEach(
+                i -> map.put(i, String.valueOf(i))
+        );
 
-        assertTrue(m.containsValue(value));
+        assertEquals(Arrays.asList(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), new ArrayList<>(map.descendingKeySet()));
+        assertEquals(Arrays.asList(7, 6, 5), new ArrayList<>(map.descendingMap().subMap(7, true, 4, false).keySet()));
+        assertEquals(Arrays.asList(3, 2, 1, 0), new ArrayList<>(map.headMap(3, true).descendingKeySet()));
     }
 
     @Test
-    public void testContainsValueMethodWorksProperlyOnNullInputValue() {
-        String value = "aaaa";
-
-        m.put(1, value);
+    public void testThatNavigationMatchesJavaUtilTreeMap() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            int key = random.nextInt(1000);
+            map.put(key, i);
+            expected.put(key, i);
+        }
 
-        assertFalse(m.containsValue(null));
+        for (int i = 0; i < 200; i++) {
+            int a = random.nextInt(1100) - 50;
+            int b = a + random.nextInt(300);
+            boolean aInclusive = random.nextBoolean();
+            boolean bInclusive = random.nextBoolean();
+
+            assertEquals(expected.floorKey(a), map.floorKey(a));
+            assertEquals(expected.higherKey(a), map.higherKey(a));
+            assertEquals(new ArrayList<>(expected.subMap(a, aInclusive, b, bInclusive).entrySet()),
+                    new ArrayList<>(map.subMap(a, aInclusive, b, bInclusive).entrySet()));
+            assertEquals(new ArrayList<>(expected.descendingMap().tailMap(b, bInclusive).keySet()),
+                    new ArrayList<>(map.descendingMap().tailMap(b, bInclusive).keySet()));
+            assertEquals(expected.subMap(a, b).size(), map.subMap(a, b).size());
+            assertEquals(expected.tailMap(a, aInclusive).lowerKey(b), map.tailMap(a, aInclusive).lowerKey(b));
+        }
     }
 
     @Test
-    public void testThatWeCanPut1000DifferentKeysInMap() {
-        IntStream.range(1, 100000).forEach(
-                i -> m.put(i, String.valueOf(i))
+    public void testRankSelectAndCountInRange() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 100).forEach(
+                i -> map.put(i * 10, String.valueOf(i))
         );
 
-        IntStream.range(1, 100000).forEach(
-                i -> assertTrue(m.containsKey(i))
-        );
-        System.out.println(m.size());
+        assertThat(map.rank(0), is(0));
+        assertThat(map.rank(55), is(6));
+        assertThat(map.rank(60), is(6));
+        assertThat(map.rank(10000), is(100));
+        assertThat(map.select(0), is(0));
+        assertThat(map.select(37), is(370));
+        assertThat(map.select(99), is(990));
+        assertThat(map.countInRange(100, 200), is(11));
+        assertThat(map.countInRange(101, 109), is(0));
+        assertThat(map.countInRange(200, 100), is(0));
     }
 
     @Test
-    public void testThatMapCalculateItsSizeProperly() {
-        m.put(new Integer(6), "abc");
-        m.put(new Integer(8), "ferf");
-        m.put(new Integer(9), "wef");
+    public void testThatOrderStatisticsStayCorrectAfterRemove() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        List<Integer> expected = new ArrayList<>();
+        IntStream.range(0, 1000).forEach(i -> {
+            map.put(i, String.valueOf(i));
+            expected.add(i);
+        });
+        Random random = new Random(3);
+        for (int i = 0; i < 400; i++) {
+            Integer key = expected.remove(random.nextInt(expected.size()));
+            map.remove(key);
+        }
 
-        assertThat(m.size(), is(3));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(map.select(i), is(expected.get(i)));
+            assertThat(map.rank(expected.get(i)), is(i));
+        }
+        assertThat(map.subMap(100, 500).size(), is(map.countInRange(100, 499)));
     }
 
     @Test
-    public void showThatWeCanCheckTreeMapAndItsBranchesHeight() {
-        CustomTreeMap map = new CustomTreeMap();
-
-        IntStream.range(1, 100000).forEach(
+    public void testPercentiles() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        IntStream.rangeClosed(1, 100).forEach(
                 i -> map.put(i, String.valueOf(i))
         );
 
-        IntStream.range(1, 100000).forEach(
-                i -> assertTrue(map.containsKey(i))
-        );
-        assertThat(map.commonHeight(), is(17));
-        assertThat(map.heightOfLeftSubtree(), is(17));
-        assertThat(map.heightOfRightSubtree(), is(16));
+        assertThat(map.percentile(0), is(1));
+        assertThat(map.percentile(50), is(50));
+        assertThat(map.median(), is(50));
+        assertThat(map.percentile(99), is(99));
+        assertThat(map.percentile(100), is(100));
+    }
 
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testThatSelectThrowsExceptionOnWrongIndex() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.put(1, "a");
+        map.select(1);
+    }
 
+    @Test
+    public void testThatMapBuiltFromSortedMapIsValidRedBlackTree() {
+        for (int size = 0; size < 300; size++) {
+            TreeMap<Integer, String> source = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                source.put(i, String.valueOf(i));
+            }
+
+            CustomTreeMap<Integer, String> map = new CustomTreeMap<>(source);
+
+            assertThat(map.isValidRedBlackTree(), is(true));
+            assertThat(map.size(), is(size));
+            assertEquals(new ArrayList<>(source.entrySet()), new ArrayList<>(map.entrySet()));
+        }
     }
 
     @Test
-    public void testIfMapIsBalanced() {
-        CustomTreeMap map = new CustomTreeMap();
+    public void testThatPutAllMergesLargeBatchIntoNonEmptyMap() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        Map<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i += 2) {
+            map.put(i, "old");
+            expected.put(i, "old");
+        }
+        TreeMap<Integer, String> batch = new TreeMap<>();
+        for (int i = 0; i < 1500; i += 3) {
+            batch.put(i, "new");
+        }
+        expected.putAll(batch);
 
-        IntStream.range(1, 100000).forEach(
-                i -> map.put(i, String.valueOf(i))
-        );
+        map.putAll(batch);
 
-        assertThat(map.isBalanced(), is(true));
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+    }
 
-        IntStream.range(200, 15000).forEach(
-                i -> map.remove(i, String.valueOf(i))
-        );
+    @Test
+    public void testThatFromSortedBuildsMapFromArrays() {
+        Integer[] keys = {1, 3, 5, 7, 9, 11};
+        String[] values = {"a", "b", "c", "d", "e", "f"};
+
+        CustomTreeMap<Integer, String> map = CustomTreeMap.fromSorted(keys, values);
 
-        assertThat(map.isBalanced(), is(false));
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.get(7), is("d"));
+        assertThat(map.size(), is(6));
+    }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatPutAllSortedRejectsUnsortedInput() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.put(100, "x");
+
+        try {
+            map.putAllSorted(Arrays.asList(
+                    new AbstractMap.SimpleEntry<>(1, "a"),
+                    new AbstractMap.SimpleEntry<>(1, "b")).iterator());
+        } finally {
+            assertThat(map.size(), is(1));
+        }
     }
 
     @Test
-    public void testContainsValueMethodCanSearchMultipleValues() {
-        String value = "aaaa";
-        String value2 = "bbbb";
-        String value3 = "ccccc";
+    public void testThatSnapshotDoesNotSeeLaterChanges() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "v" + i);
+            expected.put(i, "v" + i);
+        }
 
-        m.put(1, value);
-        m.put(2, value2);
-        m.put(3, value3);
+        NavigableMap<Integer, String> snapshot = map.snapshot();
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                map.put(key, "new" + i);
+            } else {
+                map.remove(key);
+            }
+        }
+        map.pollFirstEntry();
+        map.pollLastEntry();
+        TreeMap<Integer, String> batch = new TreeMap<>();
+        for (int i = 0; i < 2000; i += 2) {
+            batch.put(i, "batch");
+        }
+        map.putAll(batch);
+        for (Map.Entry<Integer, String> entry : map.entrySet()) {
+            entry.setValue("set");
+        }
+
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.get(0), is("set"));
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(snapshot.entrySet()));
+        assertThat(snapshot.firstKey(), is(0));
+        assertThat(snapshot.lastKey(), is(999));
+        assertThat(snapshot.subMap(100, true, 199, true).size(), is(100));
 
-        assertTrue(m.containsValue(value));
-        assertTrue(m.containsValue(value2));
-        assertTrue(m.containsValue(value3));
+        map.clear();
+        assertThat(snapshot.size(), is(1000));
     }
 
     @Test
-    public void testContainsValueMethodDoesntContainValueThatIsNotPresent() {
-        String value = "aaaa";
-        String value2 = "ffff";
-        m.put(1, value);
+    public void testThatSnapshotsTakenAtDifferentTimesAreIndependent() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.put(1, "a");
+        NavigableMap<Integer, String> first = map.snapshot();
+        map.put(1, "b");
+        map.put(2, "b");
+        NavigableMap<Integer, String> second = map.snapshot();
+        map.put(1, "c");
+        map.remove(2);
+
+        assertThat(new ArrayList<>(first.entrySet()).toString(), is("[1=a]"));
+        assertThat(new ArrayList<>(second.entrySet()).toString(), is("[1=b, 2=b]"));
+        assertThat(new ArrayList<>(map.entrySet()).toString(), is("[1=c]"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testThatSnapshotIsReadOnly() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.put(1, "a");
 
-        assertThat(m.containsValue(value2), is(false));
+        map.snapshot().put(2, "b");
     }
 
     @Test
-    public void testValueContainsMethodReturnsFalseOnWrongInputValueClass() {
-        String value = "aaaa";
-        m.put(1, value);
+    public void testThatSnapshotCanBeReadWhileTheMapChanges() throws Exception {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        for (int i = 0; i < 10000; i++) {
+            map.put(i, i);
+        }
+        NavigableMap<Integer, Integer> snapshot = map.snapshot();
+
+        Thread reader = new Thread(() -> {
+            for (int round = 0; round < 20; round++) {
+                long sum = 0;
+                for (int value : snapshot.values()) {
+                    sum += value;
+                }
+                if (sum != 49995000L) {
+                    throw new AssertionError("sum " + sum);
+                }
+            }
+        });
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        reader.setUncaughtExceptionHandler((thread, e) -> failures.add(e));
+        reader.start();
+        Random random = new Random(9);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(10000);
+            map.remove(key);
+            map.put(key, -key);
+        }
+        reader.join();
 
-        assertThat(m.containsValue(222), is(false));
+        assertThat(failures.isEmpty(), is(true));
+        assertThat(map.isValidRedBlackTree(), is(true));
     }
 
     @Test
-    public void testContainsKeyMethodDoesntContainValueThatIsNotPresent() {
-        String value = "aaaa";
-        m.put(1, value);
+    public void testThatSpliteratorIsSortedAndSized() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
 
-        System.out.println(m.containsKey(222));
+        Spliterator<Integer> keys = map.keySet().spliterator();
+        Spliterator<Map.Entry<Integer, String>> entries = map.entrySet().spliterator();
+        Spliterator<String> values = map.values().spliterator();
+
+        int sorted = Spliterator.SORTED | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        assertThat(keys.hasCharacteristics(sorted | Spliterator.DISTINCT), is(true));
+        assertThat(entries.hasCharacteristics(sorted | Spliterator.DISTINCT), is(true));
+        assertThat(values.hasCharacteristics(Spliterator.ORDERED | Spliterator.SUBSIZED), is(true));
+        assertThat(values.hasCharacteristics(Spliterator.SORTED), is(false));
+        assertThat(keys.getExactSizeIfKnown(), is(100L));
+        assertThat(keys.getComparator() == null, is(true));
     }
 
     @Test
-    public void testThatGetMethodCanReturnValueByKey() {
-        String value = "aaaa";
-        String value2 = "bbbb";
+    public void testThatSplitsAreExactAndKeepTheOrder() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        Random random = new Random(21);
+        for (int i = 0; i < 5000; i++) {
+            map.put(random.nextInt(100000), "v" + i);
+        }
 
-        m.put(1, value);
-        m.put(2, value2);
+        List<Integer> keys = new ArrayList<>();
+        collectSplits(map.keySet().spliterator(), keys, 0);
 
-        assertThat(m.get(2), is(value2));
+        assertThat(keys, is(new ArrayList<>(map.keySet())));
     }
 
-    @Test(expected = NullPointerException.class)
-    public void testThatGetMethodThrowsExceptionOnNullKey() {
-        m.get(null);
+    private void collectSplits(Spliterator<Integer> spliterator, List<Integer> keys, int depth) {
+        long size = spliterator.getExactSizeIfKnown();
+        Spliterator<Integer> prefix = depth < 12 ? spliterator.trySplit() : null;
+        if (prefix == null) {
+            int before = keys.size();
+            if (spliterator.tryAdvance(keys::add)) {
+                spliterator.forEachRemaining(keys::add);
+            }
+            assertThat((long) (keys.size() - before), is(size));
+            return;
+        }
+        assertThat(prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown(), is(size));
+        assertTrue(prefix.getExactSizeIfKnown() > 0 && spliterator.getExactSizeIfKnown() > 0);
+        collectSplits(prefix, keys, depth + 1);
+        collectSplits(spliterator, keys, depth + 1);
     }
 
-
     @Test
-    public void testThatWeCanRemoveByKey() {
-        m.put(1, "aaa");
-        m.put(2, "ccc");
-        m.put(12, "eee");
-        m.put(6, "ddd");
-        m.put(1, "vvv");
-
-        m.remove(12);
-        m.remove(6);
+    public void testThatParallelStreamsMatchSequentialOnes() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        for (int i = 0; i < 100000; i++) {
+            map.put(i, i % 7);
+        }
 
-        assertThat(m.containsKey(12), is(false));
-        assertThat(m.containsKey(6), is(false));
-        assertThat(m.containsKey(2), is(true));
+        long keySum = map.keySet().parallelStream().mapToLong(Integer::longValue).sum();
+        long valueSum = map.values().parallelStream().mapToLong(Integer::longValue).sum();
+        List<Integer> firstKeys = map.entrySet().parallelStream()
+                .filter(entry -> entry.getValue() == 0)
+                .map(Map.Entry::getKey)
+                .limit(3)
+                .collect(Collectors.toList());
+
+        assertThat(keySum, is(4999950000L));
+        assertThat(valueSum, is(map.values().stream().mapToLong(Integer::longValue).sum()));
+        assertThat(firstKeys, is(Arrays.asList(0, 7, 14)));
     }
 
-    @Test(expected = NullPointerException.class)
-    public void testRemoveWithNullKey() {
-        m.remove(null);
+    @Test(expected = ConcurrentModificationException.class)
+    public void testThatSpliteratorIsFailFast() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i);
+        }
+
+        Spliterator<Integer> spliterator = map.keySet().spliterator();
+        map.put(100, "new");
+        spliterator.forEachRemaining(key -> {
+        });
     }
 
     @Test
-    public void testThatAfterRemoveSizeWillChange() {
-        m.put(12, "eee");
-        m.put(6, "ddd");
-        m.put(1, "vvv");
-        m.put(20, "vvv");
+    public void testThatValueIndexMatchesAFullScan() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        map.put(-1, null);
+        expected.put(-1, null);
+        map.enableValueIndex();
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(1000);
+            Integer value = random.nextInt(10) == 0 ? null : random.nextInt(300);
+            switch (random.nextInt(5)) {
+                case 0:
+                    map.remove(key);
+                    expected.remove(key);
+                    break;
+                case 1:
+                    if (!map.isEmpty()) {
+                        map.pollFirstEntry();
+                        expected.pollFirstEntry();
+                    }
+                    break;
+                case 2:
+                    Iterator<Map.Entry<Integer, Integer>> entries = map.tailMap(key, true).entrySet().iterator();
+                    if (entries.hasNext()) {
+                        Map.Entry<Integer, Integer> entry = entries.next();
+                        entry.setValue(value);
+                        expected.put(entry.getKey(), value);
+                    }
+                    break;
+                default:
+                    map.put(key, value);
+                    expected.put(key, value);
+            }
+        }
+        TreeMap<Integer, Integer> batch = new TreeMap<>();
+        for (int i = 0; i < 1000; i += 2) {
+            batch.put(i, 1000 + i);
+        }
+        map.putAll(batch);
+        expected.putAll(batch);
 
-        m.remove(12);
-        m.remove(6);
+        assertThat(map.isValueIndexEnabled(), is(true));
+        for (int value = 0; value < 2000; value++) {
+            assertThat(map.containsValue(value), is(expected.containsValue(value)));
+        }
+        assertThat(map.containsValue(null), is(expected.containsValue(null)));
+        assertThat(map.containsValue("text"), is(false));
 
-        assertThat(m.size(), is(2));
+        map.disableValueIndex();
+        for (int value = 0; value < 2000; value++) {
+            assertThat(map.containsValue(value), is(expected.containsValue(value)));
+        }
     }
 
     @Test
-    public void tesThatPuttingElementWithSameKeyWillReturnPreviousValue() {
-        String a = m.put(7, "aaa");
-        String b = m.put(7, "bbb");
+    public void testThatValueIndexFollowsSnapshotsAndClear() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.enableValueIndex();
+        map.put(1, "a");
+        NavigableMap<Integer, String> snapshot = map.snapshot();
+        for (Map.Entry<Integer, String> entry : map.entrySet()) {
+            entry.setValue("b");
+        }
 
-        assertThat(b, is("aaa"));
-        assertEquals(a, null);
+        assertThat(map.containsValue("a"), is(false));
+        assertThat(map.containsValue("b"), is(true));
+        assertThat(snapshot.containsValue("a"), is(true));
 
-        String c = m.put(6, "ccc");
-        assertEquals(c, null);
+        map.clear();
+        assertThat(map.containsValue("b"), is(false));
     }
 
     @Test
-    public void testThatIfRootIsNullRemovingKeyReturnsNull() {
-        m.put(9, "aaa");
+    public void testThatValueIndexMemoryIsReported() {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "v" + (i % 100));
+        }
+        assertThat(map.valueIndexMemoryBytes(), is(0L));
 
-        assertEquals(m.remove(9), null);
+        map.enableValueIndex();
+        long hundredValues = map.valueIndexMemoryBytes();
+        map.put(5000, "another");
 
+        assertTrue(hundredValues > 100 * 48);
+        assertTrue(map.valueIndexMemoryBytes() > hundredValues);
     }
 
     @Test
-    public void testThatRemovingUnexistentKeyReturnsNull() {
-        m.put(6, "aaa");
-        m.put(444, "bbb");
-        m.put(78, "ccc");
+    public void testThatRangeAggregatesMatchABruteForceSum() {
+        Monoid<Long, Long> sum = Monoid.longSum(Long::longValue);
+        CustomTreeMap<Integer, Long> map = new CustomTreeMap<>(sum);
+        TreeMap<Integer, Long> expected = new TreeMap<>();
+        Random random = new Random(8);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000);
+            long value = random.nextInt(1000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    map.remove(key);
+                    expected.remove(key);
+                    break;
+                case 1:
+                    Map.Entry<Integer, Long> entry = map.ceilingEntry(key);
+                    if (entry != null) {
+                        map.tailMap(key, true).entrySet().iterator().next().setValue(value);
+                        expected.put(entry.getKey(), value);
+                    }
+                    break;
+                default:
+                    map.put(key, value);
+                    expected.put(key, value);
+            }
+            if (i == 10000) {
+                map.snapshot();
+            }
+        }
+        TreeMap<Integer, Long> batch = new TreeMap<>();
+        for (int i = 0; i < 3000; i += 5) {
+            batch.put(i, 7L);
+        }
+        map.putAll(batch);
+        expected.putAll(batch);
+        map.pollFirstEntry();
+        expected.pollFirstEntry();
+
+        assertThat(map.isValidRedBlackTree(), is(true));
+        assertThat(map.aggregate(sum), is(expected.values().stream().mapToLong(Long::longValue).sum()));
+        for (int i = 0; i < 500; i++) {
+            int lo = random.nextInt(3200) - 100;
+            int hi = lo + random.nextInt(1000);
+            long sumInRange = expected.subMap(lo, true, hi, true).values().stream()
+                    .mapToLong(Long::longValue).sum();
+            assertThat(map.aggregate(sum, lo, hi), is(sumInRange));
+        }
+        assertThat(map.aggregate(sum, 10, 5), is(0L));
+    }
 
-        assertEquals(m.remove(9), null);
+    @Test
+    public void testThatAggregatesKeepKeyOrder() {
+        Monoid<String, String> concat = new Monoid<String, String>() {
+            @Override
+            public String identity() {
+                return "";
+            }
+
+            @Override
+            public String lift(String value) {
+                return value;
+            }
+
+            @Override
+            public String combine(String left, String right) {
+                return left + right;
+            }
+        };
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>(concat);
+        for (int i = 25; i >= 0; i--) {
+            map.put(i, String.valueOf((char) ('a' + i)));
+        }
+        map.remove(3);
 
+        assertThat(map.aggregate(concat), is("abcefghijklmnopqrstuvwxyz"));
+        assertThat(map.aggregate(concat, 2, 6), is("cefg"));
     }
 
     @Test
-    public void testThatWeCanClearEntireMap() {
-        m.put(12, "eee");
-        m.put(6, "ddd");
-        m.put(1, "vvv");
+    public void testThatMaxAggregateIgnoresOtherKeys() {
+        Monoid<Integer, Integer> max = Monoid.maxBy(Comparator.naturalOrder());
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>(max);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, (i * 37) % 101);
+        }
+
+        assertThat(map.aggregate(max, 0, 2), is(74));
+        assertThat(map.aggregate(max, 200, 300) == null, is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatAggregateNeedsTheMonoidOfTheMap() {
+        CustomTreeMap<Integer, Long> map = new CustomTreeMap<>(Monoid.longSum(Long::longValue));
 
-        m.clear();
+        map.aggregate(Monoid.longSum(Long::longValue), 0, 10);
+    }
 
-        assertThat(m.size(), is(0));
+    @Test
+    public void testThatByteArrayKeysAreOrderedByTheComparator() {
+        CustomTreeMap<byte[], Integer> map = new CustomTreeMap<>(KeyComparators.unsignedBytes());
+        map.put(new byte[]{(byte) 0x80}, 3);
+        map.put(new byte[]{1, 2}, 2);
+        map.put(new byte[]{1}, 1);
+        map.put(new byte[]{}, 0);
+
+        assertThat(map.put(new byte[]{1, 2}, 20), is(2));
+        assertThat(map.get(new byte[]{(byte) 0x80}), is(3));
+        assertThat(new ArrayList<>(map.values()), is(Arrays.asList(0, 1, 20, 3)));
+        assertThat(map.comparator() == KeyComparators.unsignedBytes(), is(true));
+        assertThat(map.isValidRedBlackTree(), is(true));
     }
 
     @Test
-    public void testThatWeCanCopyAnotherMapToOurMap() {
-        Map<Integer, String> hashmap = new HashMap<>();
-        hashmap.put(14, "ffff");
-        hashmap.put(100, "ffff");
-        hashmap.put(232, "qwswd");
-        m.putAll(hashmap);
+    public void testThatComparatorIsUsedByViewsAndSnapshots() {
+        CustomTreeMap<String, Integer> map = new CustomTreeMap<>(KeyComparators.caseInsensitive());
+        for (String key : new String[]{"b", "C", "a", "D"}) {
+            map.put(key, key.length());
+        }
+        map.put("A", 2);
+
+        assertThat(map.size(), is(4));
+        assertThat(map.get("d"), is(1));
+        assertThat(map.get("a"), is(2));
+        assertThat(new ArrayList<>(map.headMap("c", true).keySet()), is(Arrays.asList("a", "b", "C")));
+        assertThat(new ArrayList<>(map.descendingMap().keySet()), is(Arrays.asList("D", "C", "b", "a")));
+        assertThat(map.descendingMap().comparator().compare("a", "B") > 0, is(true));
+        assertThat(map.keySet().stream().parallel().collect(Collectors.toList()),
+                is(Arrays.asList("a", "b", "C", "D")));
+        assertThat(map.snapshot().containsKey("c"), is(true));
+        assertThat(new CustomTreeMap<>(map).containsKey("B"), is(true));
+    }
 
-        assertThat(m.containsKey(232), is(true));
-        assertThat(m.containsKey(100), is(true));
+    @Test(expected = ClassCastException.class)
+    public void testThatKeysWithoutNaturalOrderingNeedAComparator() {
+        new CustomTreeMap<Object, Integer>().put(new Object(), 1);
     }
 
-    @Test (expected = NullPointerException.class)
-    public void testThatWeCantCopyAnotherMapToOurMapIfItsKeyIsNull() {
-        Map<Integer, String> hashmap = new HashMap<>();
-        hashmap.put(null, "d");
-        m.putAll(hashmap);
+    @Test
+    public void testThatUnsignedLongsPutNegativeKeysLast() {
+        CustomTreeMap<Long, Integer> map = new CustomTreeMap<>(KeyComparators.unsignedLongs());
+        map.put(-1L, 0);
+        map.put(1L, 1);
+        map.put(Long.MIN_VALUE, 2);
+
+        assertThat(new ArrayList<>(map.keySet()), is(Arrays.asList(1L, Long.MIN_VALUE, -1L)));
     }
 
-    @Test (expected = NullPointerException.class)
-    public void testThatWeCantCopyAnotherMapToOurMapIfItsNull() {
-        m.putAll(null);
+    @Test
+    public void testThatStatsCountOperations() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        map.put(0, 0);
+        map.enableStats();
+        for (int i = 1; i < 1000; i++) {
+            map.put(i, i);
+        }
+        map.put(5, 50);
+        map.get(7);
+        map.get(-1);
+        map.containsKey(3);
+        map.remove(8);
+        map.remove(-8);
+
+        TreeStats stats = map.stats();
+
+        assertThat(stats.getPutCount(), is(1000L));
+        assertThat(stats.getInsertCount(), is(999L));
+        assertThat(stats.getGetCount(), is(3L));
+        assertThat(stats.getRemoveCount(), is(2L));
+        assertThat(stats.getLookupCount(), is(1005L));
+        assertThat(stats.getComparisonsPerLookup() > 1 && stats.getComparisonsPerLookup() <= 20, is(true));
+        assertThat(stats.getRotationsPerInsert() > 0, is(true));
+        assertThat(stats.getColorFlipsPerInsert() > 0, is(true));
+        assertThat(stats.getRotationCount() >= stats.getRotationsPerInsert() * 999, is(true));
     }
 
     @Test
-    public void keySetTest() {
-        IntStream.range(0, 100).forEach(
-                i -> m.put(i, String.valueOf(i))
-        );
+    public void testThatStatsReportTheTrueDepths() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        map.enableStats();
+        assertThat(map.stats().getHeight(), is(0));
+        for (int i = 0; i < 7; i++) {
+            map.put(i, i);
+        }
+        for (int i = 100; i < 4096; i++) {
+            map.put(i, i);
+        }
 
-        Set<Integer> keySet = m.keySet();
+        TreeStats stats = map.stats();
 
-        assertEquals(keySet.size(), m.size());
+        long[] histogram = stats.getDepthHistogram();
+        assertThat(stats.getSize(), is(map.size()));
+        assertThat(histogram[1], is(1L));
+        assertThat(stats.getHeight() >= map.commonHeight(), is(true));
+        assertThat(stats.getHeight() <= 2 * 12, is(true));
+        assertThat(stats.getAverageDepth() > 1 && stats.getAverageDepth() < stats.getHeight(), is(true));
+    }
 
+    @Test(expected = IllegalStateException.class)
+    public void testThatStatsMustBeEnabled() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        map.enableStats();
+        map.disableStats();
+
+        map.stats();
+    }
 
-        for (Integer key : keySet){
-            assertThat(m.containsKey(key), is(true));
+    @Test
+    public void testThatStatsMBeanIsRegistered() throws Exception {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        ObjectName name = new ObjectName("com.epam.java.se:type=CustomTreeMap,name=test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        map.registerStatsMBean(name);
+        try {
+            map.put(1, 1);
+            map.get(1);
+            map.stats();
+
+            assertThat(server.getAttribute(name, "PutCount"), is((Object) 1L));
+            assertThat(server.getAttribute(name, "GetCount"), is((Object) 1L));
+            assertThat(server.getAttribute(name, "Height"), is((Object) 1));
+            server.invoke(name, "reset", null, null);
+            assertThat(map.stats().getPutCount(), is(0L));
+        } finally {
+            server.unregisterMBean(name);
         }
     }
 
     @Test
-    public void valuesTest() {
-        IntStream.range(0, 100).forEach(
-                i -> m.put(i, String.valueOf(i))
-        );
+    public void testThatStatsMBeanReportsLookupDepthsWithoutAWalk() throws Exception {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        ObjectName name = new ObjectName("com.epam.java.se:type=CustomTreeMap,name=depths");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        map.registerStatsMBean(name);
+        try {
+            for (int i = 0; i < 4096; i++) {
+                map.put(i, i);
+            }
+            for (int i = 0; i < 4096; i++) {
+                map.get(i);
+            }
+
+            int maxDepth = (Integer) server.getAttribute(name, "MaxLookupDepth");
+            assertThat(server.getAttribute(name, "Height"), is((Object) (-1)));
+            assertThat(maxDepth, is(map.stats().getHeight()));
+            assertThat(map.stats().getMaxLookupDepth(), is(maxDepth));
+            server.invoke(name, "reset", null, null);
+            assertThat(server.getAttribute(name, "MaxLookupDepth"), is((Object) 0));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testThatBatchesMatchSingleOperations() {
+        Random random = new Random(3);
+        for (int batchSize : new int[]{1, 10, 300, 5000}) {
+            CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int i = 0; i < 2000; i++) {
+                int key = random.nextInt(10000);
+                map.put(key, i);
+                expected.put(key, i);
+            }
+            for (int round = 0; round < 5; round++) {
+                Integer[] keys = random.ints(batchSize, 0, 10000).boxed().distinct().sorted().toArray(Integer[]::new);
+                Integer[] values = Arrays.stream(keys).map(key -> -key).toArray(Integer[]::new);
+                int absent = (int) Arrays.stream(keys).filter(key -> !expected.containsKey(key)).count();
+                Arrays.stream(keys).forEach(key -> expected.put(key, -key));
+                assertThat(map.putBatch(keys, values), is(absent));
+
+                Integer[] lookup = random.ints(batchSize, -5, 10005).boxed().distinct().sorted().toArray(Integer[]::new);
+                Integer[] found = new Integer[lookup.length];
+                int present = (int) Arrays.stream(lookup).filter(expected::containsKey).count();
+                assertThat(map.getAll(lookup, found), is(present));
+                for (int i = 0; i < lookup.length; i++) {
+                    assertEquals(expected.get(lookup[i]), found[i]);
+                }
+
+                Integer[] removed = random.ints(batchSize, 0, 10000).boxed().distinct().sorted().toArray(Integer[]::new);
+                present = (int) Arrays.stream(removed).filter(expected::containsKey).count();
+                Arrays.stream(removed).forEach(expected::remove);
+                assertThat(map.removeBatch(removed), is(present));
+
+                assertThat(new ArrayList<>(map.entrySet()), is(new ArrayList<>(expected.entrySet())));
+                assertTrue(map.isValidRedBlackTree());
+            }
+        }
+    }
+
+    @Test
+    public void testThatBatchesKeepSnapshotsAndAggregates() {
+        Monoid<Integer, Long> sum = Monoid.longSum(Integer::longValue);
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>(sum);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, 1);
+        }
+        NavigableMap<Integer, Integer> snapshot = map.snapshot();
+
+        map.putBatch(new Integer[]{5, 50, 150}, new Integer[]{10, 10, 10});
+        map.removeBatch(new Integer[]{0, 1, 2, 99});
 
-        Collection<String> valuesColl = m.values();
+        assertThat(map.aggregate(sum), is(96L + 9 + 9 + 10));
+        assertThat(snapshot.size(), is(100));
+        assertThat(snapshot.get(5), is(1));
+        assertThat(snapshot.containsKey(0), is(true));
+    }
 
-        assertEquals(valuesColl.size(), m.size());
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatBatchKeysMustBeAscending() {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>();
+        map.put(1, 1);
 
+        try {
+            map.putBatch(new Integer[]{1, 3, 2}, new Integer[]{0, 0, 0});
+        } finally {
+            assertThat(map.get(1), is(1));
+            assertThat(map.size(), is(1));
+        }
+    }
 
-        for (String value : valuesColl){
-            assertThat(m.containsValue(value), is(true));
+    private static CustomTreeMap<Integer, Integer> randomMap(Random random, int size, int bound,
+                                                             Monoid<Integer, Long> sum) {
+        CustomTreeMap<Integer, Integer> map = new CustomTreeMap<>(sum);
+        while (map.size() < size) {
+            int key = random.nextInt(bound);
+            map.put(key, key % 7);
         }
+        return map;
     }
+
     @Test
-    public void entrySetTest() {
-        IntStream.range(0, 1000).forEach(
-                i -> m.put(i, String.valueOf(i))
-        );
+    public void testThatSplitAndJoinMatchTreeMapAndLeaveTheSourceUnchanged() {
+        Monoid<Integer, Long> sum = Monoid.longSum(Integer::longValue);
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            CustomTreeMap<Integer, Integer> map = randomMap(random, random.nextInt(300), 1000, sum);
+            TreeMap<Integer, Integer> expected = new TreeMap<>(map);
+            int key = random.nextInt(1100) - 50;
+
+            List<CustomTreeMap<Integer, Integer>> halves = map.split(key);
+            CustomTreeMap<Integer, Integer> left = halves.get(0);
+            CustomTreeMap<Integer, Integer> right = halves.get(1);
+            assertThat(new TreeMap<>(left), is(expected.headMap(key)));
+            assertThat(new TreeMap<>(right), is(expected.tailMap(key)));
+            assertThat(left.isValidRedBlackTree() && right.isValidRedBlackTree(), is(true));
+            assertThat(left.size() + right.size(), is(expected.size()));
+            assertThat(left.aggregate(sum) + right.aggregate(sum), is(map.aggregate(sum)));
+
+            CustomTreeMap<Integer, Integer> joined = CustomTreeMap.join(left, right);
+            assertThat(new TreeMap<>(joined), is(expected));
+            assertThat(joined.isValidRedBlackTree(), is(true));
+            assertThat(joined.aggregate(sum), is(map.aggregate(sum)));
+
+            left.put(key - 1, -1);
+            right.clear();
+            joined.remove(key);
+            assertThat(new TreeMap<>(map), is(expected));
+            assertThat(map.isValidRedBlackTree(), is(true));
+        }
+    }
 
-        Set<Map.Entry<Integer, String>> entrySet = m.entrySet();
+    @Test
+    public void testThatJoinHandlesTreesOfDifferentHeights() {
+        for (int small = 0; small < 20; small++) {
+            CustomTreeMap<Integer, Integer> low = new CustomTreeMap<>();
+            CustomTreeMap<Integer, Integer> high = new CustomTreeMap<>();
+            for (int i = 0; i < small; i++) {
+                low.put(i, i);
+            }
+            for (int i = 1000; i < 3000; i++) {
+                high.put(i, i);
+            }
+            CustomTreeMap<Integer, Integer> joined = CustomTreeMap.join(low, high);
+            assertThat(joined.size(), is(small + 2000));
+            assertThat(joined.isValidRedBlackTree(), is(true));
+            assertThat(joined.rank(1000), is(small));
+            joined = CustomTreeMap.join(new CustomTreeMap<>(), low);
+            assertThat(joined.size(), is(small));
+            assertThat(joined.isValidRedBlackTree(), is(true));
+        }
+    }
 
-        assertEquals(entrySet.size(), m.size());
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatJoinRejectsOverlappingKeys() {
+        CustomTreeMap<Integer, Integer> left = new CustomTreeMap<>();
+        CustomTreeMap<Integer, Integer> right = new CustomTreeMap<>();
+        left.put(5, 5);
+        right.put(5, 5);
+        CustomTreeMap.join(left, right);
+    }
 
-        for (Map.Entry<Integer, String> entry : entrySet) {
-            assertThat(m.containsKey(entry.getKey()), is(true));
-            assertThat(m.containsValue(entry.getValue()), is(true));
+    @Test
+    public void testThatSetOperationsMatchTreeMap() {
+        Monoid<Integer, Long> sum = Monoid.longSum(Integer::longValue);
+        Random random = new Random(8);
+        for (int round = 0; round < 100; round++) {
+            CustomTreeMap<Integer, Integer> a = randomMap(random, random.nextInt(400), 800, sum);
+            CustomTreeMap<Integer, Integer> b = new CustomTreeMap<>(sum);
+            for (int i = random.nextInt(400); i > 0; i--) {
+                int key = random.nextInt(800);
+                b.put(key, -key);
+            }
+            TreeMap<Integer, Integer> expectedA = new TreeMap<>(a);
+            TreeMap<Integer, Integer> expectedB = new TreeMap<>(b);
+
+            TreeMap<Integer, Integer> union = new TreeMap<>(a);
+            union.putAll(b);
+            TreeMap<Integer, Integer> intersection = new TreeMap<>(a);
+            intersection.keySet().retainAll(b.keySet());
+            TreeMap<Integer, Integer> difference = new TreeMap<>(a);
+            difference.keySet().removeAll(b.keySet());
+
+            for (CustomTreeMap<Integer, Integer> result : Arrays.asList(a.union(b), a.intersection(b),
+                    a.difference(b))) {
+                assertThat(result.isValidRedBlackTree(), is(true));
+                assertThat(result.aggregate(sum), is(result.values().stream().mapToLong(v -> v).sum()));
+            }
+            assertThat(new TreeMap<>(a.union(b)), is(union));
+            assertThat(new TreeMap<>(a.intersection(b)), is(intersection));
+            assertThat(new TreeMap<>(a.difference(b)), is(difference));
+            assertThat(a.union(b).size(), is(union.size()));
+            assertThat(new TreeMap<>(a), is(expectedA));
+            assertThat(new TreeMap<>(b), is(expectedB));
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testThatEntriesOfAJoinedMapWriteToIt() {
+        CustomTreeMap<Integer, String> left = new CustomTreeMap<>();
+        CustomTreeMap<Integer, String> right = new CustomTreeMap<>();
+        for (int i = 0; i < 10; i++) {
+            left.put(i, "l");
+            right.put(i + 10, "r");
+        }
+        CustomTreeMap<Integer, String> joined = CustomTreeMap.join(left, right);
+        for (Map.Entry<Integer, String> entry : joined.entrySet()) {
+            entry.setValue("j");
+        }
+        joined.put(3, "put");
+
+        assertThat(joined.get(15), is("j"));
+        assertThat(joined.get(3), is("put"));
+        assertThat(left.get(3), is("l"));
+        assertThat(right.get(15), is("r"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.epam.java.se;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IntCustomTreeMapTest {
+
+    private IntCustomTreeMap<String> m;
+
+    @Before
+    public void init() {
+        m = new IntCustomTreeMap<>();
+    }
+
+    @Test
+    public void testThatNewMapIsEmpty() {
+        assertThat(m.isEmpty(), is(true));
+        assertThat(m.size(), is(0));
+    }
+
+    @Test
+    public void testThatWeCanPutGetAndRemove() {
+        assertNull(m.put(5, "a"));
+        assertThat(m.put(5, "b"), is("a"));
+        m.put(Integer.MIN_VALUE, "min");
+        m.put(Integer.MAX_VALUE, "max");
+
+        assertThat(m.get(5), is("b"));
+        assertThat(m.get(Integer.MIN_VALUE), is("min"));
+        assertThat(m.containsKey(6), is(false));
+        assertThat(m.remove(5), is("b"));
+        assertNull(m.remove(5));
+        assertThat(m.size(), is(2));
+    }
+
+    @Test
+    public void testThatMapMatchesTreeMapUnderRandomChurn() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) > 0) {
+                m.put(key, String.valueOf(i));
+                expected.put(key, String.valueOf(i));
+            } else {
+                assertEquals(expected.remove(key), m.remove(key));
+            }
+        }
+
+        assertThat(m.isValidRedBlackTree(), is(true));
+        assertThat(m.size(), is(expected.size()));
+        assertThat(m.firstKey(), is(expected.firstKey()));
+        assertThat(m.lastKey(), is(expected.lastKey()));
+        for (int i = 0; i < 500; i++) {
+            int key = random.nextInt(3200) - 100;
+            assertEquals(expected.get(key), m.get(key));
+            assertEquals(expected.floorKey(key), keyOf(m.floorEntry(key)));
+            assertEquals(expected.lowerKey(key), keyOf(m.lowerEntry(key)));
+            assertEquals(expected.ceilingKey(key), keyOf(m.ceilingEntry(key)));
+            assertEquals(expected.higherKey(key), keyOf(m.higherEntry(key)));
+            assertThat(m.rank(key), is(expected.headMap(key).size()));
+            assertThat(m.countInRange(key, (key + 200)), is(expected.subMap(key, true, (key + 200), true).size()));
+        }
+        assertThat(m.select(10), is(new ArrayList<>(expected.keySet()).get(10)));
+    }
+
+    @Test
+    public void testThatForEachInRangeVisitsKeysInOrder() {
+        for (int i = 0; i < 100; i++) {
+            m.put(i * 3, String.valueOf(i));
+        }
+        List<Integer> keys = new ArrayList<>();
+
+        m.forEachInRange(10, 30, (key, value) -> keys.add(key));
+
+        assertEquals(Arrays.<Integer>asList(12, 15, 18, 21, 24, 27, 30), keys);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testThatFirstKeyThrowsExceptionOnEmptyMap() {
+        m.firstKey();
+    }
+
+    private static Integer keyOf(IntCustomTreeMap.Entry<String> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+}
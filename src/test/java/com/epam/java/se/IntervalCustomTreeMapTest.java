@@ -0,0 +1,100 @@
+package com.epam.java.se;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertNull;
+
+public class IntervalCustomTreeMapTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatEmptyIntervalsAreRejected() {
+        new Interval<>(2, 1);
+    }
+
+    @Test
+    public void testThatIntervalsWithTheSameStartAreKeptApart() {
+        IntervalCustomTreeMap<Integer, String> m = new IntervalCustomTreeMap<>();
+        m.put(1, 5, "a");
+        m.put(1, 3, "b");
+        assertThat(m.put(1, 5, "c"), is("a"));
+
+        assertThat(m.size(), is(2));
+        assertThat(m.get(new Interval<>(1, 5)), is("c"));
+        assertThat(m.keySet().iterator().next(), is(new Interval<>(1, 3)));
+        assertThat(m.remove(new Interval<>(1, 3)), is("b"));
+        assertNull(m.remove(new Interval<>(1, 3)));
+        assertThat(m.maxEnd(), is(5));
+    }
+
+    @Test
+    public void testThatStabbingQueryFindsContainingIntervals() {
+        IntervalCustomTreeMap<Integer, String> m = new IntervalCustomTreeMap<>();
+        m.put(0, 10, "a");
+        m.put(2, 3, "b");
+        m.put(4, 8, "c");
+        m.put(5, 5, "d");
+        m.put(9, 12, "e");
+        List<String> found = new ArrayList<>();
+
+        m.forEachContaining(5, (interval, value) -> found.add(value));
+
+        assertThat(found, is(Arrays.asList("a", "c", "d")));
+    }
+
+    @Test
+    public void testThatOverlapQueriesMatchBruteForce() {
+        IntervalCustomTreeMap<Integer, Integer> m = new IntervalCustomTreeMap<>();
+        List<Interval<Integer>> intervals = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(10000);
+            Interval<Integer> interval = new Interval<>(start, start + random.nextInt(200));
+            if (m.put(interval, i) == null) {
+                intervals.add(interval);
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            Interval<Integer> removed = intervals.remove(random.nextInt(intervals.size()));
+            m.remove(removed);
+        }
+        Collections.sort(intervals);
+
+        for (int i = 0; i < 200; i++) {
+            int lo = random.nextInt(10300) - 100;
+            int hi = lo + random.nextInt(50);
+            List<Interval<Integer>> expected = intervals.stream()
+                    .filter(interval -> interval.overlaps(lo, hi))
+                    .collect(Collectors.toList());
+            List<Interval<Integer>> actual = m.overlapping(lo, hi)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test
+    public void testThatOverlappingStreamIsLazy() {
+        IntervalCustomTreeMap<Integer, Integer> m = new IntervalCustomTreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            m.put(i, i + 10, i);
+        }
+
+        assertThat(m.overlapping(100, 200).findFirst().get().getValue(), is(90));
+        assertThat(m.overlapping(2000, 3000).count(), is(0L));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testThatOverlappingStreamIsFailFast() {
+        IntervalCustomTreeMap<Integer, Integer> m = new IntervalCustomTreeMap<>();
+        for (int i = 0; i < 10; i++) {
+            m.put(i, i + 10, i);
+        }
+
+        m.overlapping(0, 100).forEach(entry -> m.put(entry.getValue() + 100, 200, 0));
+    }
+}
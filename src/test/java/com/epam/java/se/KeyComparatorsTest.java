@@ -0,0 +1,52 @@
+package com.epam.java.se;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeyComparatorsTest {
+
+    @Test
+    public void testThatUnsignedBytesCompareLikeUnsignedValues() {
+        Comparator<byte[]> comparator = KeyComparators.unsignedBytes();
+
+        assertThat(comparator.compare(new byte[]{1, (byte) 0xFF}, new byte[]{1, 0x7F}) > 0, is(true));
+        assertThat(comparator.compare(new byte[]{1}, new byte[]{1, 0}) < 0, is(true));
+        assertThat(comparator.compare(new byte[]{1, 2}, new byte[]{1, 2}), is(0));
+    }
+
+    @Test
+    public void testThatCaseInsensitiveOrderMatchesTheJdk() {
+        String alphabet = "aAbBzZ@[`{09 éÉıIKKkß";
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            String left = randomString(random, alphabet);
+            String right = randomString(random, alphabet);
+            int expected = Integer.signum(String.CASE_INSENSITIVE_ORDER.compare(left, right));
+            int actual = Integer.signum(KeyComparators.caseInsensitive().compare(left, right));
+            assertThat(left + " " + right, actual, is(expected));
+        }
+    }
+
+    @Test
+    public void testThatUnsignedLongsCompareLikeUnsignedValues() {
+        Comparator<Long> comparator = KeyComparators.unsignedLongs();
+
+        assertThat(comparator.compare(-1L, 1L) > 0, is(true));
+        assertThat(comparator.compare(Long.MIN_VALUE, Long.MAX_VALUE) > 0, is(true));
+        assertThat(comparator.compare(3L, 3L), is(0));
+    }
+
+    private static String randomString(Random random, String alphabet) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
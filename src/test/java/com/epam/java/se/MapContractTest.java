@@ -0,0 +1,485 @@
+package com.epam.java.se;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the Map contract, run against every engine through createMap().
+ */
+@FixMethodOrder
+public abstract class MapContractTest {
+
+    protected Map<Integer, String> m;
+
+    @Before
+    public void init() {
+        m = createMap();
+    }
+
+    /**
+     * @return the empty map the tests run against.
+     */
+    protected abstract Map<Integer, String> createMap();
+
+    protected abstract boolean isValidRedBlackTree(Map<Integer, String> map);
+
+    @Test
+    public void testThatWeCanCreate() {
+        assertThat(m, is(notNullValue()));
+    }
+
+    @Test
+    public void testThatNewMapIsEmpty() {
+        assertThat(m.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testThatNotNewMapIsNotEmpty() {
+        m.put(10, "abc");
+        m.put(20, "rtr");
+
+        assertThat(m.isEmpty(), is(false));
+    }
+
+    @Test
+    public void testThatOnNewMapContainKeyMethodReturnFalseForAnyObject() {
+        assertThat(m.containsKey(new Integer(1)), is(false));
+    }
+
+    @Test
+    public void testThatWeCanPutKeyValuePairAndCanCheckIt() {
+        m.put(new Integer(3), "abc");
+        m.put(new Integer(5), "rtr");
+        m.put(new Integer(23423), "efefe");
+
+        assertThat(m.containsKey(3), is(true));
+        assertThat(m.containsKey(5), is(true));
+        assertThat(m.containsKey(23423), is(true));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testThatWeCantPutNullKey() {
+        m.put(null, "abc");
+    }
+
+    @Test
+    public void testThatWeCanPutNullValue() {
+        m.put(1, null);
+        assertThat(m.containsKey(1), is(true));
+    }
+
+    @Test
+    public void testThatMapCanPutPairWithKeyThatAlreadyPresented() {
+
+        String oldValue = "aaaa";
+        String newValue = "bbbb";
+
+        m.put(1, oldValue);
+        m.put(1, newValue);
+
+        assertFalse(m.containsValue(oldValue));
+        assertTrue(m.containsValue(newValue));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testThatContainsKeyMethodThrowsExceptionOnNullKey() {
+        m.containsKey(null);
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testThatContainsKeyMethodThrowsExceptionOnWrongKeyClass() {
+        m.put(1, "");
+        m.containsKey(new String(""));
+    }
+
+    @Test
+    public void testContainsValueMethodWorksProperlyOn() {
+        String value = "aaaa";
+
+        m.put(1, value);
+
+        assertTrue(m.containsValue(value));
+    }
+
+    @Test
+    public void testContainsValueMethodWorksProperlyOnNullInputValue() {
+        String value = "aaaa";
+
+        m.put(1, value);
+
+        assertFalse(m.containsValue(null));
+    }
+
+    @Test
+    public void testThatWeCanPut1000DifferentKeysInMap() {
+        IntStream.range(1, 100000).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        IntStream.range(1, 100000).forEach(
+                i -> assertTrue(m.containsKey(i))
+        );
+        System.out.println(m.size());
+    }
+
+    @Test
+    public void testThatMapCalculateItsSizeProperly() {
+        m.put(new Integer(6), "abc");
+        m.put(new Integer(8), "ferf");
+        m.put(new Integer(9), "wef");
+
+        assertThat(m.size(), is(3));
+    }
+
+    @Test
+    public void testThatTreeStaysValidRedBlackTreeUnderRandomChurn() {
+        Map<Integer, String> map = createMap();
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                map.put(key, String.valueOf(key));
+                expected.put(key, String.valueOf(key));
+            } else {
+                map.remove(key);
+                expected.remove(key);
+            }
+        }
+
+        assertThat(isValidRedBlackTree(map), is(true));
+        assertThat(map.size(), is(expected.size()));
+        for (Integer key : expected.keySet()) {
+            assertThat(map.get(key), is(expected.get(key)));
+        }
+    }
+
+    @Test
+    public void testContainsValueMethodCanSearchMultipleValues() {
+        String value = "aaaa";
+        String value2 = "bbbb";
+        String value3 = "ccccc";
+
+        m.put(1, value);
+        m.put(2, value2);
+        m.put(3, value3);
+
+        assertTrue(m.containsValue(value));
+        assertTrue(m.containsValue(value2));
+        assertTrue(m.containsValue(value3));
+    }
+
+    @Test
+    public void testContainsValueMethodDoesntContainValueThatIsNotPresent() {
+        String value = "aaaa";
+        String value2 = "ffff";
+        m.put(1, value);
+
+        assertThat(m.containsValue(value2), is(false));
+    }
+
+    @Test
+    public void testValueContainsMethodReturnsFalseOnWrongInputValueClass() {
+        String value = "aaaa";
+        m.put(1, value);
+
+        assertThat(m.containsValue(222), is(false));
+    }
+
+    @Test
+    public void testContainsKeyMethodDoesntContainValueThatIsNotPresent() {
+        String value = "aaaa";
+        m.put(1, value);
+
+        System.out.println(m.containsKey(222));
+    }
+
+    @Test
+    public void testThatGetMethodCanReturnValueByKey() {
+        String value = "aaaa";
+        String value2 = "bbbb";
+
+        m.put(1, value);
+        m.put(2, value2);
+
+        assertThat(m.get(2), is(value2));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testThatGetMethodThrowsExceptionOnNullKey() {
+        m.get(null);
+    }
+
+    @Test
+    public void testThatWeCanRemoveByKey() {
+        m.put(1, "aaa");
+        m.put(2, "ccc");
+        m.put(12, "eee");
+        m.put(6, "ddd");
+        m.put(1, "vvv");
+
+        m.remove(12);
+        m.remove(6);
+
+        assertThat(m.containsKey(12), is(false));
+        assertThat(m.containsKey(6), is(false));
+        assertThat(m.containsKey(2), is(true));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testRemoveWithNullKey() {
+        m.remove(null);
+    }
+
+    @Test
+    public void testThatAfterRemoveSizeWillChange() {
+        m.put(12, "eee");
+        m.put(6, "ddd");
+        m.put(1, "vvv");
+        m.put(20, "vvv");
+
+        m.remove(12);
+        m.remove(6);
+
+        assertThat(m.size(), is(2));
+    }
+
+    @Test
+    public void tesThatPuttingElementWithSameKeyWillReturnPreviousValue() {
+        String a = m.put(7, "aaa");
+        String b = m.put(7, "bbb");
+
+        assertThat(b, is("aaa"));
+        assertEquals(a, null);
+
+        String c = m.put(6, "ccc");
+        assertEquals(c, null);
+    }
+
+    @Test
+    public void testThatRemovingKeyReturnsPreviousValue() {
+        m.put(9, "aaa");
+
+        assertEquals(m.remove(9), "aaa");
+        assertEquals(m.remove(9), null);
+
+    }
+
+    @Test
+    public void testThatRemovingUnexistentKeyReturnsNull() {
+        m.put(6, "aaa");
+        m.put(444, "bbb");
+        m.put(78, "ccc");
+
+        assertEquals(m.remove(9), null);
+
+    }
+
+    @Test
+    public void testThatWeCanClearEntireMap() {
+        m.put(12, "eee");
+        m.put(6, "ddd");
+        m.put(1, "vvv");
+
+        m.clear();
+
+        assertThat(m.size(), is(0));
+    }
+
+    @Test
+    public void testThatWeCanCopyAnotherMapToOurMap() {
+        Map<Integer, String> hashmap = new HashMap<>();
+        hashmap.put(14, "ffff");
+        hashmap.put(100, "ffff");
+        hashmap.put(232, "qwswd");
+        m.putAll(hashmap);
+
+        assertThat(m.containsKey(232), is(true));
+        assertThat(m.containsKey(100), is(true));
+    }
+
+    @Test (expected = NullPointerException.class)
+    public void testThatWeCantCopyAnotherMapToOurMapIfItsKeyIsNull() {
+        Map<Integer, String> hashmap = new HashMap<>();
+        hashmap.put(null, "d");
+        m.putAll(hashmap);
+    }
+
+    @Test (expected = NullPointerException.class)
+    public void testThatWeCantCopyAnotherMapToOurMapIfItsNull() {
+        m.putAll(null);
+    }
+
+    @Test
+    public void keySetTest() {
+        IntStream.range(0, 100).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        Set<Integer> keySet = m.keySet();
+
+        assertEquals(keySet.size(), m.size());
+
+
+        for (Integer key : keySet){
+            assertThat(m.containsKey(key), is(true));
+        }
+    }
+
+    @Test
+    public void valuesTest() {
+        IntStream.range(0, 100).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        Collection<String> valuesColl = m.values();
+
+        assertEquals(valuesColl.size(), m.size());
+
+
+        for (String value : valuesColl){
+            assertThat(m.containsValue(value), is(true));
+        }
+    }
+
+    @Test
+    public void entrySetTest() {
+        IntStream.range(0, 1000).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        Set<Map.Entry<Integer, String>> entrySet = m.entrySet();
+
+        assertEquals(entrySet.size(), m.size());
+
+        for (Map.Entry<Integer, String> entry : entrySet) {
+            assertThat(m.containsKey(entry.getKey()), is(true));
+            assertThat(m.containsValue(entry.getValue()), is(true));
+        }
+    }
+
+    @Test
+    public void testThatKeySetIteratesKeysInAscendingOrder() {
+        List<Integer> keys = Arrays.asList(50, 3, 77, 12, 1, 99, 42);
+        keys.forEach(i -> m.put(i, String.valueOf(i)));
+
+        List<Integer> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted);
+
+        assertEquals(sorted, new ArrayList<>(m.keySet()));
+    }
+
+    @Test
+    public void testThatViewsAreLiveAndReturnedOnce() {
+        Set<Integer> keySet = m.keySet();
+        Collection<String> valuesColl = m.values();
+
+        m.put(5, "five");
+        m.put(2, "two");
+
+        assertThat(keySet.size(), is(2));
+        assertThat(keySet.contains(5), is(true));
+        assertEquals(Arrays.asList("two", "five"), new ArrayList<>(valuesColl));
+        assertTrue(keySet == m.keySet());
+    }
+
+    @Test
+    public void testThatIteratorRemoveRemovesFromMap() {
+        IntStream.range(0, 1000).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        Iterator<Integer> iterator = m.keySet().iterator();
+        int visited = 0;
+        while (iterator.hasNext()) {
+            Integer key = iterator.next();
+            assertThat(key, is(visited++));
+            if (key % 2 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertThat(visited, is(1000));
+        assertThat(m.size(), is(500));
+        assertThat(m.containsKey(10), is(false));
+        assertThat(m.containsKey(11), is(true));
+        assertThat(isValidRedBlackTree(m), is(true));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testThatIteratorIsFailFast() {
+        IntStream.range(0, 10).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        for (Integer key : m.keySet()) {
+            m.remove(key);
+        }
+    }
+
+    @Test
+    public void testThatEntrySetValueWritesThroughToMap() {
+        IntStream.range(0, 10).forEach(
+                i -> m.put(i, String.valueOf(i))
+        );
+
+        for (Map.Entry<Integer, String> entry : m.entrySet()) {
+            entry.setValue("v" + entry.getKey());
+        }
+
+        assertThat(m.get(7), is("v7"));
+        assertThat(m.entrySet().contains(new AbstractMap.SimpleEntry<>(7, "v7")), is(true));
+        assertThat(m.entrySet().contains(new AbstractMap.SimpleEntry<>(7, "7")), is(false));
+    }
+
+    @Test
+    public void testThatEntryOfRemovedKeyNoLongerWritesToMap() {
+        m.put(1, "a");
+        m.put(2, "b");
+        Map.Entry<Integer, String> entry = m.entrySet().iterator().next();
+        m.remove(1);
+        m.put(3, "c");
+
+        assertThat(entry.getValue(), is("a"));
+        assertThat(entry.setValue("X"), is("a"));
+        assertThat(entry.getValue(), is("X"));
+        assertThat(m.get(2), is("b"));
+        assertThat(m.get(3), is("c"));
+        assertThat(m.size(), is(2));
+    }
+
+    @Test
+    public void testThatPutReturnsPreviousValueOfItsOwnKey() {
+        m.put(1, null);
+        m.put(2, "two");
+
+        assertEquals(m.put(1, "one"), null);
+        assertThat(m.put(2, "second"), is("two"));
+        assertEquals(m.put(3, "three"), null);
+        assertThat(m.put(1, "first"), is("one"));
+        assertThat(m.size(), is(3));
+    }
+
+    @Test
+    public void testThatContainsValueHandlesNullValuesDeepInTheTree() {
+        for (int i = 0; i < 100; i++) {
+            m.put(i, i == 77 ? null : "v" + i);
+        }
+
+        assertTrue(m.containsValue(null));
+        assertTrue(m.containsValue("v99"));
+        assertFalse(m.containsValue("v77"));
+    }
+}
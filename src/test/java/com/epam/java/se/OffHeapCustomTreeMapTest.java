@@ -0,0 +1,109 @@
+package com.epam.java.se;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapCustomTreeMapTest {
+
+    private OffHeapCustomTreeMap<Long, Double> m;
+
+    @Before
+    public void init() {
+        m = new OffHeapCustomTreeMap<>(FixedWidthCodec.LONG, FixedWidthCodec.DOUBLE);
+    }
+
+    @After
+    public void close() {
+        m.close();
+    }
+
+    @Test
+    public void testThatWeCanPutGetAndRemove() {
+        assertNull(m.put(3L, 1.5));
+        assertThat(m.put(3L, 2.5), is(1.5));
+        m.put(-7L, 0.0);
+
+        assertThat(m.get(3L), is(2.5));
+        assertThat(m.containsKey(-7L), is(true));
+        assertThat(m.remove(3L), is(2.5));
+        assertNull(m.get(3L));
+        assertThat(m.size(), is(1));
+    }
+
+    @Test
+    public void testThatMapMatchesTreeMapAcrossSeveralChunks() {
+        TreeMap<Long, Double> expected = new TreeMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 60000; i++) {
+            long key = random.nextInt(40000);
+            if (random.nextInt(4) > 0) {
+                m.put(key, (double) i);
+                expected.put(key, (double) i);
+            } else {
+                assertEquals(expected.remove(key), m.remove(key));
+            }
+        }
+
+        assertThat(m.isValidRedBlackTree(), is(true));
+        assertThat(m.size(), is(expected.size()));
+        assertThat(m.firstKey(), is(expected.firstKey()));
+        assertThat(m.lastKey(), is(expected.lastKey()));
+        List<Map.Entry<Long, Double>> entries = new ArrayList<>();
+        m.forEach(entries::add);
+        assertEquals(new ArrayList<>(expected.entrySet()), entries);
+        assertTrue(m.offHeapBytes() > 0);
+    }
+
+    @Test
+    public void testThatDoubleKeysAreOrderedLikeTreeMap() {
+        TreeMap<Double, Long> expected = new TreeMap<>();
+        try (OffHeapCustomTreeMap<Double, Long> doubles =
+                     new OffHeapCustomTreeMap<>(FixedWidthCodec.DOUBLE, FixedWidthCodec.LONG)) {
+            long i = 0;
+            for (double key : new double[]{2.5, -0.0, Double.NaN, 0.0, -1.0, Double.NEGATIVE_INFINITY, 1e300}) {
+                doubles.put(key, i);
+                expected.put(key, i++);
+            }
+
+            assertThat(doubles.size(), is(expected.size()));
+            assertThat(doubles.get(0.0), is(3L));
+            assertThat(doubles.get(-0.0), is(1L));
+            List<Double> keys = new ArrayList<>();
+            doubles.forEach(entry -> keys.add(entry.getKey()));
+            assertEquals(new ArrayList<>(expected.keySet()), keys);
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testThatNullValuesAreRejected() {
+        m.put(1L, null);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testThatIteratorIsFailFast() {
+        m.put(1L, 1.0);
+        m.put(2L, 2.0);
+
+        for (Map.Entry<Long, Double> entry : m) {
+            m.put(entry.getKey() + 10, 0.0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThatClosedMapCannotBeUsed() {
+        m.put(1L, 1.0);
+        m.close();
+
+        assertThat(m.isClosed(), is(true));
+        m.get(1L);
+    }
+}
@@ -0,0 +1,116 @@
+package com.epam.java.se;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SnapshotMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SnapshotMap<Long, String> writeAndOpen(CustomTreeMap<Long, String> map) throws IOException {
+        Path path = folder.getRoot().toPath().resolve("map.snapshot");
+        map.writeSnapshot(path, SnapshotSerializer.LONG, SnapshotSerializer.STRING);
+        return SnapshotMap.open(path, SnapshotSerializer.LONG, SnapshotSerializer.STRING);
+    }
+
+    @Test
+    public void testThatSnapshotServesLookupsAndRanges() throws IOException {
+        CustomTreeMap<Long, String> map = new CustomTreeMap<>();
+        IntStream.range(0, 5000).forEach(
+                i -> map.put(i * 2L, "value-" + i)
+        );
+        map.put(7L, null);
+
+        SnapshotMap<Long, String> snapshot = writeAndOpen(map);
+
+        assertThat(snapshot.size(), is(5001));
+        assertThat(snapshot.get(400L), is("value-200"));
+        assertNull(snapshot.get(401L));
+        assertThat(snapshot.containsKey(7L), is(true));
+        assertNull(snapshot.get(7L));
+        assertThat(snapshot.firstKey(), is(0L));
+        assertThat(snapshot.lastKey(), is(9998L));
+        assertThat(snapshot.floorKey(401L), is(400L));
+        assertThat(snapshot.ceilingKey(401L), is(402L));
+        assertNull(snapshot.ceilingKey(9999L));
+        assertThat(snapshot.countInRange(5L, 10L), is(4));
+
+        List<Long> keys = new ArrayList<>();
+        snapshot.forEachInRange(5L, 10L, (key, value) -> keys.add(key));
+        assertEquals(Arrays.asList(6L, 7L, 8L, 10L), keys);
+    }
+
+    @Test
+    public void testThatSnapshotIteratesEntriesInKeyOrder() throws IOException {
+        CustomTreeMap<Long, String> map = new CustomTreeMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            long key = random.nextLong();
+            map.put(key, Long.toHexString(key));
+        }
+
+        SnapshotMap<Long, String> snapshot = writeAndOpen(map);
+
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(snapshot.entrySet()));
+        assertEquals(map.firstKey(), snapshot.firstKey());
+    }
+
+    @Test
+    public void testThatEmptyMapCanBeSnapshotted() throws IOException {
+        SnapshotMap<Long, String> snapshot = writeAndOpen(new CustomTreeMap<>());
+
+        assertThat(snapshot.isEmpty(), is(true));
+        assertNull(snapshot.get(1L));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testThatSnapshotIsReadOnly() throws IOException {
+        writeAndOpen(new CustomTreeMap<>()).put(1L, "a");
+    }
+
+    @Test(expected = IOException.class)
+    public void testThatOtherFilesAreRejected() throws IOException {
+        Path path = folder.newFile("garbage").toPath();
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+
+        SnapshotMap.open(path, SnapshotSerializer.LONG, SnapshotSerializer.STRING);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatMapsSortedByComparatorAreRejected() throws IOException {
+        TreeMap<Long, String> map = new TreeMap<>(Comparator.reverseOrder());
+        map.put(1L, "a");
+        map.put(2L, "b");
+        SnapshotMap.write(map, folder.getRoot().toPath().resolve("map.snapshot"),
+                SnapshotSerializer.LONG, SnapshotSerializer.STRING);
+    }
+
+    @Test
+    public void testThatFailedWriteLeavesNoTemporaryFile() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("map.snapshot");
+        List<Map.Entry<Long, String>> entries = Collections.singletonList(new AbstractMap.SimpleEntry<>(1L, "a"));
+        try {
+            SnapshotMap.write(2, entries, path, SnapshotSerializer.LONG, SnapshotSerializer.STRING);
+            fail();
+        } catch (IOException expected) {
+            try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+                assertThat(files.count(), is(0L));
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.epam.java.se;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TieredCustomTreeMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private TieredCustomTreeMap<Integer, String> m;
+
+    @Before
+    public void init() {
+        directory = folder.getRoot().toPath().resolve("segments");
+        m = new TieredCustomTreeMap<>(directory, SnapshotSerializer.INTEGER, SnapshotSerializer.STRING, 16);
+    }
+
+    @After
+    public void close() {
+        m.close();
+    }
+
+    private long segmentFiles() throws IOException {
+        if (!Files.exists(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testThatRandomOperationsMatchTreeMapAcrossFlushesAndCompactions() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(1000);
+            int operation = random.nextInt(10);
+            if (operation < 3) {
+                assertThat(m.remove(key), is(expected.remove(key)));
+            } else if (operation < 6) {
+                assertThat(m.get(key), is(expected.get(key)));
+                assertThat(m.containsKey(key), is(expected.containsKey(key)));
+            } else {
+                String value = operation == 6 ? null : "v" + i;
+                assertThat(m.put(key, value), is(expected.put(key, value)));
+            }
+            assertThat(m.size(), is(expected.size()));
+        }
+        assertThat(new ArrayList<>(m.entrySet()), is(new ArrayList<>(expected.entrySet())));
+        m.awaitCompaction();
+        assertThat(m.segmentCount() > 1, is(true));
+        assertThat(new ArrayList<>(m.entrySet()), is(new ArrayList<>(expected.entrySet())));
+        assertThat(m.firstKey(), is(expected.firstKey()));
+    }
+
+    @Test
+    public void testThatNullValuesAndRemovalsSurviveFlushes() {
+        m.put(1, null);
+        m.put(2, "b");
+        m.flush();
+        m.remove(2);
+        m.flush();
+        assertThat(m.containsKey(1), is(true));
+        assertThat(m.get(1), is(nullValue()));
+        assertThat(m.containsKey(2), is(false));
+        assertThat(m.size(), is(1));
+        assertThat(m.keySet(), is(Collections.singleton(1)));
+    }
+
+    @Test
+    public void testThatCompactionMergesTiersAndDeletesItsInputs() throws IOException {
+        for (int i = 0; i < 16 * 16; i++) {
+            m.put(i, "v" + i);
+        }
+        m.awaitCompaction();
+        assertThat(m.segmentCount(), is(1));
+        assertThat(segmentFiles(), is(1L));
+        for (int i = 0; i < 16 * 16; i += 2) {
+            m.remove(i);
+        }
+        m.flush();
+        m.awaitCompaction();
+        assertThat(m.size(), is(128));
+        assertThat(m.get(3), is("v3"));
+        assertThat(m.get(4), is(nullValue()));
+        m.close();
+        assertThat(segmentFiles(), is(0L));
+        assertThat(m.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testThatIteratorRemoveAndSetValueWriteThrough() {
+        for (int i = 0; i < 100; i++) {
+            m.put(i, "v" + i);
+        }
+        Iterator<Map.Entry<Integer, String>> iterator = m.entrySet().iterator();
+        int previous = -1;
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            assertThat(entry.getKey() > previous, is(true));
+            previous = entry.getKey();
+            if (entry.getKey() % 2 == 0) {
+                iterator.remove();
+            } else {
+                entry.setValue("w");
+            }
+        }
+        assertThat(m.size(), is(50));
+        assertThat(m.get(1), is("w"));
+        assertThat(m.containsKey(2), is(false));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testThatIteratorFailsFastOnInsert() {
+        m.put(1, "a");
+        m.put(2, "b");
+        Iterator<Integer> iterator = m.keySet().iterator();
+        iterator.next();
+        m.put(3, "c");
+        iterator.next();
+    }
+
+    @Test
+    public void testThatClearDropsAllTiers() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            m.put(i, "v" + i);
+        }
+        m.clear();
+        assertThat(m.isEmpty(), is(true));
+        assertThat(m.get(5), is(nullValue()));
+        assertThat(m.segmentCount(), is(0));
+        assertThat(segmentFiles(), is(0L));
+        m.put(5, "x");
+        assertThat(m.get(5), is("x"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatMemtableLimitMustBePositive() {
+        new TieredCustomTreeMap<>(directory, SnapshotSerializer.INTEGER, SnapshotSerializer.STRING, 0);
+    }
+}
@@ -0,0 +1,198 @@
+package com.epam.java.se;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CustomTreeMap<Integer, String> open(Path directory, int syncEvery) throws IOException {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.enableDurability(directory, SnapshotSerializer.INTEGER, SnapshotSerializer.STRING, syncEvery);
+        return map;
+    }
+
+    @Test
+    public void testThatChangesSurviveACrash() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<Integer, String> map = open(directory, 1);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            int key = random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                String value = random.nextInt(10) == 0 ? null : "v" + i;
+                map.put(key, value);
+                expected.put(key, value);
+            }
+            if (i == 1000) {
+                map.clear();
+                expected.clear();
+            }
+        }
+        // no disableDurability: every change was forced, the map is dropped as in a crash
+        CustomTreeMap<Integer, String> recovered = open(directory, 1);
+        assertThat(new TreeMap<>(recovered), is(expected));
+        assertThat(recovered.isValidRedBlackTree(), is(true));
+        recovered.disableDurability();
+    }
+
+    @Test
+    public void testThatViewsIteratorsAndBatchesAreLogged() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<Integer, String> map = open(directory, 1);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+        Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            if (entry.getKey() % 5 == 0) {
+                iterator.remove();
+            } else if (entry.getKey() % 5 == 1) {
+                entry.setValue("set");
+            }
+        }
+        map.pollFirstEntry();
+        map.pollLastEntry();
+        map.headMap(10).clear();
+        map.putBatch(new Integer[]{200, 201, 202}, new String[]{"a", "b", "c"});
+        map.removeBatch(new Integer[]{21, 22, 23});
+        SortedMap<Integer, String> sorted = new TreeMap<>();
+        for (int i = 300; i < 400; i++) {
+            sorted.put(i, "s" + i);
+        }
+        map.putAll(sorted);
+        map.disableDurability();
+
+        CustomTreeMap<Integer, String> recovered = open(directory, 1);
+        assertThat(new TreeMap<>(recovered), is(new TreeMap<>(map)));
+        recovered.disableDurability();
+    }
+
+    @Test
+    public void testThatUnsyncedChangesAreLostAndSyncedOnesKept() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<Integer, String> map = open(directory, 0);
+        map.put(1, "a");
+        map.sync();
+        map.put(2, "b");
+
+        CustomTreeMap<Integer, String> recovered = open(directory, 0);
+        assertThat(recovered.keySet(), is(Collections.singleton(1)));
+        recovered.disableDurability();
+    }
+
+    @Test
+    public void testThatTornTailIsCutOff() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<Integer, String> map = open(directory, 1);
+        map.put(1, "a");
+        map.put(2, "b");
+        map.disableDurability();
+        Path log = directory.resolve(WriteAheadLog.LOG_FILE);
+        long size = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 20, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        CustomTreeMap<Integer, String> recovered = open(directory, 1);
+        assertThat(recovered.size(), is(2));
+        assertThat(Files.size(log), is(size));
+        recovered.put(3, "c");
+        recovered.disableDurability();
+        assertThat(open(directory, 1).get(3), is("c"));
+    }
+
+    @Test
+    public void testThatCheckpointEmptiesTheLogAndLogReplayIsIdempotent() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<Integer, String> map = open(directory, 1);
+        for (int i = 0; i < 50; i++) {
+            map.put(i, "v" + i);
+        }
+        map.remove(7);
+        Path log = directory.resolve(WriteAheadLog.LOG_FILE);
+        Path saved = directory.resolve("saved.log");
+        Files.copy(log, saved);
+        map.checkpoint();
+        assertThat(Files.size(log), is((long) 2 * Integer.BYTES));
+        map.put(100, "x");
+        map.disableDurability();
+
+        CustomTreeMap<Integer, String> recovered = open(directory, 1);
+        assertThat(new TreeMap<>(recovered), is(new TreeMap<>(map)));
+        recovered.disableDurability();
+
+        // a crash after writing the checkpoint but before emptying the log
+        Files.move(saved, log, StandardCopyOption.REPLACE_EXISTING);
+        map.remove(100);
+        recovered = open(directory, 1);
+        assertThat(new TreeMap<>(recovered), is(new TreeMap<>(map)));
+        recovered.disableDurability();
+    }
+
+    @Test
+    public void testThatLongLogIsCheckpointedAutomatically() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<Integer, String> map = open(directory, 0);
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        for (int i = 0; i < 3000; i++) {
+            map.put(i % 10, value + i);
+        }
+        map.disableDurability();
+        assertThat(Files.exists(directory.resolve(WriteAheadLog.CHECKPOINT_FILE)), is(true));
+        assertThat(Files.size(directory.resolve(WriteAheadLog.LOG_FILE)) < 2 << 20, is(true));
+
+        CustomTreeMap<Integer, String> recovered = open(directory, 0);
+        assertThat(new TreeMap<>(recovered), is(new TreeMap<>(map)));
+        recovered.disableDurability();
+    }
+
+    @Test
+    public void testThatMapWithComparatorIsRecovered() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CustomTreeMap<String, Long> map = new CustomTreeMap<>(KeyComparators.caseInsensitive());
+        map.enableDurability(directory, SnapshotSerializer.STRING, SnapshotSerializer.LONG, 1);
+        map.put("b", 1L);
+        map.put("A", 2L);
+        map.checkpoint();
+        map.put("B", 3L);
+        map.disableDurability();
+
+        CustomTreeMap<String, Long> recovered = new CustomTreeMap<>(KeyComparators.caseInsensitive());
+        recovered.enableDurability(directory, SnapshotSerializer.STRING, SnapshotSerializer.LONG, 1);
+        assertThat(recovered.size(), is(2));
+        assertThat(recovered.get("b"), is(3L));
+        assertThat(recovered.firstKey(), is("A"));
+        recovered.disableDurability();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThatNonEmptyMapCannotBecomeDurable() throws IOException {
+        CustomTreeMap<Integer, String> map = new CustomTreeMap<>();
+        map.put(1, "a");
+        map.enableDurability(folder.getRoot().toPath(), SnapshotSerializer.INTEGER, SnapshotSerializer.STRING, 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThatCheckpointRequiresDurability() throws IOException {
+        new CustomTreeMap<Integer, String>().checkpoint();
+    }
+}